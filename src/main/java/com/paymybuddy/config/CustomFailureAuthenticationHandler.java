@@ -1,8 +1,10 @@
 package com.paymybuddy.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.AuthenticationException;
@@ -19,16 +21,23 @@ public class CustomFailureAuthenticationHandler implements AuthenticationFailure
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Override
+    @Timed(value = "paymybuddy.login.handler", extraTags = {"outcome", "failure"}, histogram = true)
     public void onAuthenticationFailure(HttpServletRequest request,
                                         HttpServletResponse response,
                                         AuthenticationException exception) throws IOException {
 
-        // http status 401
-        response.setStatus(HttpStatus.UNAUTHORIZED.value());
-        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-
         Map<String, String> errorResponse = new HashMap<>();
-        errorResponse.put("error", "Adresse mail ou mot de passe invalid");
+        if (exception instanceof PasswordHashingBusyException) {
+            // http status 503, the BCrypt queue is full
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            errorResponse.put("error", exception.getMessage());
+        } else {
+            // http status 401
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            errorResponse.put("error", "Adresse mail ou mot de passe invalid");
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
 
         objectMapper.writeValue(response.getWriter(), errorResponse);
     }
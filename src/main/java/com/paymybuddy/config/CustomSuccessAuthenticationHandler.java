@@ -1,5 +1,7 @@
 package com.paymybuddy.config;
 
+import com.paymybuddy.service.SessionUserService;
+import io.micrometer.core.annotation.Timed;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -14,7 +16,14 @@ import java.io.IOException;
 @Component
 public class CustomSuccessAuthenticationHandler implements AuthenticationSuccessHandler {
 
+    private final SessionUserService sessionUserService;
+
+    public CustomSuccessAuthenticationHandler(SessionUserService sessionUserService) {
+        this.sessionUserService = sessionUserService;
+    }
+
     @Override
+    @Timed(value = "paymybuddy.login.handler", extraTags = {"outcome", "success"}, histogram = true)
     public void onAuthenticationSuccess(HttpServletRequest request,
                                         HttpServletResponse response,
                                         Authentication authentication) throws IOException, ServletException {
@@ -25,6 +34,9 @@ public class CustomSuccessAuthenticationHandler implements AuthenticationSuccess
 
         // Store the email in the session
         session.setAttribute("email", email);
+        // and the principal the handlers receive, from the identity the login has just cached
+        sessionUserService.login(email)
+                .ifPresent(user -> SessionUserArgumentResolver.store(session, user));
 
         response.sendRedirect("/user/profile");
     }
@@ -0,0 +1,42 @@
+package com.paymybuddy.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Streamed exports, written on their own threads with their own timeout : the other async
+ * requests keep Spring MVC's executor and timeout.
+ * Each running export holds a DB connection, the pool size bounds how many.
+ */
+@Component
+public class ExportTasks implements DisposableBean {
+
+    // not an Executor bean, so that it does not replace the application's default executor
+    private final ThreadPoolTaskExecutor exportExecutor = new ThreadPoolTaskExecutor();
+    private final long timeoutMs;
+
+    public ExportTasks(@Value("${paymybuddy.export.threads:4}") int threads,
+                       @Value("${paymybuddy.export.queue-capacity:50}") int queueCapacity,
+                       @Value("${paymybuddy.export.timeout-ms:600000}") long timeoutMs) {
+        exportExecutor.setCorePoolSize(threads);
+        exportExecutor.setMaxPoolSize(threads);
+        exportExecutor.setQueueCapacity(queueCapacity);
+        exportExecutor.setThreadNamePrefix("export-");
+        exportExecutor.initialize();
+        this.timeoutMs = timeoutMs;
+    }
+
+    public <T> WebAsyncTask<T> task(Callable<T> export) {
+        return new WebAsyncTask<>(timeoutMs, exportExecutor, export);
+    }
+
+    @Override
+    public void destroy() {
+        exportExecutor.shutdown();
+    }
+}
@@ -0,0 +1,86 @@
+package com.paymybuddy.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hibernate second-level cache : User entities, their connections and the results of the
+ * email / username lookups, in bounded and expiring Caffeine caches (JCache).
+ * Every region is created here, Hibernate refuses to start with a region that is not
+ * (missing_cache_strategy=fail). Hits and misses per region are published as cache.gets{cache}.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    public static final String USERS = "users";
+    public static final String USER_CONNECTIONS = "users-connections";
+    // Hibernate's own names for the query cache
+    public static final String QUERY_RESULTS = "default-query-results-region";
+    public static final String UPDATE_TIMESTAMPS = "default-update-timestamps-region";
+
+    // one cache manager per application context : the test contexts must not share regions
+    private static final AtomicInteger CACHE_MANAGERS = new AtomicInteger();
+
+    // closed by Hibernate with the session factory ; closing it again does nothing
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            MeterRegistry meterRegistry,
+            @Value("${paymybuddy.cache.hibernate.users.max-size:10000}") long usersMaxSize,
+            @Value("${paymybuddy.cache.hibernate.users.ttl:10m}") Duration usersTtl,
+            @Value("${paymybuddy.cache.hibernate.queries.max-size:10000}") long queriesMaxSize,
+            @Value("${paymybuddy.cache.hibernate.queries.ttl:5m}") Duration queriesTtl) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("paymybuddy-hibernate-" + CACHE_MANAGERS.incrementAndGet()),
+                        getClass().getClassLoader(), new Properties());
+
+        createRegion(cacheManager, meterRegistry, USERS, usersMaxSize, usersTtl);
+        createRegion(cacheManager, meterRegistry, USER_CONNECTIONS, usersMaxSize, usersTtl);
+        createRegion(cacheManager, meterRegistry, QUERY_RESULTS, queriesMaxSize, queriesTtl);
+        // one entry per table : never evicted nor expired, or cached queries could miss a change
+        createRegion(cacheManager, meterRegistry, UPDATE_TIMESTAMPS, 0, null);
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(
+            CacheManager hibernateCacheManager,
+            @Value("${paymybuddy.cache.hibernate.enabled:true}") boolean enabled) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, enabled);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, enabled);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    // maxSize 0 and ttl null : unbounded
+    private static void createRegion(CacheManager cacheManager, MeterRegistry meterRegistry,
+                                     String name, long maxSize, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>()
+                // Hibernate caches immutable entries : no copy on each read and write
+                .setStoreByValue(false)
+                .setStatisticsEnabled(true)
+                .setMaximumSize(maxSize > 0 ? OptionalLong.of(maxSize) : OptionalLong.empty())
+                .setExpireAfterWrite(ttl != null ? OptionalLong.of(ttl.toNanos()) : OptionalLong.empty());
+        Cache<Object, Object> cache = cacheManager.createCache(name, configuration);
+        JCacheMetrics.monitor(meterRegistry, cache);
+    }
+}
@@ -0,0 +1,17 @@
+package com.paymybuddy.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // services, JDBC repository and login handlers are timed with @Timed ;
+    // Spring Data repositories are timed by Spring Boot (spring.data.repository.invocations)
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
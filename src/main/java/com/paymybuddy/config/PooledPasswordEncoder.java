@@ -0,0 +1,123 @@
+package com.paymybuddy.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt run on its own threads, one per core, and not on the request threads :
+ * a burst of logins or signups waits in a bounded queue instead of taking every
+ * Tomcat thread, and is refused (503) once the queue is full.
+ * Hashes made with another strength are re-hashed at the next successful login.
+ */
+@Slf4j
+public class PooledPasswordEncoder extends BCryptPasswordEncoder implements DisposableBean {
+
+    private static final Pattern BCRYPT_STRENGTH = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final int strength;
+    private final ThreadPoolTaskExecutor hashExecutor = new ThreadPoolTaskExecutor();
+
+    private final MeterRegistry meterRegistry;
+    private final Timer queueTimer;
+    private final Counter rejectedCounter;
+
+    public PooledPasswordEncoder(int strength, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        super(strength);
+        this.strength = strength;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        hashExecutor.setCorePoolSize(poolSize);
+        hashExecutor.setMaxPoolSize(poolSize);
+        hashExecutor.setQueueCapacity(queueCapacity);
+        hashExecutor.setThreadNamePrefix("bcrypt-");
+        hashExecutor.initialize();
+        log.info("BCrypt strength {} on {} threads, queue of {}", strength, poolSize, queueCapacity);
+
+        this.meterRegistry = meterRegistry;
+        new ExecutorServiceMetrics(hashExecutor.getThreadPoolExecutor(), "bcrypt", Tags.empty())
+                .bindTo(meterRegistry);
+        this.queueTimer = Timer.builder("paymybuddy.password.hash.queue")
+                .description("Time a hash waits for a BCrypt thread")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("paymybuddy.password.hash.rejected")
+                .description("Hashes refused because the BCrypt queue was full")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run("encode", () -> super.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run("matches", () -> super.matches(rawPassword, encodedPassword));
+    }
+
+    // any other strength, lower or higher, is re-hashed by DaoAuthenticationProvider after the login.
+    // skipped while hashes are queued : the re-hash would cost a second BCrypt to that login
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null || hashExecutor.getQueueSize() > 0) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_STRENGTH.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    // the calling thread waits for the result, but at most poolSize hashes run at a time
+    <T> T run(String operation, Supplier<T> hash) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = hashExecutor.submit(() -> {
+                queueTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                Timer.Sample sample = Timer.start(meterRegistry);
+                try {
+                    return hash.get();
+                } finally {
+                    sample.stop(Timer.builder("paymybuddy.password.hash")
+                            .description("BCrypt hash duration")
+                            .tag("operation", operation)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry));
+                }
+            });
+        } catch (TaskRejectedException e) {
+            rejectedCounter.increment();
+            throw new PasswordHashingBusyException("Service surchargé, veuillez réessayer");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException("Service surchargé, veuillez réessayer");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        hashExecutor.shutdown();
+    }
+}
@@ -0,0 +1,78 @@
+package com.paymybuddy.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 429 with Retry-After for POST /login, /users/signup and /transactions once a bucket of
+ * the RateLimiter is empty. Ahead of the security context and the login : a rejected request
+ * costs neither a BCrypt hash nor a query.
+ * Not a bean, so that it is not registered a second time as a servlet filter.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public RateLimitFilter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        RateLimiter.Endpoint endpoint = endpoint(request);
+        if (endpoint != null) {
+            Duration retryAfter = rateLimiter.acquire(endpoint, request.getRemoteAddr(), account(endpoint, request));
+            if (retryAfter != null) {
+                // http status 429, in whole seconds rounded up
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                response.setHeader(HttpHeaders.RETRY_AFTER,
+                        Long.toString(Math.max(1, (retryAfter.toMillis() + 999) / 1000)));
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                objectMapper.writeValue(response.getWriter(), Map.of("error", "Trop de requêtes, veuillez réessayer"));
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static RateLimiter.Endpoint endpoint(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return null;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return switch (path) {
+            case "/login" -> RateLimiter.Endpoint.LOGIN;
+            case "/users/signup" -> RateLimiter.Endpoint.SIGNUP;
+            case "/transactions" -> RateLimiter.Endpoint.TRANSFER;
+            default -> null;
+        };
+    }
+
+    // the email tried at login, the logged-in user for a transfer ; none for a signup
+    private static String account(RateLimiter.Endpoint endpoint, HttpServletRequest request) {
+        if (endpoint == RateLimiter.Endpoint.LOGIN) {
+            return request.getParameter("username");
+        }
+        if (endpoint == RateLimiter.Endpoint.TRANSFER) {
+            HttpSession session = request.getSession(false);
+            Object email = session == null ? null : session.getAttribute("email");
+            return email == null ? null : email.toString();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+package com.paymybuddy.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory token buckets for the endpoints that cost the most : login and signup (BCrypt)
+ * and transfers (row locks). Each endpoint has a bucket per client IP and, when known, per account.
+ * A bucket is one AtomicLong, updated by compare-and-set : the time at which it will be full
+ * again (GCRA, the same limit as a token bucket of that capacity). An idle bucket is full,
+ * so it is dropped once idle for its refill time ; max-keys bounds the memory whatever the traffic.
+ */
+@Component
+public class RateLimiter {
+
+    public enum Endpoint { LOGIN, SIGNUP, TRANSFER }
+
+    public enum KeyClass { IP, ACCOUNT }
+
+    private final boolean enabled;
+    private final Limit ipLimit;
+    private final Limit accountLimit;
+    private final Cache<String, AtomicLong> buckets;
+    private final Map<KeyClass, Counter> rejectedCounters = new EnumMap<>(KeyClass.class);
+
+    public RateLimiter(MeterRegistry meterRegistry,
+                       @Value("${paymybuddy.rate-limit.enabled:true}") boolean enabled,
+                       @Value("${paymybuddy.rate-limit.ip.capacity:30}") int ipCapacity,
+                       @Value("${paymybuddy.rate-limit.ip.period:1m}") Duration ipPeriod,
+                       @Value("${paymybuddy.rate-limit.account.capacity:10}") int accountCapacity,
+                       @Value("${paymybuddy.rate-limit.account.period:1m}") Duration accountPeriod,
+                       @Value("${paymybuddy.rate-limit.max-keys:1000000}") long maxKeys) {
+        this.enabled = enabled;
+        this.ipLimit = new Limit(ipCapacity, ipPeriod);
+        this.accountLimit = new Limit(accountCapacity, accountPeriod);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofNanos(Math.max(ipLimit.refillNanos(), accountLimit.refillNanos())))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, "rateLimitBuckets");
+        for (KeyClass keyClass : KeyClass.values()) {
+            rejectedCounters.put(keyClass, Counter.builder("paymybuddy.rate-limit.rejected")
+                    .description("Requests answered 429, by the kind of bucket that was empty")
+                    .tag("key", keyClass.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    // null when the request may go on, otherwise how long until it would be allowed.
+    // account may be null (signup, or no session)
+    public Duration acquire(Endpoint endpoint, String ip, String account) {
+        if (!enabled) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long wait = tryAcquire(endpoint + "|ip|" + ip, ipLimit, now);
+        if (wait > 0) {
+            rejectedCounters.get(KeyClass.IP).increment();
+            return Duration.ofNanos(wait);
+        }
+        if (account != null) {
+            wait = tryAcquire(endpoint + "|account|" + account.toLowerCase(Locale.ROOT), accountLimit, now);
+            if (wait > 0) {
+                rejectedCounters.get(KeyClass.ACCOUNT).increment();
+                return Duration.ofNanos(wait);
+            }
+        }
+        return null;
+    }
+
+    // 0 when a token was taken, otherwise the nanos until the next one
+    private long tryAcquire(String key, Limit limit, long now) {
+        AtomicLong bucket = buckets.get(key, k -> new AtomicLong(now));
+        while (true) {
+            long fullAt = bucket.get();
+            // fullAt - now : the tokens missing, as time ; at most capacity - 1 may be missing before this one
+            long missing = Math.max(fullAt - now, 0);
+            if (missing > limit.toleranceNanos) {
+                return missing - limit.toleranceNanos;
+            }
+            if (bucket.compareAndSet(fullAt, now + missing + limit.intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    // capacity tokens, refilled at capacity per period
+    private static final class Limit {
+        final long intervalNanos;
+        final long toleranceNanos;
+
+        Limit(int capacity, Duration period) {
+            this.intervalNanos = Math.max(period.toNanos() / Math.max(capacity, 1), 1);
+            this.toleranceNanos = intervalNanos * (Math.max(capacity, 1) - 1);
+        }
+
+        long refillNanos() {
+            return intervalNanos + toleranceNanos;
+        }
+    }
+}
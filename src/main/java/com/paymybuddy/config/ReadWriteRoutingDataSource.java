@@ -0,0 +1,164 @@
+package com.paymybuddy.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sends the connections of read-only transactions to the replicas, in turn, and
+ * everything else to the primary.
+ * A replica that fails to give a connection is skipped for replica-downtime ; with
+ * none left, reads go to the primary.
+ * Reads stay on the primary during a write request, and for read-your-writes after
+ * a user's write request, so that a user does not miss their own writes on a lagging replica.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    private static final Set<String> WRITE_METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+
+    private final DataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final long downtimeNanos;
+    // replica i is skipped until System.nanoTime() reaches downUntil[i], 0 when up
+    private final AtomicLongArray downUntil;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Cache<String, Boolean> recentWriters;
+
+    private final Counter primaryReadCounter;
+    private final Counter replicaReadCounter;
+    private final Counter replicaFailureCounter;
+
+    public ReadWriteRoutingDataSource(DataSource primary,
+                                      List<HikariDataSource> replicas,
+                                      Duration downtime,
+                                      Duration readYourWrites,
+                                      MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.downtimeNanos = downtime.toNanos();
+        this.downUntil = new AtomicLongArray(replicas.size());
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(readYourWrites)
+                .build();
+
+        this.primaryReadCounter = Counter.builder("paymybuddy.datasource.reads")
+                .description("Read-only transactions, by the database that served them")
+                .tag("target", "primary")
+                .register(meterRegistry);
+        this.replicaReadCounter = Counter.builder("paymybuddy.datasource.reads")
+                .description("Read-only transactions, by the database that served them")
+                .tag("target", "replica")
+                .register(meterRegistry);
+        this.replicaFailureCounter = Counter.builder("paymybuddy.datasource.replica.failures")
+                .description("Replica connections that failed, the replica is then skipped for a while")
+                .register(meterRegistry);
+        Gauge.builder("paymybuddy.datasource.replicas.up", this, ReadWriteRoutingDataSource::replicasUp)
+                .description("Replicas currently used for reads")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return primary.getConnection();
+        }
+        if (!readYourWrites()) {
+            Connection connection = replicaConnection();
+            if (connection != null) {
+                replicaReadCounter.increment();
+                return connection;
+            }
+        }
+        primaryReadCounter.increment();
+        return primary.getConnection();
+    }
+
+    // explicit credentials : the primary, as for a write
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    // read-your-writes : after a user's write request, their reads stay on the primary
+    public void requestCompleted(HttpServletRequest request) {
+        if (request.getUserPrincipal() != null && isWrite(request)) {
+            recentWriters.put(request.getUserPrincipal().getName(), Boolean.TRUE);
+        }
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        return WRITE_METHODS.contains(request.getMethod());
+    }
+
+    // round-robin over the replicas that are up, null when none answers
+    private Connection replicaConnection() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            long until = downUntil.get(index);
+            if (until != 0 && System.nanoTime() - until < 0) {
+                continue;
+            }
+            try {
+                Connection connection = replicas.get(index).getConnection();
+                downUntil.compareAndSet(index, until, 0);
+                return connection;
+            } catch (SQLException | RuntimeException e) {
+                replicaFailureCounter.increment();
+                downUntil.set(index, System.nanoTime() + downtimeNanos);
+                log.warn("replica {} skipped for {} ms : {}",
+                        replicas.get(index).getPoolName(), downtimeNanos / 1_000_000, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private boolean readYourWrites() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                && isWrite(attributes.getRequest())) {
+            return true;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && recentWriters.getIfPresent(authentication.getName()) != null;
+    }
+
+    private double replicasUp() {
+        long now = System.nanoTime();
+        int up = 0;
+        for (int i = 0; i < downUntil.length(); i++) {
+            long until = downUntil.get(i);
+            if (until == 0 || now - until >= 0) {
+                up++;
+            }
+        }
+        return up;
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(HikariDataSource::close);
+    }
+}
@@ -1,19 +1,24 @@
 package com.paymybuddy.config;
 
+import com.paymybuddy.service.CustomUserDetailsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
 
 @Configuration
 @EnableWebSecurity
@@ -21,15 +26,22 @@ import org.springframework.security.web.SecurityFilterChain;
 public class SecurityConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
-    private final CustomFailureAuthenticationHandler failHandler = new CustomFailureAuthenticationHandler();
-    private final CustomSuccessAuthenticationHandler successHandler = new CustomSuccessAuthenticationHandler();
+    // the beans, so that their @Timed applies
+    private final CustomFailureAuthenticationHandler failHandler;
+    private final CustomSuccessAuthenticationHandler successHandler;
+    private final RateLimiter rateLimiter;
 
     // Manage authorizations
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http,
+                                                   AuthenticationManager authenticationManager) throws Exception {
         logger.info("Security Filter Chain");
          http
             .csrf(AbstractHttpConfigurer::disable)
+            // the manager below, and not one built from the UserDetailsService bean
+            .authenticationManager(authenticationManager)
+            // login, signup and transfers throttled per IP and per account, before anything else runs
+            .addFilterBefore(new RateLimitFilter(rateLimiter), SecurityContextHolderFilter.class)
             .authorizeHttpRequests(auth -> { auth
                     // Public access ------------------------------------------
                     .requestMatchers(
@@ -39,6 +51,8 @@ public class SecurityConfig {
                             "/assets/icons/**").permitAll()
                     // landing page
                     .requestMatchers("/", "/index.html").permitAll()
+                    // probes and metrics scraping, served on the management port (management.server.port)
+                    .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
                     // allow anyone to signup or login
                      .requestMatchers( "/users/signup", "/login").permitAll()
                      .requestMatchers( "/signup.html", "/login.html").permitAll()
@@ -74,24 +88,47 @@ public class SecurityConfig {
         return http.build();
     }
 
-    // encrypt passwords
+    // encrypt passwords, on the BCrypt threads (PooledPasswordEncoder)
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
+    public PooledPasswordEncoder passwordEncoder(
+            @Value("${paymybuddy.password.bcrypt-strength:10}") int strength,
+            @Value("${paymybuddy.password.threads:0}") int threads,
+            @Value("${paymybuddy.password.queue-capacity:100}") int queueCapacity,
+            MeterRegistry meterRegistry) {
         logger.info("Password Encoder");
-        return new BCryptPasswordEncoder();
+        return new PooledPasswordEncoder(strength, threads, queueCapacity, meterRegistry);
     }
 
     // manage authentifications
+    // each login is timed (user lookup + BCrypt) as paymybuddy.login{outcome}
     @Bean
     public AuthenticationManager authenticationManager(
-            UserDetailsService userDetailsService,
-            BCryptPasswordEncoder bCryptPasswordEncoder) throws Exception {
+            CustomUserDetailsService userDetailsService,
+            BCryptPasswordEncoder bCryptPasswordEncoder,
+            MeterRegistry meterRegistry) throws Exception {
 
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService);
         authProvider.setPasswordEncoder(bCryptPasswordEncoder);
+        // re-hashes passwords stored with another BCrypt strength
+        authProvider.setUserDetailsPasswordService(userDetailsService);
+        ProviderManager providerManager = new ProviderManager(authProvider);
 
-        return new ProviderManager(authProvider);
+        return authentication -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            String outcome = "failure";
+            try {
+                Authentication result = providerManager.authenticate(authentication);
+                outcome = "success";
+                return result;
+            } finally {
+                sample.stop(Timer.builder("paymybuddy.login")
+                        .description("Authentication of a login form")
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+            }
+        };
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.paymybuddy.config;
+
+import com.paymybuddy.model.SessionUser;
+import com.paymybuddy.service.SessionUserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.core.MethodParameter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.util.Optional;
+
+/**
+ * Resolves a SessionUser handler argument from the session : null without a session,
+ * or once the account is gone. No query while the principal's version is current.
+ * A session that only holds the email (opened before the principal was stored) gets one.
+ */
+@Component
+public class SessionUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final SessionUserService sessionUserService;
+
+    public SessionUserArgumentResolver(SessionUserService sessionUserService) {
+        this.sessionUserService = sessionUserService;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return SessionUser.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public SessionUser resolveArgument(MethodParameter parameter,
+                                       ModelAndViewContainer mavContainer,
+                                       NativeWebRequest webRequest,
+                                       WebDataBinderFactory binderFactory) {
+        HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+        HttpSession session = request == null ? null : request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        SessionUser stored = (SessionUser) session.getAttribute(SessionUser.ATTRIBUTE);
+        Optional<SessionUser> current;
+        if (stored != null) {
+            current = sessionUserService.refresh(stored);
+        } else {
+            Object email = session.getAttribute("email");
+            current = email == null ? Optional.empty() : sessionUserService.login(email.toString());
+        }
+        if (current.isEmpty()) {
+            session.removeAttribute(SessionUser.ATTRIBUTE);
+            return null;
+        }
+        if (current.get() != stored) {
+            store(session, current.get());
+        }
+        return current.get();
+    }
+
+    // the email attribute follows, the rate limiter keys transfers on it
+    static void store(HttpSession session, SessionUser user) {
+        session.setAttribute(SessionUser.ATTRIBUTE, user);
+        session.setAttribute("email", user.getEmail());
+    }
+}
@@ -0,0 +1,74 @@
+package com.paymybuddy.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+/**
+ * Virtual-thread mode (profile virtual-threads, spring.threads.virtual.enabled) :
+ * requests, @Async work and @Scheduled jobs run on virtual threads.
+ * A virtual thread that blocks inside a synchronized block keeps its carrier thread
+ * (pinning) ; those are recorded by JFR, logged and counted as paymybuddy.virtual.pinned.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadsConfig implements DisposableBean {
+
+    private final RecordingStream pinnedEvents = new RecordingStream();
+    private final Counter pinnedCounter;
+    private final DataSource dataSource;
+
+    public VirtualThreadsConfig(MeterRegistry meterRegistry,
+                                DataSource dataSource,
+                                @Value("${paymybuddy.virtual-threads.pinned-threshold:20ms}") Duration pinnedThreshold) {
+        this.dataSource = dataSource;
+        this.pinnedCounter = Counter.builder("paymybuddy.virtual.pinned")
+                .description("Virtual threads that blocked while pinned to their carrier")
+                .register(meterRegistry);
+
+        pinnedEvents.enable("jdk.VirtualThreadPinned").withThreshold(pinnedThreshold).withStackTrace();
+        pinnedEvents.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        pinnedEvents.startAsync();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        String frames = event.getStackTrace() == null ? "" : event.getStackTrace().getFrames().stream()
+                .limit(8)
+                .map(RecordedFrame::getMethod)
+                .map(method -> method.getType().getName() + "." + method.getName())
+                .collect(Collectors.joining(" < "));
+        log.warn("virtual thread pinned for {} ms : {}", event.getDuration().toMillis(), frames);
+    }
+
+    // every request can now reach the pool at once : past maximum-pool-size they wait on it
+    // (hikaricp.connections.pending), and fail after connection-timeout
+    @EventListener(ApplicationReadyEvent.class)
+    public void logPoolSize() {
+        if (dataSource instanceof HikariDataSource hikari) {
+            log.info("virtual threads on, {} DB connections at most, {} ms to get one",
+                    hikari.getMaximumPoolSize(), hikari.getConnectionTimeout());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pinnedEvents.close();
+    }
+}
@@ -0,0 +1,23 @@
+package com.paymybuddy.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final SessionUserArgumentResolver sessionUserArgumentResolver;
+
+    public WebConfig(SessionUserArgumentResolver sessionUserArgumentResolver) {
+        this.sessionUserArgumentResolver = sessionUserArgumentResolver;
+    }
+
+    // SessionUser handler arguments, taken from the session
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(sessionUserArgumentResolver);
+    }
+}
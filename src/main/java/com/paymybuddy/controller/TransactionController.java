@@ -1,14 +1,28 @@
 package com.paymybuddy.controller;
 
+import com.paymybuddy.config.ExportTasks;
 import com.paymybuddy.model.Transaction;
-import com.paymybuddy.model.TransactionDTO;
+import com.paymybuddy.model.TransactionPageDTO;
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferResultDTO;
+import com.paymybuddy.model.TransferTotalsDTO;
 import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.service.IdempotencyService;
+import com.paymybuddy.service.TransactionExportService;
 import com.paymybuddy.service.TransactionService;
+import com.paymybuddy.service.UserVersions;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,29 +30,103 @@ import java.util.Optional;
 @RequestMapping("/transactions")
 public class TransactionController {
 
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    private static final String CREATED = "Trasaction créée";
+
     private final TransactionService transactionService;
     private final TransactionRepository transactionRepository;
+    private final TransactionExportService transactionExportService;
+    private final ExportTasks exportTasks;
+    private final IdempotencyService idempotencyService;
+    private final UserVersions userVersions;
 
     @Autowired
-    public TransactionController(TransactionService transactionService, TransactionRepository transactionRepository) {
+    public TransactionController(TransactionService transactionService,
+                                 TransactionRepository transactionRepository,
+                                 TransactionExportService transactionExportService,
+                                 ExportTasks exportTasks,
+                                 IdempotencyService idempotencyService,
+                                 UserVersions userVersions) {
         this.transactionService = transactionService;
         this.transactionRepository = transactionRepository;
+        this.transactionExportService = transactionExportService;
+        this.exportTasks = exportTasks;
+        this.idempotencyService = idempotencyService;
+        this.userVersions = userVersions;
     }
 
     // create ____________________________________
     // create a new transaction
+    // with an Idempotency-Key header, a retried request gets the first result back
+    // instead of paying twice. Keys are the sender's own : another sender's key never matches
     @PostMapping
-    public ResponseEntity<String> createTransaction(@RequestBody Transaction transaction) {
+    public ResponseEntity<String> createTransaction(
+            @RequestBody Transaction transaction,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+
+        Integer senderId = transaction.getSender().getId();
+        Integer receiverId = transaction.getReceiver().getId();
+
+        if (idempotencyKey != null) {
+            if (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyService.MAX_KEY_LENGTH) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Idempotency-Key invalide");
+            }
+            ResponseEntity<String> replay = replay(idempotencyKey, transaction);
+            if (replay != null) {
+                return replay;
+            }
+        }
+
+        try {
+            transactionService.create(
+                    senderId,
+                    receiverId,
+                    transaction.getDescription(),
+                    transaction.getAmount(),
+                    idempotencyKey);
+        } catch (IllegalArgumentException e) {
+            // invalid amount, same or unknown user, not enough money
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (DuplicateKeyException e) {
+            // the same key was committed by a concurrent request in the meantime
+            ResponseEntity<String> replay = replay(idempotencyKey, transaction);
+            return replay != null ? replay
+                    : ResponseEntity.status(HttpStatus.CONFLICT).body("Requête en cours de traitement");
+        }
+
+        ResponseEntity<String> response = ResponseEntity.status(HttpStatus.CREATED).body(CREATED);
 
-        transactionService.create(
+        return response;
+    }
+
+    // null when the key was never used
+    private ResponseEntity<String> replay(String idempotencyKey, Transaction transaction) {
+        String fingerprint = IdempotencyService.fingerprint(
                 transaction.getSender().getId(),
                 transaction.getReceiver().getId(),
                 transaction.getDescription(),
                 transaction.getAmount());
-
-        ResponseEntity<String> response = ResponseEntity.status(HttpStatus.CREATED).body("Trasaction créée");
-
-        return response;
+        try {
+            return idempotencyService.findReplay(transaction.getSender().getId(), idempotencyKey, fingerprint)
+                    .map(stored -> ResponseEntity.status(HttpStatus.CREATED)
+                            .header(IDEMPOTENT_REPLAYED, "true")
+                            .body(CREATED))
+                    .orElse(null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
+        }
+    }
+    // create many transactions at once, each one is created or rejected on its own
+    @PostMapping("/batch")
+    public ResponseEntity<?> createTransactions(@RequestBody List<TransferRequestDTO> transfers) {
+        try {
+            List<TransferResultDTO> results = transactionService.createBatch(transfers);
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException e) {
+            // batch too large
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
     }
 
     // read ______________________________________
@@ -47,16 +135,69 @@ public class TransactionController {
         return transactionService.getTransaction(id);
     }
 
+    // keyset pagination : pass the previous page's nextCursor as "after"
+    // 304 when the If-None-Match ETag is still current : no query, no serialization
     @GetMapping("/user/{id}")
-    public List<TransactionDTO> getTransactionsByUser(@PathVariable int id) {
-        return transactionService.getTransactionsByUser(id);
+    public ResponseEntity<TransactionPageDTO> getTransactionsByUser(
+            @PathVariable int id,
+            @RequestParam(required = false) Integer after,
+            @RequestParam(defaultValue = "" + TransactionService.DEFAULT_PAGE_SIZE) int limit,
+            WebRequest request) {
+        String etag = userVersions.etag(id, UserVersions.Kind.TRANSACTIONS);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(transactionService.getTransactionsByUser(id, after, limit));
+    }
+
+    // sent and received totals with each counterparty, without reading the history
+    @GetMapping("/user/{id}/totals")
+    public TransferTotalsDTO getTotalsByUser(@PathVariable int id) {
+        return transactionService.getTotalsByUser(id);
+    }
+
+    // full history as a file (csv or ndjson), streamed off the request thread,
+    // on the export threads and with the export timeout (ExportTasks)
+    @GetMapping("/user/{id}/export")
+    public WebAsyncTask<Void> exportTransactions(
+            @PathVariable int id,
+            @RequestParam(defaultValue = TransactionExportService.CSV) String format,
+            HttpServletResponse response) {
+
+        // answered here, no async task
+        if (!transactionExportService.isSupported(format)) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
+        }
+        if (!transactionExportService.userExists(id)) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return null;
+        }
+
+        MediaType mediaType = TransactionExportService.CSV.equals(format)
+                ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : MediaType.APPLICATION_NDJSON;
+        response.setContentType(mediaType.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"transactions-" + id + "." + format + "\"");
+
+        return exportTasks.task(() -> {
+            transactionExportService.export(id, format, response.getOutputStream());
+            response.flushBuffer();
+            return null;
+        });
     }
 
     // update ____________________________________
     @PutMapping
     public ResponseEntity<String> updateTransaction(@RequestBody Transaction transaction) {
         if (transactionRepository.existsById(transaction.getId())) {
-            transactionService.update(transaction);
+            try {
+                transactionService.update(transaction);
+            } catch (IllegalArgumentException e) {
+                // users or amount of a settled transfer
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
             return ResponseEntity.status(HttpStatus.OK).body("Transaction mise à jour");
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Transaction non trouvée");
@@ -70,7 +211,12 @@ public class TransactionController {
         Optional<Transaction> transaction = transactionService.getTransaction(id);
 
         if (transaction.isPresent()) {
-            transactionService.delete(id);
+            try {
+                transactionService.delete(id);
+            } catch (IllegalStateException e) {
+                // the receiver has spent the amount, or one of the accounts is closed
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+            }
             return ResponseEntity.status(HttpStatus.OK).body("Transaction supprimée");
         }
         else
@@ -1,15 +1,22 @@
 package com.paymybuddy.controller;
 
+import com.paymybuddy.model.ConnectionSuggestionDTO;
+import com.paymybuddy.model.MutualConnectionsDTO;
+import com.paymybuddy.model.SessionUser;
 import com.paymybuddy.model.User;
+import com.paymybuddy.model.UserIdentity;
 import com.paymybuddy.model.UserProfileDTO;
+import com.paymybuddy.model.UserSearchResultDTO;
 import com.paymybuddy.repository.UserRepository;
 import com.paymybuddy.service.UserService;
-import jakarta.servlet.http.HttpSession;
+import com.paymybuddy.service.UserVersions;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -20,10 +27,12 @@ public class UserController {
 
     private final UserService userService;
     private final UserRepository userRepository;
+    private final UserVersions userVersions;
 
-    public UserController(UserService userService, UserRepository userRepository) {
+    public UserController(UserService userService, UserRepository userRepository, UserVersions userVersions) {
         this.userService = userService;
         this.userRepository = userRepository;
+        this.userVersions = userVersions;
     }
     // create ____________________________________
     // signup a new user
@@ -65,10 +74,15 @@ public class UserController {
                 .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
     // get all connections
+    // 304 when the If-None-Match ETag is still current : no query, no serialization
     @GetMapping("/{id}/connections")
-    public ResponseEntity<Set<UserProfileDTO>> getAllConnections(@PathVariable Integer id) {
+    public ResponseEntity<Set<UserProfileDTO>> getAllConnections(@PathVariable Integer id, WebRequest request) {
 
         log.info("getAllConnections id: {}", id);
+        String etag = userVersions.etag(id, UserVersions.Kind.CONNECTIONS);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
         Set<UserProfileDTO> connections = userService.getAllConnections(id);
 
         if (connections.isEmpty()) {
@@ -76,26 +90,55 @@ public class UserController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         } else {
             log.info("connections list contains {} connections", connections.size());
-            return ResponseEntity.ok(connections);
+            return ResponseEntity.ok().eTag(etag).body(connections);
+        }
+    }
+    // people the user may know : friends of their connections, most mutual connections first
+    @GetMapping("/{id}/suggestions")
+    public ResponseEntity<List<ConnectionSuggestionDTO>> getSuggestions(
+            @PathVariable Integer id,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            return ResponseEntity.ok(userService.getSuggestions(id, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+    // connections two users have in common
+    @GetMapping("/{id}/mutual/{otherId}")
+    public ResponseEntity<MutualConnectionsDTO> getMutualConnections(
+            @PathVariable Integer id,
+            @PathVariable Integer otherId,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(userService.getMutualConnections(id, otherId, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
+    // typeahead : users whose username or email starts with q, the user's connections first
+    @GetMapping("/search")
+    public ResponseEntity<List<UserSearchResultDTO>> search(
+            SessionUser connectedUser,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit) {
+        if (connectedUser == null) {
+            log.debug("no user in the session");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(userService.searchUsers(q, connectedUser.getId(), limit));
+    }
     // get a specific connection when authenticated
     @GetMapping("/connection/{email}")
-    public ResponseEntity<UserProfileDTO> findConnectionByEmail(HttpSession session, @PathVariable String email) {
+    public ResponseEntity<UserProfileDTO> findConnectionByEmail(SessionUser connectedUser, @PathVariable String email) {
         log.info("find connection by email: {}", email);
-        // find connected user by session email
-        if (session.getAttribute("email") == null) {
+        // connected user from the session
+        if (connectedUser == null) {
             log.error("user is null");
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
-        String sessionEmail = session.getAttribute("email").toString();
-        Optional<User> connectedUser = userService.findByEmail(sessionEmail);
-        if (connectedUser.isEmpty()) {
-            log.error("user not found");
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
         // search in this user's connections
-        int id = connectedUser.get().getId();
+        int id = connectedUser.getId();
         Optional<User> connection = userService.findConnection(id, email);
         if (connection.isEmpty()) {
             log.error("no connection found");
@@ -108,24 +151,19 @@ public class UserController {
                 null);
         return ResponseEntity.ok(foundConnection);
     }
-    // get the user's data by email from the session
+    // get the user's data from the session
     @GetMapping("/email")
-    public ResponseEntity<User> findByEmailFromSession(HttpSession session) {
-        String email = (String) session.getAttribute("email");
-        if (email == null) {
-            log.debug("email is empty");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null); // todo
-        }
-        Optional<User> connectedUser = userService.findByEmail(email);
-        if (connectedUser.isEmpty()) {
-            log.debug("user not found");
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    public ResponseEntity<UserIdentity> findByEmailFromSession(SessionUser connectedUser) {
+        if (connectedUser == null) {
+            log.debug("no user in the session");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
-        return ResponseEntity.ok(connectedUser.get());
+        return ResponseEntity.ok(new UserIdentity(
+                connectedUser.getId(), connectedUser.getUsername(), connectedUser.getEmail()));
     }
     @GetMapping("/find/{email}")
-    public ResponseEntity<User> findByEmail(@PathVariable String email) {
-        Optional<User> find = userService.findByEmail(email);
+    public ResponseEntity<UserIdentity> findByEmail(@PathVariable String email) {
+        Optional<UserIdentity> find = userService.findIdentityByEmail(email);
         return find.map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
@@ -166,18 +204,13 @@ public class UserController {
         if (validateResponse != null) {
             return validateResponse;
         }
-        // find connection's email
-        Optional<User> connection = userRepository.findById(connectionId);
-        if (connection.isPresent()) {
-            String email = connection.get().getEmail();
-            // check that a connection between both users exist
-            if (userService.findConnection(userId, email).isEmpty()) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body("Pas de lien entre les 2 utilisateurs trouvé");
-            }
-            // remove the connection
-            userService.removeConnection(userId, connectionId);
+        // check that a connection between both users exist
+        if (!userService.isConnected(userId, connectionId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Pas de lien entre les 2 utilisateurs trouvé");
         }
+        // remove the connection
+        userService.removeConnection(userId, connectionId);
         return ResponseEntity.ok("Connexion supprimée");
     }
 
@@ -1,5 +1,6 @@
 package com.paymybuddy.controller.pages;
 
+import com.paymybuddy.model.SessionUser;
 import com.paymybuddy.model.User;
 import com.paymybuddy.model.UserProfileDTO;
 import com.paymybuddy.service.UserService;
@@ -9,7 +10,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.security.Principal;
 import java.util.Optional;
 
 @RestController
@@ -21,15 +21,12 @@ public class ProfileRestController {
     private final UserService userService;
 
     @GetMapping("/profile")
-    public ResponseEntity<UserProfileDTO> getUserInfo(Principal principal) {
+    public ResponseEntity<UserProfileDTO> getUserInfo(SessionUser userFound) {
         log.info("Received GET request for profile");
-        log.info("Principal: {}", principal);
 
-        ResponseEntity<?> response = findUser(principal);
-
-        if (!(response.getBody() instanceof User userFound)) {
-            return ResponseEntity.status(response.getStatusCode())
-                    .build();
+        // read only : the principal of the session is enough
+        if (userFound == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
         UserProfileDTO userDTO = new UserProfileDTO(
@@ -40,7 +37,7 @@ public class ProfileRestController {
     }
 
     @PostMapping("/profile")
-    public ResponseEntity<String> updateProfile(@RequestBody UserProfileDTO user, Principal principal) {
+    public ResponseEntity<String> updateProfile(@RequestBody UserProfileDTO user, SessionUser principal) {
         log.info("Received POST request for profile");
 
         ResponseEntity<?> response = findUser(principal);
@@ -65,7 +62,7 @@ public class ProfileRestController {
     }
 
     @DeleteMapping("/profile")
-    public ResponseEntity<String> deleteProfile(Principal principal) {
+    public ResponseEntity<String> deleteProfile(SessionUser principal) {
 
         log.info("Received DELETE request for profile");
         ResponseEntity<?> response = findUser(principal);
@@ -75,17 +72,22 @@ public class ProfileRestController {
                     .body(response.toString());
         }
 
-        userService.deleteUser(userFound);
+        if (!userService.closeAccount(userFound)) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body("Compte fermé, suppression des données en cours");
+        }
         return ResponseEntity.ok("Compte supprimé avec succès");
     }
 
-    private ResponseEntity<?> findUser(Principal principal) {
+    // the entity, for the writes : looked up by the id of the session's principal,
+    // which stays right when the email changes
+    private ResponseEntity<?> findUser(SessionUser principal) {
         if (principal == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body("Utilisateur non authentifié");
         }
 
-        Optional<User> searchUser = userService.findByEmail(principal.getName());
+        Optional<User> searchUser = userService.findById(principal.getId());
         if (searchUser.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Utilisateur non trouvé");
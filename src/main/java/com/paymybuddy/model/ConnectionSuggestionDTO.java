@@ -0,0 +1,16 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConnectionSuggestionDTO {
+    private String username;
+    private String email;
+    // connections the user and this person have in common
+    private int mutualConnections;
+}
@@ -0,0 +1,20 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CounterpartyTotalDTO {
+    private int counterpartyId;
+    private String connectionName;
+    private BigDecimal sentTotal;
+    private BigDecimal receivedTotal;
+    private int transferCount;
+    private Integer lastTransactionId;
+}
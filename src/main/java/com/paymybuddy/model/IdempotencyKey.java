@@ -0,0 +1,66 @@
+package com.paymybuddy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Idempotency-Key sent with a transfer, claimed in the same DB transaction as the transfer, before the debit.
+ * Keys belong to the transfer's sender : the primary key (sender, key) makes a second transfer
+ * of that sender with the same key fail instead of paying twice.
+ */
+@Getter @Setter
+@NoArgsConstructor
+@Entity @Table(name = "idempotency_keys")
+@IdClass(IdempotencyKey.SenderKey.class)
+public class IdempotencyKey implements Persistable<IdempotencyKey.SenderKey> {
+    @Id
+    @Column(name = "sender_id")
+    private Integer senderId;
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+    // hash of the request, a reused key must come with the same request
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+    // null only while the transfer that claimed the key is being written, never once committed
+    @Column(name = "transaction_id")
+    private Integer transactionId;
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public IdempotencyKey(Integer senderId, String key, String fingerprint, Integer transactionId) {
+        this.senderId = senderId;
+        this.key = key;
+        this.fingerprint = fingerprint;
+        this.transactionId = transactionId;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    @Override
+    public SenderKey getId() {
+        return new SenderKey(senderId, key);
+    }
+
+    // always inserted, never merged into an existing row
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    @Getter @Setter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class SenderKey implements Serializable {
+        private Integer senderId;
+        private String key;
+    }
+}
@@ -0,0 +1,17 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class MutualConnectionsDTO {
+    // all of them, even when the list is cut
+    private int count;
+    private List<UserProfileDTO> connections;
+}
@@ -0,0 +1,34 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A row of outbox_events : something that happened, committed with the change itself.
+ * The payload is JSON ; aggregateId is the transaction id for transfers, the user id otherwise.
+ */
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent {
+
+    // payload : transactionId, senderId, receiverId, amount
+    public static final String TRANSFER_CREATED = "TRANSFER_CREATED";
+    // payload : userId, connectionId
+    public static final String CONNECTION_ADDED = "CONNECTION_ADDED";
+    public static final String CONNECTION_REMOVED = "CONNECTION_REMOVED";
+    // payload : userId, purged (false while a closed account waits for the background purge)
+    public static final String USER_DELETED = "USER_DELETED";
+
+    private long id;
+    private String type;
+    private int aggregateId;
+    private String payload;
+    private LocalDateTime createdAt;
+    // delivery attempts that failed so far
+    private int attempts;
+}
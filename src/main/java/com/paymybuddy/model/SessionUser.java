@@ -0,0 +1,32 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * The logged-in user, kept in the HTTP session from the login on.
+ * Handlers receive it as a method argument (SessionUserArgumentResolver), without a query.
+ * version is the user's profile version (UserVersions) when it was read : once the profile
+ * changes, or after a restart of the application, the next request reads the user again.
+ */
+@Getter
+@AllArgsConstructor
+public class SessionUser implements Serializable {
+
+    public static final String ATTRIBUTE = "user";
+
+    private final Integer id;
+    private final String username;
+    private final String email;
+    private final String version;
+
+    public static SessionUser of(UserIdentity identity, String version) {
+        return new SessionUser(identity.getId(), identity.getUsername(), identity.getEmail(), version);
+    }
+
+    public static SessionUser of(User user, String version) {
+        return new SessionUser(user.getId(), user.getUsername(), user.getEmail(), version);
+    }
+}
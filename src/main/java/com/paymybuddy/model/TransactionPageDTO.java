@@ -0,0 +1,18 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionPageDTO {
+    // newest first
+    private List<TransactionDTO> transactions;
+    // pass as "after" to get the next page, null on the last page
+    private Integer nextCursor;
+}
@@ -0,0 +1,18 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransferRequestDTO {
+    private Integer senderId;
+    private Integer receiverId;
+    private String description;
+    private BigDecimal amount;
+}
@@ -0,0 +1,18 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransferResultDTO {
+    // position of the transfer in the request
+    private int index;
+    // set when the transfer was created
+    private Integer transactionId;
+    // set when the transfer was rejected
+    private String error;
+}
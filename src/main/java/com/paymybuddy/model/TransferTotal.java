@@ -0,0 +1,24 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * One row of transfer_totals, or a change to add to it : what a user sent to and
+ * received from one counterparty.
+ */
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransferTotal {
+    private int userId;
+    private int counterpartyId;
+    private BigDecimal sentTotal;
+    private BigDecimal receivedTotal;
+    private int transferCount;
+    private Integer lastTransactionId;
+}
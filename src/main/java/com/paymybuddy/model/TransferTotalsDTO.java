@@ -0,0 +1,20 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransferTotalsDTO {
+    private BigDecimal sentTotal;
+    private BigDecimal receivedTotal;
+    private int transferCount;
+    // latest transfer first
+    private List<CounterpartyTotalDTO> counterparties;
+}
@@ -1,14 +1,21 @@
 package com.paymybuddy.model;
 
+import com.paymybuddy.config.HibernateCacheConfig;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Getter @Setter
 @Entity @Table(name = "users")
+// second-level cache : balance updates bypass Hibernate, TransferEngine evicts the users they touch
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.USERS)
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,8 +26,15 @@ public class User {
     private String email;
     @Column(nullable = false)
     private String password;
+    // only moved by TransferEngine, never written back from a loaded entity
+    @Column(nullable = false, updatable = false, precision = 10, scale = 2)
+    private BigDecimal balance = BigDecimal.ZERO;
+    // set when the account is closed and its history is still being purged
+    @Column(name = "deleted_at", updatable = false)
+    private LocalDateTime deletedAt;
 
     @ManyToMany
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.USER_CONNECTIONS)
     @JoinTable(
             name = "user_connections",
             joinColumns = @JoinColumn(name = "user_id"),
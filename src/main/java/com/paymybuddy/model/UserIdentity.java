@@ -0,0 +1,20 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Immutable snapshot of who a user is, safe to share between requests.
+ * Unlike the User entity it carries no connections nor password hash, and can never be saved back.
+ */
+@Getter
+@AllArgsConstructor
+public class UserIdentity {
+    private final Integer id;
+    private final String username;
+    private final String email;
+
+    public static UserIdentity of(User user) {
+        return new UserIdentity(user.getId(), user.getUsername(), user.getEmail());
+    }
+}
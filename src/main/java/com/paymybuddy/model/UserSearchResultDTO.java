@@ -0,0 +1,17 @@
+package com.paymybuddy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter @Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserSearchResultDTO {
+    private int id;
+    private String username;
+    private String email;
+    // already a connection of the user searching : ranked first
+    private boolean connected;
+}
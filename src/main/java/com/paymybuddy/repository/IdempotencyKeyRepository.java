@@ -0,0 +1,33 @@
+package com.paymybuddy.repository;
+
+import com.paymybuddy.model.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, IdempotencyKey.SenderKey> {
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE IdempotencyKey k SET k.transactionId = :transactionId WHERE k.senderId = :senderId AND k.key = :key")
+    int setTransactionId(@Param("senderId") Integer senderId,
+                         @Param("key") String key,
+                         @Param("transactionId") Integer transactionId);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+
+    // one expired key not purged yet, so that the sender can use it again
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.senderId = :senderId AND k.key = :key AND k.createdAt < :before")
+    int deleteExpired(@Param("senderId") Integer senderId,
+                      @Param("key") String key,
+                      @Param("before") LocalDateTime before);
+}
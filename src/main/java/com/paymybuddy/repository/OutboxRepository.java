@@ -0,0 +1,126 @@
+package com.paymybuddy.repository;
+
+import com.paymybuddy.model.OutboxEvent;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain JDBC access to outbox_events.
+ * insert joins the caller's DB transaction ; claim must run in a DB transaction of its own,
+ * committed before the events are dispatched.
+ */
+@Repository
+@Timed(value = "paymybuddy.jdbc.repository", histogram = true)
+public class OutboxRepository {
+
+    private static final String CLAIM = """
+            SELECT id, event_type, aggregate_id, payload, created_at, attempts
+              FROM outbox_events
+             WHERE available_at <= ?
+             ORDER BY available_at, id
+             LIMIT ?
+             FOR UPDATE""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public OutboxRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    // write _____________________________________
+    // available at once
+    public void insert(List<OutboxEvent> events) {
+        jdbcTemplate.batchUpdate("""
+                        INSERT INTO outbox_events (event_type, aggregate_id, payload, created_at, available_at, attempts)
+                        VALUES (?, ?, ?, ?, ?, 0)
+                        """,
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        OutboxEvent event = events.get(i);
+                        Timestamp createdAt = Timestamp.valueOf(event.getCreatedAt());
+                        ps.setString(1, event.getType());
+                        ps.setInt(2, event.getAggregateId());
+                        ps.setString(3, event.getPayload());
+                        ps.setTimestamp(4, createdAt);
+                        ps.setTimestamp(5, createdAt);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return events.size();
+                    }
+                });
+    }
+
+    // relay _____________________________________
+    // the oldest available events, hidden from other relays until leasedUntil.
+    // With skipLocked, rows another relay is claiming are passed over instead of waited for
+    public List<OutboxEvent> claim(int limit, LocalDateTime now, LocalDateTime leasedUntil, boolean skipLocked) {
+        List<OutboxEvent> events = jdbcTemplate.query(CLAIM + (skipLocked ? " SKIP LOCKED" : ""),
+                (rs, rowNum) -> new OutboxEvent(
+                        rs.getLong("id"),
+                        rs.getString("event_type"),
+                        rs.getInt("aggregate_id"),
+                        rs.getString("payload"),
+                        rs.getTimestamp("created_at").toLocalDateTime(),
+                        rs.getInt("attempts")),
+                Timestamp.valueOf(now), limit);
+        if (!events.isEmpty()) {
+            namedJdbcTemplate.update("UPDATE outbox_events SET available_at = :leasedUntil WHERE id IN (:ids)",
+                    new MapSqlParameterSource("leasedUntil", Timestamp.valueOf(leasedUntil))
+                            .addValue("ids", ids(events)));
+        }
+        return events;
+    }
+
+    // whether the database understands FOR UPDATE SKIP LOCKED (MySQL 8, H2 2.2 and later)
+    public boolean supportsSkipLocked() {
+        try {
+            jdbcTemplate.queryForList("SELECT id FROM outbox_events WHERE id < 0 FOR UPDATE SKIP LOCKED", Long.class);
+            return true;
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
+
+    public void delete(List<OutboxEvent> events) {
+        if (!events.isEmpty()) {
+            namedJdbcTemplate.update("DELETE FROM outbox_events WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", ids(events)));
+        }
+    }
+
+    // failed deliveries : attempts + 1, claimable again from their retry time
+    public void reschedule(Map<OutboxEvent, LocalDateTime> retries) {
+        if (retries.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(retries.size());
+        retries.forEach((event, retryAt) -> args.add(new Object[]{Timestamp.valueOf(retryAt), event.getId()}));
+        jdbcTemplate.batchUpdate("UPDATE outbox_events SET attempts = attempts + 1, available_at = ? WHERE id = ?", args);
+    }
+
+    private static List<Long> ids(List<OutboxEvent> events) {
+        List<Long> ids = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+}
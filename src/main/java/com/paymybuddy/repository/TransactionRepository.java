@@ -1,19 +1,77 @@
 package com.paymybuddy.repository;
 
 import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.TransactionDTO;
 import com.paymybuddy.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Integer> {
 
-    @Query("SELECT t FROM Transaction t WHERE t.sender = :user OR t.receiver = :user")
-    List<Transaction> findByUser(User user);
     List<Transaction> findBySender(User sender);
     List<Transaction> findByReceiver(User receiver);
     List<Transaction> findBySenderAndReceiver(User sender, User receiver);
+
+    // keyset page : transactions older than the cursor, newest first, read straight
+    // into DTOs with the counterparty's username joined in SQL.
+    // one branch per side so each can walk its own (sender_id, id) / (receiver_id, id) index
+    // instead of the OR that forces a full scan ; the receiver branch skips self transfers
+    // so that no row comes back twice
+    @Query(value = """
+            (SELECT t.id AS id, u.username AS connectionName, t.description AS description, t.amount AS amount
+               FROM transactions t JOIN users u ON u.id = t.receiver_id
+              WHERE t.sender_id = :userId AND t.id < :before
+              ORDER BY t.id DESC LIMIT :limit)
+            UNION ALL
+            (SELECT t.id, u.username, t.description, t.amount
+               FROM transactions t JOIN users u ON u.id = t.sender_id
+              WHERE t.receiver_id = :userId AND t.sender_id <> :userId AND t.id < :before
+              ORDER BY t.id DESC LIMIT :limit)
+            ORDER BY id DESC LIMIT :limit
+            """, nativeQuery = true)
+    List<TransactionDTO> findPageByUser(@Param("userId") Integer userId,
+                                        @Param("before") Integer before,
+                                        @Param("limit") int limit);
+
+    // the whole history, oldest first, for exports : rows are read as the stream is consumed,
+    // a DB transaction must stay open until the stream is closed
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = """
+            SELECT t.id AS id, u.username AS connectionName, t.description AS description, t.amount AS amount
+              FROM transactions t JOIN users u ON u.id = t.receiver_id
+             WHERE t.sender_id = :userId
+            UNION ALL
+            SELECT t.id, u.username, t.description, t.amount
+              FROM transactions t JOIN users u ON u.id = t.sender_id
+             WHERE t.receiver_id = :userId AND t.sender_id <> :userId
+            ORDER BY id
+            """, nativeQuery = true)
+    Stream<TransactionDTO> streamAllByUser(@Param("userId") Integer userId);
+
+    // erase _____________________________________
+    // the descriptions written by a closed account : free text, the amounts and the parties stay.
+    // On the sender's foreign key index
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Transaction t SET t.description = NULL WHERE t.sender.id = :senderId AND t.description IS NOT NULL")
+    int clearDescriptionsBySenderId(@Param("senderId") Integer senderId);
+
+    // chunks of a large history, erased with clearDescriptions
+    @Query("SELECT t.id FROM Transaction t WHERE t.sender.id = :senderId AND t.description IS NOT NULL")
+    List<Integer> findDescribedIdsBySenderId(@Param("senderId") Integer senderId, Limit limit);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Transaction t SET t.description = NULL WHERE t.id IN :ids")
+    int clearDescriptions(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,119 @@
+package com.paymybuddy.repository;
+
+import com.paymybuddy.model.TransferRequestDTO;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain JDBC access for batched transfers.
+ * Transaction ids are IDENTITY generated, which stops Hibernate from batching inserts,
+ * so the rows are written here with JDBC batches and the generated keys read back.
+ * Must run inside the caller's DB transaction.
+ */
+@Repository
+@Timed(value = "paymybuddy.jdbc.repository", histogram = true)
+public class TransferJdbcRepository {
+
+    private static final String INSERT_TRANSACTION =
+            "INSERT INTO transactions (sender_id, receiver_id, description, amount) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_BALANCE =
+            "UPDATE users SET balance = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public TransferJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    // locks the rows of the existing users, ascending id order, and returns their balance.
+    // unknown ids and closed accounts are simply missing from the result
+    public Map<Integer, BigDecimal> lockBalances(Collection<Integer> userIds) {
+        Map<Integer, BigDecimal> balances = new LinkedHashMap<>();
+        if (userIds.isEmpty()) {
+            return balances;
+        }
+        namedJdbcTemplate.query(
+                "SELECT id, balance FROM users WHERE id IN (:ids) AND deleted_at IS NULL ORDER BY id FOR UPDATE",
+                new MapSqlParameterSource("ids", userIds),
+                (RowCallbackHandler) rs -> balances.put(rs.getInt("id"), rs.getBigDecimal("balance")));
+        return balances;
+    }
+
+    public void updateBalances(Map<Integer, BigDecimal> balances) {
+        List<Map.Entry<Integer, BigDecimal>> entries = new ArrayList<>(balances.entrySet());
+        jdbcTemplate.batchUpdate(UPDATE_BALANCE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setBigDecimal(1, entries.get(i).getValue());
+                ps.setInt(2, entries.get(i).getKey());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        });
+    }
+
+    // returns the generated transaction ids, in the order of the transfers
+    public List<Integer> insertTransactions(List<TransferRequestDTO> transfers) {
+        if (transfers.isEmpty()) {
+            return List.of();
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_TRANSACTION, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        TransferRequestDTO transfer = transfers.get(i);
+                        ps.setInt(1, transfer.getSenderId());
+                        ps.setInt(2, transfer.getReceiverId());
+                        ps.setString(3, transfer.getDescription());
+                        ps.setBigDecimal(4, transfer.getAmount());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return transfers.size();
+                    }
+                },
+                keyHolder);
+
+        List<Integer> ids = new ArrayList<>(transfers.size());
+        for (Map<String, Object> keys : keyHolder.getKeyList()) {
+            ids.add(((Number) keys.values().iterator().next()).intValue());
+        }
+        return ids;
+    }
+
+    // the users the user has transfers with, read from the history : one side per index,
+    // sent by the user, then received by the user
+    public List<Integer> findCounterpartyIds(int userId) {
+        return jdbcTemplate.queryForList("""
+                        SELECT receiver_id FROM transactions WHERE sender_id = ?
+                        UNION
+                        SELECT sender_id FROM transactions WHERE receiver_id = ?
+                        """,
+                Integer.class, userId, userId);
+    }
+}
@@ -0,0 +1,199 @@
+package com.paymybuddy.repository;
+
+import com.paymybuddy.model.CounterpartyTotalDTO;
+import com.paymybuddy.model.TransferTotal;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plain JDBC access to transfer_totals.
+ * Writers must hold the row locks of both users of each pair (TransferJdbcRepository.lockBalances,
+ * or the balance updates of a transfer) : a missing row is then inserted by one writer only.
+ * Must run inside the caller's DB transaction.
+ */
+@Repository
+@Timed(value = "paymybuddy.jdbc.repository", histogram = true)
+public class TransferTotalsRepository {
+
+    private static final String ADD = """
+            UPDATE transfer_totals
+               SET sent_total = sent_total + ?, received_total = received_total + ?,
+                   transfer_count = transfer_count + ?,
+                   last_transaction_id = GREATEST(COALESCE(last_transaction_id, 0), ?)
+             WHERE user_id = ? AND counterparty_id = ?
+            """;
+    private static final String INSERT = """
+            INSERT INTO transfer_totals
+                   (user_id, counterparty_id, sent_total, received_total, transfer_count, last_transaction_id)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public TransferTotalsRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    // read ______________________________________
+    // one primary key range : as many rows as the user has counterparties
+    public List<CounterpartyTotalDTO> findByUserId(int userId) {
+        return jdbcTemplate.query("""
+                        SELECT t.counterparty_id, u.username, t.sent_total, t.received_total,
+                               t.transfer_count, t.last_transaction_id
+                          FROM transfer_totals t JOIN users u ON u.id = t.counterparty_id
+                         WHERE t.user_id = ?
+                         ORDER BY t.last_transaction_id DESC
+                        """,
+                (rs, rowNum) -> new CounterpartyTotalDTO(
+                        rs.getInt("counterparty_id"),
+                        rs.getString("username"),
+                        rs.getBigDecimal("sent_total"),
+                        rs.getBigDecimal("received_total"),
+                        rs.getInt("transfer_count"),
+                        (Integer) rs.getObject("last_transaction_id", Integer.class)),
+                userId);
+    }
+
+    public List<Integer> findCounterpartyIds(int userId) {
+        return jdbcTemplate.queryForList("SELECT counterparty_id FROM transfer_totals WHERE user_id = ?",
+                Integer.class, userId);
+    }
+
+    // write _____________________________________
+    // adds each change to its row, creating the missing rows. One change per row at most
+    public void add(Collection<TransferTotal> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<Object[]> keys = new ArrayList<>(changes.size());
+        for (TransferTotal change : changes) {
+            keys.add(new Object[]{change.getUserId(), change.getCounterpartyId()});
+        }
+        Set<Long> existing = new HashSet<>();
+        namedJdbcTemplate.query(
+                "SELECT user_id, counterparty_id FROM transfer_totals WHERE (user_id, counterparty_id) IN (:keys)",
+                new MapSqlParameterSource("keys", keys),
+                (RowCallbackHandler) rs -> existing.add(key(rs.getInt("user_id"), rs.getInt("counterparty_id"))));
+
+        List<TransferTotal> updates = new ArrayList<>(existing.size());
+        List<TransferTotal> inserts = new ArrayList<>(changes.size() - existing.size());
+        for (TransferTotal change : changes) {
+            (existing.contains(key(change.getUserId(), change.getCounterpartyId())) ? updates : inserts).add(change);
+        }
+
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(ADD, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    TransferTotal change = updates.get(i);
+                    ps.setBigDecimal(1, change.getSentTotal());
+                    ps.setBigDecimal(2, change.getReceivedTotal());
+                    ps.setInt(3, change.getTransferCount());
+                    ps.setInt(4, change.getLastTransactionId());
+                    ps.setInt(5, change.getUserId());
+                    ps.setInt(6, change.getCounterpartyId());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return updates.size();
+                }
+            });
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    TransferTotal change = inserts.get(i);
+                    ps.setInt(1, change.getUserId());
+                    ps.setInt(2, change.getCounterpartyId());
+                    ps.setBigDecimal(3, change.getSentTotal());
+                    ps.setBigDecimal(4, change.getReceivedTotal());
+                    ps.setInt(5, change.getTransferCount());
+                    ps.setObject(6, change.getLastTransactionId(), Types.INTEGER);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return inserts.size();
+                }
+            });
+        }
+    }
+
+    // takes one transaction out of a row : the row goes with its last transaction,
+    // its last_transaction_id is looked up again when it was this one
+    public void remove(int userId, int counterpartyId, BigDecimal sent, BigDecimal received, int transactionId) {
+        jdbcTemplate.update("""
+                        UPDATE transfer_totals
+                           SET sent_total = sent_total - ?, received_total = received_total - ?,
+                               transfer_count = transfer_count - 1
+                         WHERE user_id = ? AND counterparty_id = ?
+                        """,
+                sent, received, userId, counterpartyId);
+        jdbcTemplate.update("DELETE FROM transfer_totals WHERE user_id = ? AND counterparty_id = ? AND transfer_count <= 0",
+                userId, counterpartyId);
+        jdbcTemplate.update("""
+                        UPDATE transfer_totals
+                           SET last_transaction_id = (
+                               SELECT MAX(t.id) FROM transactions t
+                                WHERE ((t.sender_id = ? AND t.receiver_id = ?) OR (t.sender_id = ? AND t.receiver_id = ?))
+                                  AND t.id <> ?)
+                         WHERE user_id = ? AND counterparty_id = ? AND last_transaction_id = ?
+                        """,
+                userId, counterpartyId, counterpartyId, userId, transactionId,
+                userId, counterpartyId, transactionId);
+    }
+
+    // backfill __________________________________
+    // what each sender sent to each receiver in (fromId, toId], as sender-side rows
+    public List<TransferTotal> sumTransactions(int fromId, int toId) {
+        return jdbcTemplate.query("""
+                        SELECT sender_id, receiver_id, SUM(amount) AS amount, COUNT(*) AS transfers, MAX(id) AS last_id
+                          FROM transactions
+                         WHERE id > ? AND id <= ?
+                         GROUP BY sender_id, receiver_id
+                        """,
+                (rs, rowNum) -> new TransferTotal(
+                        rs.getInt("sender_id"),
+                        rs.getInt("receiver_id"),
+                        rs.getBigDecimal("amount"),
+                        BigDecimal.ZERO,
+                        rs.getInt("transfers"),
+                        rs.getInt("last_id")),
+                fromId, toId);
+    }
+
+    // {watermark, backfilled_up_to}. With lock, backfill chunks and removals of
+    // transactions under the watermark queue on this row
+    public int[] findBackfillProgress(boolean lock) {
+        return jdbcTemplate.queryForObject(
+                "SELECT watermark, backfilled_up_to FROM transfer_totals_backfill WHERE id = 1" + (lock ? " FOR UPDATE" : ""),
+                (rs, rowNum) -> new int[]{rs.getInt("watermark"), rs.getInt("backfilled_up_to")});
+    }
+
+    public void updateBackfilledUpTo(int transactionId) {
+        jdbcTemplate.update("UPDATE transfer_totals_backfill SET backfilled_up_to = ? WHERE id = 1", transactionId);
+    }
+
+    private static long key(int userId, int counterpartyId) {
+        return ((long) userId << 32) | (counterpartyId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,62 @@
+package com.paymybuddy.repository;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plain JDBC access to user_purges, the purges still to do.
+ * insert joins the caller's DB transaction, the closing of the account.
+ */
+@Repository
+@Timed(value = "paymybuddy.jdbc.repository", histogram = true)
+public class UserPurgeRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserPurgeRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // write _____________________________________
+    // due at once
+    public void insert(int userId, LocalDateTime now) {
+        Timestamp createdAt = Timestamp.valueOf(now);
+        jdbcTemplate.update("INSERT INTO user_purges (user_id, created_at, retry_at, attempts) VALUES (?, ?, ?, 0)",
+                userId, createdAt, createdAt);
+    }
+
+    public void delete(int userId) {
+        jdbcTemplate.update("DELETE FROM user_purges WHERE user_id = ?", userId);
+    }
+
+    public void reschedule(int userId, LocalDateTime retryAt, String error) {
+        jdbcTemplate.update("""
+                        UPDATE user_purges
+                           SET attempts = attempts + 1, retry_at = ?, last_error = ?
+                         WHERE user_id = ?
+                        """,
+                Timestamp.valueOf(retryAt), error, userId);
+    }
+
+    // read ______________________________________
+    // user id -> attempts so far, of the purges due by now, oldest retry first
+    public Map<Integer, Integer> findDue(LocalDateTime now, int limit) {
+        Map<Integer, Integer> due = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT user_id, attempts FROM user_purges WHERE retry_at <= ? ORDER BY retry_at, user_id LIMIT ?",
+                (RowCallbackHandler) rs -> due.put(rs.getInt("user_id"), rs.getInt("attempts")),
+                Timestamp.valueOf(now), limit);
+        return due;
+    }
+
+    // purges that failed at least once and are not done yet
+    public int countFailing() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_purges WHERE attempts > 0", Integer.class);
+    }
+}
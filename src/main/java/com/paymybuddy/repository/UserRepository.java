@@ -1,21 +1,70 @@
 package com.paymybuddy.repository;
 
 import com.paymybuddy.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.Set;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Integer> {
 
+    // in the query cache, dropped by Hibernate whenever the users table changes through it
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<User> findByUsername(String username);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<User> findByEmail(String email);
 
     @Query("SELECT u.connections FROM User u WHERE u.id = :userId")
     Set<User> findConnectionsByUserId(@Param("userId") Integer userId);
 
+    // balance ___________________________________
+    // each statement locks the user's row until the end of the DB transaction.
+    // A closed account's balance never moves : it matches no row.
+    // Native, synchronized on BALANCE_SPACE only : as a JPQL update, each transfer would drop
+    // every user of the second-level cache. TransferEngine evicts the two users instead
+    String BALANCE_SPACE = "users_balance";
+
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = BALANCE_SPACE))
+    @Query(value = "UPDATE users SET balance = balance - :amount WHERE id = :userId AND deleted_at IS NULL AND balance >= :amount",
+            nativeQuery = true)
+    int debit(@Param("userId") Integer userId, @Param("amount") BigDecimal amount);
+
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = BALANCE_SPACE))
+    @Query(value = "UPDATE users SET balance = balance + :amount WHERE id = :userId AND deleted_at IS NULL", nativeQuery = true)
+    int credit(@Param("userId") Integer userId, @Param("amount") BigDecimal amount);
+
+    // delete ____________________________________
+    // drops the cached connections, and not the cached users
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_connections"))
+    @Query(value = "DELETE FROM user_connections WHERE user_id = :userId OR connection_id = :userId", nativeQuery = true)
+    int deleteConnections(@Param("userId") Integer userId);
+
+    boolean existsByIdAndDeletedAtIsNull(Integer id);
+
+    // close _____________________________________
+    // the row stays, so that the settled transfers keep both their parties : only who the user
+    // was goes. No email matches the anonymized one, no password matches an empty hash.
+    // 0 when there is no such user or it is already closed
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            UPDATE User u
+               SET u.username = CONCAT('deleted-', CAST(u.id AS String)),
+                   u.email = CONCAT('deleted-', CAST(u.id AS String), '@paymybuddy.invalid'),
+                   u.password = '', u.deletedAt = :deletedAt
+             WHERE u.id = :userId AND u.deletedAt IS NULL
+            """)
+    int close(@Param("userId") Integer userId, @Param("deletedAt") LocalDateTime deletedAt);
 }
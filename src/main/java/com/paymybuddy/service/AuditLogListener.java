@@ -0,0 +1,17 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.OutboxEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+// audit trail of the money movements and account changes, in the paymybuddy.audit log
+@Component
+@Slf4j(topic = "paymybuddy.audit")
+public class AuditLogListener implements OutboxListener {
+
+    @Override
+    public void onEvent(OutboxEvent event) {
+        log.info("event {} {} aggregate {} at {} : {}", event.getId(), event.getType(), event.getAggregateId(),
+                event.getCreatedAt(), event.getPayload());
+    }
+}
@@ -0,0 +1,537 @@
+package com.paymybuddy.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.paymybuddy.model.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * In-memory copy of user_connections, loaded at startup.
+ * Each user's connections are an immutable open-addressing table of ints indexed by
+ * user id (ids are AUTO_INCREMENT, so dense). Readers never lock nor allocate; writers
+ * replace the two tables involved. The service keeps it in sync after each commit,
+ * which assumes a single application instance writes the connections.
+ * Suggestions (friends of friends, by mutual connections) are computed from it and cached
+ * per user ; a link change drops the entries of both users and of their connections.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class ConnectionGraph {
+
+    public static final int MAX_SUGGESTIONS = 50;
+
+    private final Object writeLock = new Object();
+    private volatile AtomicReferenceArray<Neighbors> adjacency = new AtomicReferenceArray<>(0);
+    private volatile AtomicReferenceArray<String> emails = new AtomicReferenceArray<>(0);
+    private volatile AtomicReferenceArray<String> usernames = new AtomicReferenceArray<>(0);
+    private final Map<String, Integer> idsByEmail = new ConcurrentHashMap<>();
+    // connections looked at per user, and connections of each of them
+    private final int maxFanout;
+    private final Cache<Integer, Suggestions> suggestionsCache;
+
+    public ConnectionGraph(JdbcTemplate jdbcTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${paymybuddy.connections.suggestions.max-fanout:200}") int maxFanout,
+                           @Value("${paymybuddy.connections.suggestions.cache.max-size:10000}") long cacheMaxSize) {
+        this.maxFanout = maxFanout;
+        // evictions run on the caller : a max-size of 0 turns the cache off
+        this.suggestionsCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, suggestionsCache, "connectionSuggestions");
+        load(jdbcTemplate);
+    }
+
+    // read ______________________________________
+    public boolean areConnected(int userId, int connectionId) {
+        Neighbors neighbors = neighbors(userId);
+        return neighbors != null && neighbors.contains(connectionId);
+    }
+
+    public Integer findIdByEmail(String email) {
+        return email == null ? null : idsByEmail.get(key(email));
+    }
+
+    // null when the user has no connection
+    public Neighbors neighbors(int userId) {
+        AtomicReferenceArray<Neighbors> current = adjacency;
+        return userId > 0 && userId < current.length() ? current.get(userId) : null;
+    }
+
+    // null for unknown and deleted users
+    public String email(int userId) {
+        AtomicReferenceArray<String> current = emails;
+        return userId > 0 && userId < current.length() ? current.get(userId) : null;
+    }
+
+    public String username(int userId) {
+        AtomicReferenceArray<String> current = usernames;
+        return userId > 0 && userId < current.length() ? current.get(userId) : null;
+    }
+
+    // ascending ids ; walks the smaller of the two sets
+    public int[] mutualConnections(int userId, int otherId) {
+        Neighbors first = neighbors(userId);
+        Neighbors second = neighbors(otherId);
+        if (first == null || second == null) {
+            return new int[0];
+        }
+        Neighbors small = first.size <= second.size ? first : second;
+        Neighbors large = small == first ? second : first;
+
+        int[] mutual = new int[small.size];
+        int count = 0;
+        for (int id : small.table) {
+            if (id != 0 && large.contains(id)) {
+                mutual[count++] = id;
+            }
+        }
+        mutual = Arrays.copyOf(mutual, count);
+        Arrays.sort(mutual);
+        return mutual;
+    }
+
+    // friends of friends by mutual connections, most first, at most MAX_SUGGESTIONS.
+    // may hold users deleted since it was computed : check email()
+    public Suggestions suggestions(int userId) {
+        return suggestionsCache.get(userId, this::computeSuggestions);
+    }
+
+    // write, once the DB transaction committed ___
+    public void connect(int userId, int connectionId) {
+        afterCommit(() -> {
+            synchronized (writeLock) {
+                ensureCapacity(Math.max(userId, connectionId));
+                adjacency.set(userId, Neighbors.with(adjacency.get(userId), connectionId));
+                adjacency.set(connectionId, Neighbors.with(adjacency.get(connectionId), userId));
+                invalidateSuggestions(userId, connectionId);
+            }
+        });
+    }
+
+    public void disconnect(int userId, int connectionId) {
+        afterCommit(() -> {
+            synchronized (writeLock) {
+                ensureCapacity(Math.max(userId, connectionId));
+                adjacency.set(userId, Neighbors.without(adjacency.get(userId), connectionId));
+                adjacency.set(connectionId, Neighbors.without(adjacency.get(connectionId), userId));
+                invalidateSuggestions(userId, connectionId);
+            }
+        });
+    }
+
+    public void putUser(User user) {
+        int userId = user.getId();
+        String email = user.getEmail();
+        String username = user.getUsername();
+        afterCommit(() -> {
+            synchronized (writeLock) {
+                ensureCapacity(userId);
+                usernames.set(userId, username);
+                String previous = emails.getAndSet(userId, email);
+                if (previous != null && !previous.equalsIgnoreCase(email)) {
+                    idsByEmail.remove(key(previous), userId);
+                }
+                idsByEmail.put(key(email), userId);
+            }
+        });
+    }
+
+    public void removeUser(User user) {
+        int userId = user.getId();
+        afterCommit(() -> {
+            synchronized (writeLock) {
+                ensureCapacity(userId);
+                Neighbors neighbors = adjacency.getAndSet(userId, null);
+                if (neighbors != null) {
+                    neighbors.forEach(other ->
+                            adjacency.set(other, Neighbors.without(adjacency.get(other), userId)));
+                }
+                invalidateSuggestions(userId, neighbors);
+                usernames.set(userId, null);
+                String email = emails.getAndSet(userId, null);
+                if (email != null) {
+                    idsByEmail.remove(key(email), userId);
+                }
+            }
+        });
+    }
+
+    // suggestions ______________________________
+    // counts, for each friend of a friend, the friends it shares with the user. Above
+    // maxFanout connections only the first maxFanout (in table order) are looked at
+    private Suggestions computeSuggestions(int userId) {
+        Neighbors friends = neighbors(userId);
+        if (friends == null) {
+            return Suggestions.EMPTY;
+        }
+        Counts counts = new Counts();
+        friends.forEach(maxFanout, friend -> {
+            Neighbors friendsOfFriend = neighbors(friend);
+            if (friendsOfFriend != null) {
+                friendsOfFriend.forEach(maxFanout, candidate -> {
+                    if (candidate != userId && !friends.contains(candidate)) {
+                        counts.increment(candidate);
+                    }
+                });
+            }
+        });
+
+        // keeps the best MAX_SUGGESTIONS : higher count first, then lower id
+        PriorityQueue<Long> best = new PriorityQueue<>();
+        for (int i = 0; i < counts.keys.length; i++) {
+            if (counts.keys[i] != 0) {
+                long rank = ((long) counts.values[i] << 32) | (Integer.MAX_VALUE - counts.keys[i]);
+                if (best.size() < MAX_SUGGESTIONS) {
+                    best.add(rank);
+                } else if (rank > best.peek()) {
+                    best.poll();
+                    best.add(rank);
+                }
+            }
+        }
+        int[] ids = new int[best.size()];
+        int[] mutual = new int[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            long rank = best.poll();
+            ids[i] = Integer.MAX_VALUE - (int) rank;
+            mutual[i] = (int) (rank >>> 32);
+        }
+        return new Suggestions(ids, mutual);
+    }
+
+    // the suggestions of a and b, and of everyone connected to them, count a and b's connections
+    private void invalidateSuggestions(int userId, int connectionId) {
+        invalidateSuggestions(userId, adjacency.get(userId));
+        invalidateSuggestions(connectionId, adjacency.get(connectionId));
+    }
+
+    private void invalidateSuggestions(int userId, Neighbors neighbors) {
+        List<Integer> keys = new ArrayList<>(neighbors == null ? 1 : neighbors.size + 1);
+        keys.add(userId);
+        if (neighbors != null) {
+            neighbors.forEach(keys::add);
+        }
+        suggestionsCache.invalidateAll(keys);
+    }
+
+    // helpers ___________________________________
+    private void load(JdbcTemplate jdbcTemplate) {
+        long start = System.currentTimeMillis();
+        // rows are read into growable lists first, then frozen into tables
+        EdgeReader reader = new EdgeReader();
+        jdbcTemplate.query("SELECT user_id, connection_id FROM user_connections", reader);
+
+        int maxId = reader.maxId;
+        Map<Integer, String> emailsById = new HashMap<>();
+        Map<Integer, String> usernamesById = new HashMap<>();
+        // closed accounts waiting for their purge are left out, as removeUser left them at closing
+        jdbcTemplate.query("SELECT id, email, username FROM users WHERE deleted_at IS NULL", (RowCallbackHandler) rs -> {
+            int id = rs.getInt("id");
+            String email = rs.getString("email");
+            idsByEmail.put(key(email), id);
+            emailsById.put(id, email);
+            usernamesById.put(id, rs.getString("username"));
+        });
+        for (int id : idsByEmail.values()) {
+            maxId = Math.max(maxId, id);
+        }
+
+        AtomicReferenceArray<Neighbors> loaded = new AtomicReferenceArray<>(capacityFor(maxId));
+        for (int id = 0; id < reader.lists.length; id++) {
+            if (reader.sizes[id] > 0) {
+                loaded.set(id, Neighbors.of(reader.lists[id], reader.sizes[id]));
+            }
+        }
+        AtomicReferenceArray<String> loadedEmails = new AtomicReferenceArray<>(loaded.length());
+        emailsById.forEach(loadedEmails::set);
+        AtomicReferenceArray<String> loadedUsernames = new AtomicReferenceArray<>(loaded.length());
+        usernamesById.forEach(loadedUsernames::set);
+        adjacency = loaded;
+        emails = loadedEmails;
+        usernames = loadedUsernames;
+        log.info("connection graph loaded : {} users, {} links in {} ms",
+                idsByEmail.size(), reader.edges, System.currentTimeMillis() - start);
+    }
+
+    private void ensureCapacity(int userId) {
+        if (userId < adjacency.length()) {
+            return;
+        }
+        int capacity = capacityFor(userId);
+        AtomicReferenceArray<Neighbors> grownAdjacency = new AtomicReferenceArray<>(capacity);
+        AtomicReferenceArray<String> grownEmails = new AtomicReferenceArray<>(capacity);
+        AtomicReferenceArray<String> grownUsernames = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < adjacency.length(); i++) {
+            grownAdjacency.set(i, adjacency.get(i));
+            grownEmails.set(i, emails.get(i));
+            grownUsernames.set(i, usernames.get(i));
+        }
+        adjacency = grownAdjacency;
+        emails = grownEmails;
+        usernames = grownUsernames;
+    }
+
+    private static int capacityFor(int maxId) {
+        return Math.max(1024, Integer.highestOneBit(maxId) << 1);
+    }
+
+    private static void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    private static String key(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class EdgeReader implements RowCallbackHandler {
+        int[][] lists = new int[1024][];
+        int[] sizes = new int[1024];
+        int maxId;
+        long edges;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            add(rs.getInt(1), rs.getInt(2));
+            edges++;
+        }
+
+        private void add(int userId, int connectionId) {
+            maxId = Math.max(maxId, Math.max(userId, connectionId));
+            if (userId >= lists.length) {
+                int capacity = capacityFor(userId);
+                lists = Arrays.copyOf(lists, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+            int[] list = lists[userId];
+            if (list == null) {
+                list = lists[userId] = new int[4];
+            } else if (sizes[userId] == list.length) {
+                list = lists[userId] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[sizes[userId]++] = connectionId;
+        }
+    }
+
+    /**
+     * Immutable set of user ids, open addressing with linear probing (0 marks a free slot).
+     */
+    public static final class Neighbors {
+        private final int[] table;
+        private final int size;
+
+        private Neighbors(int[] table, int size) {
+            this.table = table;
+            this.size = size;
+        }
+
+        static Neighbors of(int[] ids, int count) {
+            int[] table = new int[tableSize(count)];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                if (insert(table, ids[i])) {
+                    size++;
+                }
+            }
+            return new Neighbors(table, size);
+        }
+
+        static Neighbors with(Neighbors neighbors, int id) {
+            if (neighbors == null) {
+                return of(new int[]{id}, 1);
+            }
+            if (neighbors.contains(id)) {
+                return neighbors;
+            }
+            int[] ids = Arrays.copyOf(neighbors.toArray(), neighbors.size + 1);
+            ids[neighbors.size] = id;
+            return of(ids, ids.length);
+        }
+
+        static Neighbors without(Neighbors neighbors, int id) {
+            if (neighbors == null || !neighbors.contains(id)) {
+                return neighbors;
+            }
+            if (neighbors.size == 1) {
+                return null;
+            }
+            int[] ids = new int[neighbors.size - 1];
+            int i = 0;
+            for (int other : neighbors.table) {
+                if (other != 0 && other != id) {
+                    ids[i++] = other;
+                }
+            }
+            return of(ids, ids.length);
+        }
+
+        public boolean contains(int id) {
+            int mask = table.length - 1;
+            for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+                int slot = table[i];
+                if (slot == id) {
+                    return true;
+                }
+                if (slot == 0) {
+                    return false;
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void forEach(IntConsumer action) {
+            forEach(Integer.MAX_VALUE, action);
+        }
+
+        // the first `limit` ids only, in table order
+        public void forEach(int limit, IntConsumer action) {
+            int seen = 0;
+            for (int i = 0; i < table.length && seen < limit; i++) {
+                if (table[i] != 0) {
+                    action.accept(table[i]);
+                    seen++;
+                }
+            }
+        }
+
+        public int[] toArray() {
+            int[] ids = new int[size];
+            int i = 0;
+            for (int id : table) {
+                if (id != 0) {
+                    ids[i++] = id;
+                }
+            }
+            return ids;
+        }
+
+        private static boolean insert(int[] table, int id) {
+            int mask = table.length - 1;
+            for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == id) {
+                    return false;
+                }
+                if (table[i] == 0) {
+                    table[i] = id;
+                    return true;
+                }
+            }
+        }
+
+        // at most half full, so probes stay short
+        private static int tableSize(int count) {
+            return Math.max(4, Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1);
+        }
+
+        private static int mix(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Immutable ranking of suggested users, best first.
+     */
+    public static final class Suggestions {
+        static final Suggestions EMPTY = new Suggestions(new int[0], new int[0]);
+
+        private final int[] ids;
+        private final int[] mutualConnections;
+
+        private Suggestions(int[] ids, int[] mutualConnections) {
+            this.ids = ids;
+            this.mutualConnections = mutualConnections;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public int id(int index) {
+            return ids[index];
+        }
+
+        public int mutualConnections(int index) {
+            return mutualConnections[index];
+        }
+    }
+
+    // id -> count, open addressing with linear probing (0 marks a free slot), no boxing
+    private static final class Counts {
+        int[] keys = new int[256];
+        int[] values = new int[256];
+        int size;
+
+        void increment(int id) {
+            int mask = keys.length - 1;
+            int i = Neighbors.mix(id) & mask;
+            while (keys[i] != 0 && keys[i] != id) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                keys[i] = id;
+                if (++size * 2 > keys.length) {
+                    values[i] = 1;
+                    grow();
+                    return;
+                }
+            }
+            values[i]++;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0) {
+                    int i = Neighbors.mix(oldKeys[j]) & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+}
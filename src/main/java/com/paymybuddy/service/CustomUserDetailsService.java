@@ -2,9 +2,11 @@ package com.paymybuddy.service;
 
 import com.paymybuddy.model.User;
 import com.paymybuddy.repository.UserRepository;
+import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -14,7 +16,7 @@ import java.util.Optional;
 
 @Service
 @Slf4j
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
 
@@ -24,9 +26,12 @@ public class CustomUserDetailsService implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        log.info("entered loadUserByUsername");
+        log.debug("entered loadUserByUsername");
 
-        Optional<User> user = userRepository.findByEmail(email);
+        // the hash is read from the database at every login, never cached : one indexed query
+        // next to the BCrypt check. Closed accounts cannot log in
+        Optional<User> user = userRepository.findByEmail(email)
+                .filter(found -> found.getDeletedAt() == null);
 
         if (user.isEmpty()) {
             throw new UsernameNotFoundException("User not found");
@@ -39,4 +44,21 @@ public class CustomUserDetailsService implements UserDetailsService {
 
 
     }
-}
\ No newline at end of file
+
+    // called after a successful login when the stored hash has another BCrypt strength
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        Optional<User> user = userRepository.findByEmail(userDetails.getUsername());
+        if (user.isEmpty()) {
+            return userDetails;
+        }
+        user.get().setPassword(newPassword);
+        userRepository.save(user.get());
+        log.info("password of user {} re-hashed", user.get().getId());
+
+        return org.springframework.security.core.userdetails.User.withUserDetails(userDetails)
+                .password(newPassword)
+                .build();
+    }
+}
@@ -0,0 +1,218 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferResultDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group commit of single transfers (paymybuddy.transfer.group-commit.enabled).
+ * Callers put their transfer on a bounded queue and wait ; one writer thread takes up to
+ * max-batch-size of them, waiting at most max-wait for the batch to fill, and writes them
+ * with TransferEngine.transferBatch : one DB transaction, one commit, for the whole batch.
+ * Each caller is answered once the batch is committed, with its own result : a rejected
+ * transfer does not fail the others. Errors are those of TransferEngine.transfer.
+ * A caller waits at most timeout : a transfer still queued then is taken back, and what is
+ * left in the queue when the writer stops is refused, never written.
+ */
+@Service
+@Slf4j
+public class GroupCommitService implements DisposableBean {
+
+    private final TransferEngine transferEngine;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long timeoutNanos;
+    private final BlockingQueue<PendingTransfer> queue;
+    private final Thread writer;
+    private volatile boolean running;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public GroupCommitService(TransferEngine transferEngine,
+                              MeterRegistry meterRegistry,
+                              @Value("${paymybuddy.transfer.group-commit.enabled:false}") boolean enabled,
+                              @Value("${paymybuddy.transfer.group-commit.max-batch-size:100}") int maxBatchSize,
+                              @Value("${paymybuddy.transfer.group-commit.max-wait:5ms}") Duration maxWait,
+                              @Value("${paymybuddy.transfer.group-commit.queue-capacity:1000}") int queueCapacity,
+                              @Value("${paymybuddy.transfer.group-commit.timeout:30s}") Duration timeout,
+                              @Value("${paymybuddy.transfer.batch-max-size:1000}") int transferBatchMaxSize) {
+        this.transferEngine = transferEngine;
+        this.enabled = enabled;
+        // a batch larger than the engine accepts would be refused as a whole
+        this.maxBatchSize = Math.clamp(maxBatchSize, 1, transferBatchMaxSize);
+        this.maxWaitNanos = maxWait.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("paymybuddy.transfers.group-commit.queue", queue, BlockingQueue::size)
+                .description("Transfers waiting for the writer")
+                .register(meterRegistry);
+        Gauge.builder("paymybuddy.transfers.group-commit.queue.capacity", () -> queueCapacity)
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("paymybuddy.transfers.group-commit.batch.size")
+                .description("Transfers written per commit")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("paymybuddy.transfers.group-commit.wait")
+                .description("Time from the enqueue of a transfer to the commit of its batch")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("paymybuddy.transfers.group-commit.rejected")
+                .description("Transfers refused because the queue was full")
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::runWriter, "group-commit-writer");
+        writer.setDaemon(true);
+        if (enabled) {
+            running = true;
+            writer.start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // submit ____________________________________
+    // returns the id of the committed transaction ; throws IllegalArgumentException when the
+    // transfer is rejected, TransferQueueFullException when it was not written (queue full,
+    // writer stopped, or still queued after the timeout)
+    public int transfer(Integer senderId, Integer receiverId, String description, BigDecimal amount) {
+        PendingTransfer pending = new PendingTransfer(
+                new TransferRequestDTO(senderId, receiverId, description, amount), System.nanoTime());
+        if (!running || !queue.offer(pending)) {
+            rejectedCounter.increment();
+            throw new TransferQueueFullException("Service surchargé, veuillez réessayer");
+        }
+        try {
+            return pending.result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // still queued : never written, the caller may retry
+            if (queue.remove(pending)) {
+                rejectedCounter.increment();
+                throw new TransferQueueFullException("Service surchargé, veuillez réessayer");
+            }
+            // taken by the writer : it may commit
+            throw new IllegalStateException("Transfert en cours, son résultat est inconnu", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Transfert interrompu, son résultat est inconnu", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // writer ____________________________________
+    // on shutdown, what is still queued is written before the thread ends
+    private void runWriter() {
+        List<PendingTransfer> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingTransfer first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingTransfer next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // no new transfers ; the ones taken or queued are still written
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        refuseQueued();
+    }
+
+    // offered after the last look at the queue : not written, the callers may retry
+    private void refuseQueued() {
+        List<PendingTransfer> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (PendingTransfer pending : left) {
+            rejectedCounter.increment();
+            pending.result.completeExceptionally(new TransferQueueFullException("Service arrêté, veuillez réessayer"));
+        }
+    }
+
+    void write(List<PendingTransfer> batch) {
+        List<TransferRequestDTO> transfers = new ArrayList<>(batch.size());
+        for (PendingTransfer pending : batch) {
+            transfers.add(pending.transfer);
+        }
+        batchSizeSummary.record(batch.size());
+        try {
+            List<TransferResultDTO> results = transferEngine.transferBatch(transfers);
+            for (TransferResultDTO result : results) {
+                PendingTransfer pending = batch.get(result.getIndex());
+                waitTimer.record(System.nanoTime() - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+                if (result.getTransactionId() != null) {
+                    pending.result.complete(result.getTransactionId());
+                } else {
+                    pending.result.completeExceptionally(new IllegalArgumentException(result.getError()));
+                }
+            }
+        } catch (Exception e) {
+            // nothing of the batch was committed
+            log.error("group commit of {} transfers failed", batch.size(), e);
+            for (PendingTransfer pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        // the writer is done, or was never started
+        refuseQueued();
+    }
+
+    static final class PendingTransfer {
+        final TransferRequestDTO transfer;
+        final long enqueuedAt;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        PendingTransfer(TransferRequestDTO transfer, long enqueuedAt) {
+            this.transfer = transfer;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.paymybuddy.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.paymybuddy.model.IdempotencyKey;
+import com.paymybuddy.repository.IdempotencyKeyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Idempotency-Key of POST /transactions : the first request of a sender with a key creates
+ * the transfer, later ones of the same sender get its result back. Each sender has its own keys.
+ * Keys live in the idempotency_keys table for paymybuddy.idempotency.ttl, recent ones
+ * are also kept in memory so that client retries do not reach the database. An expired key
+ * is never replayed, even before the purge deletes it.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final Cache<IdempotencyKey.SenderKey, IdempotencyKey> cache;
+    private final Duration ttl;
+
+    private final Counter cacheHitCounter;
+    private final Counter databaseHitCounter;
+    private final Counter mismatchCounter;
+    private final Counter concurrentCounter;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${paymybuddy.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${paymybuddy.idempotency.cache.max-size:10000}") long cacheMaxSize,
+                              @Value("${paymybuddy.idempotency.cache.ttl:10m}") Duration cacheTtl) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.ttl = ttl;
+        // an entry goes at cacheTtl, or when its key expires if sooner
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new Expiry<IdempotencyKey.SenderKey, IdempotencyKey>() {
+                    @Override
+                    public long expireAfterCreate(IdempotencyKey.SenderKey key, IdempotencyKey value, long currentTime) {
+                        Duration left = Duration.between(LocalDateTime.now(), value.getCreatedAt().plus(ttl));
+                        return Math.max(0, Math.min(cacheTtl.toNanos(), left.toNanos()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(IdempotencyKey.SenderKey key, IdempotencyKey value,
+                                                  long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(IdempotencyKey.SenderKey key, IdempotencyKey value,
+                                                long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "idempotency");
+
+        this.cacheHitCounter = Counter.builder("paymybuddy.idempotency.hits")
+                .description("Requests answered with the result of an earlier one")
+                .tag("source", "cache")
+                .register(meterRegistry);
+        this.databaseHitCounter = Counter.builder("paymybuddy.idempotency.hits")
+                .description("Requests answered with the result of an earlier one")
+                .tag("source", "database")
+                .register(meterRegistry);
+        this.mismatchCounter = Counter.builder("paymybuddy.idempotency.mismatches")
+                .description("Keys reused with a different request")
+                .register(meterRegistry);
+        this.concurrentCounter = Counter.builder("paymybuddy.idempotency.concurrent")
+                .description("Duplicates stopped by the key insert while the first one was running")
+                .register(meterRegistry);
+    }
+
+    // read ______________________________________
+    // the earlier result for this sender's key, empty when the key is new or expired
+    public Optional<IdempotencyKey> findReplay(Integer senderId, String key, String fingerprint) {
+        IdempotencyKey.SenderKey id = new IdempotencyKey.SenderKey(senderId, key);
+        IdempotencyKey stored = cache.getIfPresent(id);
+        if (stored != null) {
+            cacheHitCounter.increment();
+        } else {
+            stored = idempotencyKeyRepository.findById(id).orElse(null);
+            if (stored == null) {
+                return Optional.empty();
+            }
+            LocalDateTime expiredBefore = LocalDateTime.now().minus(ttl);
+            if (stored.getCreatedAt().isBefore(expiredBefore)) {
+                // not purged yet : dropped now, or the new transfer would hit it
+                idempotencyKeyRepository.deleteExpired(senderId, key, expiredBefore);
+                return Optional.empty();
+            }
+            databaseHitCounter.increment();
+            cache.put(id, stored);
+        }
+        if (!stored.getFingerprint().equals(fingerprint)) {
+            mismatchCounter.increment();
+            throw new IllegalArgumentException("Idempotency-Key déjà utilisée pour une autre requête");
+        }
+        return Optional.of(stored);
+    }
+
+    // write _____________________________________
+    // joins the transfer's DB transaction, before the debit : a concurrent request with the same
+    // sender and key waits on the primary key until this one commits, then fails
+    public void claim(Integer senderId, String key, String fingerprint) {
+        try {
+            idempotencyKeyRepository.saveAndFlush(new IdempotencyKey(senderId, key, fingerprint, null));
+        } catch (DataIntegrityViolationException e) {
+            concurrentCounter.increment();
+            throw new DuplicateKeyException("Idempotency-Key déjà utilisée", e);
+        }
+    }
+
+    // the transfer is written : the claimed key gets its result, in the same DB transaction
+    public void complete(Integer senderId, String key, String fingerprint, Integer transactionId) {
+        idempotencyKeyRepository.setTransactionId(senderId, key, transactionId);
+        IdempotencyKey idempotencyKey = new IdempotencyKey(senderId, key, fingerprint, transactionId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.put(idempotencyKey.getId(), idempotencyKey);
+                }
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${paymybuddy.idempotency.purge-interval:1h}",
+            initialDelayString = "${paymybuddy.idempotency.purge-interval:1h}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = idempotencyKeyRepository.deleteCreatedBefore(LocalDateTime.now().minus(ttl));
+        log.info("{} expired idempotency keys deleted", deleted);
+    }
+
+    // helpers ___________________________________
+    public static String fingerprint(Integer senderId, Integer receiverId, String description, BigDecimal amount) {
+        String request = senderId + "|" + receiverId + "|"
+                + (amount == null ? "" : amount.stripTrailingZeros().toPlainString()) + "|"
+                + (description == null ? "" : description);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(request.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.OutboxEvent;
+
+/**
+ * Receives the outbox events, on the relay thread, once their DB transaction committed.
+ * Delivery is at least once : an event whose delivery failed, or was cut by a restart,
+ * is delivered again to every listener. Listeners must tolerate duplicates (the event id
+ * is stable) and must not count on the order of events.
+ */
+public interface OutboxListener {
+
+    // throwing schedules the event for another attempt
+    void onEvent(OutboxEvent event);
+}
@@ -0,0 +1,233 @@
+package com.paymybuddy.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paymybuddy.model.OutboxEvent;
+import com.paymybuddy.repository.OutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transactional outbox.
+ * publish writes the event in the caller's DB transaction : it exists if and only if the
+ * change it describes was committed. The relay, on its own thread, claims the available
+ * events by batches, leases them, hands them to every OutboxListener and deletes them.
+ * A failed event is retried with a growing delay ; a relay cut by a restart leaves its
+ * events leased, and they come back when the lease ends. Delivery is at least once.
+ */
+@Service
+@Slf4j
+public class OutboxService implements DisposableBean {
+
+    private final OutboxRepository outboxRepository;
+    private final ObjectProvider<OutboxListener> listeners;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean relayEnabled;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration lease;
+    private final Duration retryBackoff;
+    private final Duration maxRetryBackoff;
+    private final ThreadPoolTaskExecutor relayExecutor = new ThreadPoolTaskExecutor();
+    // one permit per commit with events : wakes the relay before the end of its poll interval
+    private final Semaphore wakeUps = new Semaphore(0);
+    private volatile boolean running;
+    private volatile boolean skipLocked;
+
+    private final Counter publishedCounter;
+    private final Counter dispatchedCounter;
+    private final Counter failedCounter;
+    private final Timer lagTimer;
+    private final Timer batchTimer;
+
+    public OutboxService(OutboxRepository outboxRepository,
+                         ObjectProvider<OutboxListener> listeners,
+                         ObjectMapper objectMapper,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry,
+                         @Value("${paymybuddy.outbox.relay.enabled:true}") boolean relayEnabled,
+                         @Value("${paymybuddy.outbox.relay.batch-size:100}") int batchSize,
+                         @Value("${paymybuddy.outbox.relay.poll-interval:1s}") Duration pollInterval,
+                         @Value("${paymybuddy.outbox.relay.lease:30s}") Duration lease,
+                         @Value("${paymybuddy.outbox.relay.retry-backoff:1s}") Duration retryBackoff,
+                         @Value("${paymybuddy.outbox.relay.max-retry-backoff:10m}") Duration maxRetryBackoff) {
+        this.outboxRepository = outboxRepository;
+        this.listeners = listeners;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.relayEnabled = relayEnabled;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.lease = lease;
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+        relayExecutor.setCorePoolSize(1);
+        relayExecutor.setMaxPoolSize(1);
+        relayExecutor.setThreadNamePrefix("outbox-relay-");
+        relayExecutor.initialize();
+
+        this.publishedCounter = Counter.builder("paymybuddy.outbox.events")
+                .description("Outbox events committed")
+                .tag("result", "published")
+                .register(meterRegistry);
+        this.dispatchedCounter = Counter.builder("paymybuddy.outbox.events")
+                .description("Outbox events handed to every listener (count gives the throughput)")
+                .tag("result", "dispatched")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("paymybuddy.outbox.events")
+                .description("Outbox deliveries that failed and were rescheduled")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        // from the commit of the change to the end of its delivery
+        this.lagTimer = Timer.builder("paymybuddy.outbox.lag")
+                .description("Time from the event's creation to its delivery")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("paymybuddy.outbox.batches")
+                .description("Relay rounds : claim, dispatch, acknowledge")
+                .register(meterRegistry);
+    }
+
+    // publish ___________________________________
+    // must join the DB transaction of the change
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(String type, int aggregateId, Map<String, ?> payload) {
+        publish(List.of(event(type, aggregateId, payload)));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        outboxRepository.insert(events);
+        int count = events.size();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publishedCounter.increment(count);
+                wakeUps.release();
+            }
+        });
+    }
+
+    public OutboxEvent event(String type, int aggregateId, Map<String, ?> payload) {
+        try {
+            // DATETIME(3) would round it up, possibly past the relay's next claim
+            return new OutboxEvent(0, type, aggregateId, objectMapper.writeValueAsString(payload),
+                    LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS), 0);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Événement invalide : " + type, e);
+        }
+    }
+
+    // relay _____________________________________
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        skipLocked = outboxRepository.supportsSkipLocked();
+        if (!skipLocked) {
+            // relays of several instances then take turns on the claim instead of skipping each other's rows
+            log.info("outbox relay : FOR UPDATE SKIP LOCKED not supported, claims use FOR UPDATE");
+        }
+        if (relayEnabled) {
+            running = true;
+            relayExecutor.execute(this::runRelay);
+        }
+    }
+
+    // a full batch is followed at once by the next one ; otherwise waits for a commit or the poll interval
+    private void runRelay() {
+        while (running) {
+            try {
+                if (relay() < batchSize) {
+                    wakeUps.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+                    wakeUps.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("outbox relay round failed, retried after the poll interval", e);
+                try {
+                    Thread.sleep(pollInterval.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // one round, returns the number of events claimed. The claim commits before the listeners
+    // run, so that no row lock is held while they work
+    int relay() {
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> events = transactionTemplate.execute(status ->
+                outboxRepository.claim(batchSize, now, now.plus(lease), skipLocked));
+        if (events == null || events.isEmpty()) {
+            return 0;
+        }
+
+        List<OutboxEvent> delivered = new ArrayList<>(events.size());
+        Map<OutboxEvent, LocalDateTime> retries = new HashMap<>();
+        for (OutboxEvent event : events) {
+            try {
+                listeners.orderedStream().forEach(listener -> listener.onEvent(event));
+                delivered.add(event);
+                lagTimer.record(Duration.between(event.getCreatedAt(), LocalDateTime.now()));
+            } catch (Exception e) {
+                log.warn("outbox event {} ({}) failed, attempt {}", event.getId(), event.getType(),
+                        event.getAttempts() + 1, e);
+                retries.put(event, LocalDateTime.now().plus(backoff(event.getAttempts())));
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxRepository.delete(delivered);
+            outboxRepository.reschedule(retries);
+        });
+        dispatchedCounter.increment(delivered.size());
+        failedCounter.increment(retries.size());
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return events.size();
+    }
+
+    // retry-backoff doubled at each failure, up to max-retry-backoff
+    private Duration backoff(int attempts) {
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts, 20));
+        return delay.compareTo(maxRetryBackoff) < 0 ? delay : maxRetryBackoff;
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        wakeUps.release();
+        relayExecutor.shutdown();
+    }
+}
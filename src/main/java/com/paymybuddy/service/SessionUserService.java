@@ -0,0 +1,54 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.SessionUser;
+import com.paymybuddy.repository.UserRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Builds and checks the SessionUser kept in the session.
+ * The profile version is read before the user, so that a change committed in between
+ * leaves the principal stale, and read again, rather than current with old values.
+ */
+@Service
+public class SessionUserService {
+
+    private final UserIdentityCache userIdentityCache;
+    private final UserRepository userRepository;
+    private final UserVersions userVersions;
+
+    public SessionUserService(UserIdentityCache userIdentityCache,
+                              UserRepository userRepository,
+                              UserVersions userVersions) {
+        this.userIdentityCache = userIdentityCache;
+        this.userRepository = userRepository;
+        this.userVersions = userVersions;
+    }
+
+    // at login : the identity the authentication has just cached, no query.
+    // The first lookup only gives the id ; the principal is built from a second one, made
+    // after its version was read, as refresh does
+    public Optional<SessionUser> login(String email) {
+        return userIdentityCache.findByEmail(email)
+                .flatMap(identity -> {
+                    String version = userVersions.version(identity.getId(), UserVersions.Kind.PROFILE);
+                    return userIdentityCache.findByEmail(email)
+                            .filter(current -> current.getId().equals(identity.getId()))
+                            .map(current -> SessionUser.of(current, version));
+                });
+    }
+
+    // the same principal while its version is current, otherwise read again by id
+    // (the email may be the part that changed) ; empty once the account is closed or deleted.
+    // A principal from before a restart has another epoch in its version : read again too
+    public Optional<SessionUser> refresh(SessionUser user) {
+        String version = userVersions.version(user.getId(), UserVersions.Kind.PROFILE);
+        if (version != null && version.equals(user.getVersion())) {
+            return Optional.of(user);
+        }
+        return userRepository.findById(user.getId())
+                .filter(found -> found.getDeletedAt() == null)
+                .map(found -> SessionUser.of(found, version));
+    }
+}
@@ -0,0 +1,99 @@
+package com.paymybuddy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paymybuddy.model.TransactionDTO;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes a user's full transaction history row by row.
+ * Rows are read from a forward-only stream and written as soon as they are read,
+ * so memory use does not depend on the size of the history.
+ */
+@Service
+@Transactional
+@Slf4j
+@RequiredArgsConstructor
+public class TransactionExportService {
+
+    public static final String CSV = "csv";
+    public static final String NDJSON = "ndjson";
+
+    private final TransactionRepository transactionRepository;
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+
+    public boolean isSupported(String format) {
+        return CSV.equals(format) || NDJSON.equals(format);
+    }
+
+    public boolean userExists(int userId) {
+        return userRepository.existsById(userId);
+    }
+
+    // the DB transaction, and so the stream, stays open until the last row is written.
+    // readOnly : on a replica when there are some
+    @Transactional(readOnly = true)
+    public void export(int userId, String format, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        if (CSV.equals(format)) {
+            writer.write("id,connectionName,description,amount\n");
+        }
+        int rows = 0;
+        try (Stream<TransactionDTO> transactions = transactionRepository.streamAllByUser(userId)) {
+            Iterator<TransactionDTO> iterator = transactions.iterator();
+            while (iterator.hasNext()) {
+                TransactionDTO transaction = iterator.next();
+                if (CSV.equals(format)) {
+                    writeCsv(writer, transaction);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(transaction));
+                    writer.write('\n');
+                }
+                rows++;
+            }
+        }
+        writer.flush();
+        log.info("exported {} transactions of user {} as {}", rows, userId, format);
+    }
+
+    private void writeCsv(Writer writer, TransactionDTO transaction) throws IOException {
+        writer.write(String.valueOf(transaction.getId()));
+        writer.write(',');
+        writer.write(csvField(transaction.getConnectionName()));
+        writer.write(',');
+        writer.write(csvField(transaction.getDescription()));
+        writer.write(',');
+        writer.write(transaction.getAmount() == null ? "" : transaction.getAmount().toPlainString());
+        writer.write('\n');
+    }
+
+    static String csvField(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        // a leading formula character would be run by spreadsheet software
+        if ("=+-@".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
@@ -1,16 +1,23 @@
 package com.paymybuddy.service;
 
+import com.paymybuddy.model.CounterpartyTotalDTO;
 import com.paymybuddy.model.Transaction;
 import com.paymybuddy.model.TransactionDTO;
+import com.paymybuddy.model.TransactionPageDTO;
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferResultDTO;
+import com.paymybuddy.model.TransferTotalsDTO;
 import com.paymybuddy.model.User;
 import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.TransferTotalsRepository;
 import com.paymybuddy.repository.UserRepository;
-import jakarta.transaction.Transactional;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,8 +26,16 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class TransactionService {
 
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
     private final TransactionRepository transactionRepository;
     private final UserRepository userRepository;
+    private final TransferEngine transferEngine;
+    private final IdempotencyService idempotencyService;
+    private final TransferTotalsRepository transferTotalsRepository;
+    private final GroupCommitService groupCommitService;
+    private final UserVersions userVersions;
 
     // general ___________________________________
     public User getUserById(Integer id, String u) {
@@ -36,17 +51,38 @@ public class TransactionService {
     }
 
     // create ____________________________________
+    // the engine opens its own DB transaction so that it can retry on lock timeouts.
+    // In group commit mode the transfer shares the commit of the others queued meanwhile
+    @Timed(value = "paymybuddy.service", histogram = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void create(Integer senderId, Integer receiverId, String description, BigDecimal amount) {
+        if (groupCommitService.isEnabled()) {
+            groupCommitService.transfer(senderId, receiverId, description, amount);
+            return;
+        }
+        transferEngine.transfer(senderId, receiverId, description, amount);
+    }
 
-        User sender = getUserById(senderId, "s");
-        User receiver = getUserById(receiverId,"r");
+    // the key is claimed first, in the transfer's DB transaction and before the debit : a duplicate
+    // of a request still running waits on the key, then fails with DuplicateKeyException without
+    // touching the balance. Never group committed : a duplicate key would roll back the whole batch
+    @Timed(value = "paymybuddy.service", histogram = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void create(Integer senderId, Integer receiverId, String description, BigDecimal amount,
+                       String idempotencyKey) {
+        if (idempotencyKey == null) {
+            create(senderId, receiverId, description, amount);
+            return;
+        }
+        String fingerprint = IdempotencyService.fingerprint(senderId, receiverId, description, amount);
+        transferEngine.transfer(senderId, receiverId, description, amount,
+                () -> idempotencyService.claim(senderId, idempotencyKey, fingerprint),
+                transaction -> idempotencyService.complete(senderId, idempotencyKey, fingerprint, transaction.getId()));
+    }
 
-        Transaction transaction = new Transaction();
-        transaction.setSender(sender);
-        transaction.setReceiver(receiver);
-        transaction.setDescription(description);
-        transaction.setAmount(amount);
-        transactionRepository.save(transaction);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<TransferResultDTO> createBatch(List<TransferRequestDTO> transfers) {
+        return transferEngine.transferBatch(transfers);
     }
 
     // read ____________________________________
@@ -54,49 +90,80 @@ public class TransactionService {
         return transactionRepository.findById(transactionId);
     }
 
-    public List<TransactionDTO> getTransactionsByUser(int id) {
-        // get user and username
-        User user = userRepository.findById(id)
-                .orElseThrow(() ->
-                        new RuntimeException("User not found"));
+    // readOnly : served by a replica when there are some (ReadWriteRoutingDataSource)
+    @Timed(value = "paymybuddy.service", histogram = true)
+    @Transactional(readOnly = true)
+    public TransactionPageDTO getTransactionsByUser(int id, Integer after, int limit) {
+        if (!userRepository.existsById(id)) {
+            throw new RuntimeException("User not found");
+        }
 
-        // get user's transactions
-        List<Transaction> transactions = transactionRepository.findByUser(user);
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        int before = after == null ? Integer.MAX_VALUE : after;
 
-        // turn them to DTOs
-        List<TransactionDTO> transactionDTOS = new ArrayList<>();
+        // DTOs come straight from SQL : no entity, no sender/receiver loading.
+        // one extra row tells whether another page exists
+        List<TransactionDTO> transactionDTOS = transactionRepository.findPageByUser(id, before, pageSize + 1);
+        boolean hasMore = transactionDTOS.size() > pageSize;
+        if (hasMore) {
+            transactionDTOS = transactionDTOS.subList(0, pageSize);
+        }
 
-        for (Transaction transaction : transactions) {
-            String connectionName = transaction.getSender().equals(user) ?
-                    transaction.getReceiver().getUsername() :
-                    transaction.getSender().getUsername();
+        Integer nextCursor = hasMore ? transactionDTOS.getLast().getId() : null;
+        return new TransactionPageDTO(transactionDTOS, nextCursor);
+    }
 
-            transactionDTOS.add(new TransactionDTO(
-                    transaction.getId(),
-                    connectionName,
-                    transaction.getDescription(),
-                    transaction.getAmount()));
+    // one row per counterparty, kept up to date by the transfers : never reads the history
+    @Timed(value = "paymybuddy.service", histogram = true)
+    @Transactional(readOnly = true)
+    public TransferTotalsDTO getTotalsByUser(int id) {
+        if (!userRepository.existsById(id)) {
+            throw new RuntimeException("User not found");
         }
-        return transactionDTOS;
+
+        List<CounterpartyTotalDTO> counterparties = transferTotalsRepository.findByUserId(id);
+        BigDecimal sent = BigDecimal.ZERO;
+        BigDecimal received = BigDecimal.ZERO;
+        int count = 0;
+        for (CounterpartyTotalDTO counterparty : counterparties) {
+            sent = sent.add(counterparty.getSentTotal());
+            received = received.add(counterparty.getReceivedTotal());
+            count += counterparty.getTransferCount();
+        }
+        return new TransferTotalsDTO(sent, received, count, counterparties);
     }
 
     // update __________________________________
+    // a settled transfer keeps its users and amount : only the description changes.
+    // To move money back, delete it (reversed) and make a new one
     public void update(Transaction transaction) {
-        if (transactionRepository.existsById(transaction.getId())) {
-            transactionRepository.save(transaction);
-        }
-        else {
-        throw new RuntimeException("La transaction n'existe pas");
+        Transaction existing = transactionRepository.findById(transaction.getId())
+                .orElseThrow(() ->
+                        new RuntimeException("La transaction n'existe pas"));
+
+        if (changes(transaction.getSender(), existing.getSender())
+                || changes(transaction.getReceiver(), existing.getReceiver())
+                || (transaction.getAmount() != null && transaction.getAmount().compareTo(existing.getAmount()) != 0)) {
+            throw new IllegalArgumentException("Seule la description d'une transaction réglée peut être modifiée");
         }
+        existing.setDescription(transaction.getDescription());
+        transactionRepository.save(existing);
+        userVersions.bump(UserVersions.Kind.TRANSACTIONS,
+                existing.getSender().getId(), existing.getReceiver().getId());
+    }
+
+    private static boolean changes(User user, User current) {
+        return user != null && user.getId() != null && !user.getId().equals(current.getId());
     }
 
     // delete __________________________________
+    // the engine gives the amount back under the row locks, the totals go with the row
     public void delete(Integer transactionId) {
         Transaction transaction = transactionRepository
                 .findById(transactionId)
                 .orElseThrow(() ->
                         new RuntimeException("La transaction n'existe pas"));
 
-        transactionRepository.delete(transaction);
+        transferEngine.reverse(transaction);
     }
-}
\ No newline at end of file
+}
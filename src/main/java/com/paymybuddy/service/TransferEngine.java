@@ -0,0 +1,368 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.OutboxEvent;
+import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferResultDTO;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.TransferJdbcRepository;
+import com.paymybuddy.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Moves money between two users.
+ * The debit, the credit, the history row, the transfer totals and the TRANSFER_CREATED outbox event
+ * are written in a single DB transaction.
+ * Both balance rows are locked lowest id first, so two transfers crossing the same
+ * accounts always queue instead of deadlocking.
+ * A settled transfer is only ever deleted through reverse, which moves the money back under
+ * the same locks ; closing an account keeps its transfers (UserService.deleteUser).
+ */
+@Service
+@Slf4j
+public class TransferEngine {
+
+    private final UserRepository userRepository;
+    private final TransactionRepository transactionRepository;
+    private final TransferJdbcRepository transferJdbcRepository;
+    private final TransferTotalsService transferTotalsService;
+    private final OutboxService outboxService;
+    private final UserVersions userVersions;
+    private final UserEntityCache userEntityCache;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final int batchMaxSize;
+
+    private final Timer transferTimer;
+    private final Timer lockWaitTimer;
+    private final Counter retryCounter;
+    private final Counter lockFailureCounter;
+    private final Timer batchTimer;
+    private final Counter batchCreatedCounter;
+    private final Counter batchRejectedCounter;
+
+    public TransferEngine(UserRepository userRepository,
+                          TransactionRepository transactionRepository,
+                          TransferJdbcRepository transferJdbcRepository,
+                          TransferTotalsService transferTotalsService,
+                          OutboxService outboxService,
+                          UserVersions userVersions,
+                          UserEntityCache userEntityCache,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${paymybuddy.transfer.max-attempts:3}") int maxAttempts,
+                          @Value("${paymybuddy.transfer.retry-backoff-ms:20}") long retryBackoffMs,
+                          @Value("${paymybuddy.transfer.batch-max-size:1000}") int batchMaxSize) {
+        this.userRepository = userRepository;
+        this.transactionRepository = transactionRepository;
+        this.transferJdbcRepository = transferJdbcRepository;
+        this.transferTotalsService = transferTotalsService;
+        this.outboxService = outboxService;
+        this.userVersions = userVersions;
+        this.userEntityCache = userEntityCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.batchMaxSize = batchMaxSize;
+
+        this.transferTimer = Timer.builder("paymybuddy.transfers")
+                .description("Committed transfers (count gives the throughput)")
+                .register(meterRegistry);
+        this.lockWaitTimer = Timer.builder("paymybuddy.transfers.lock.wait")
+                .description("Time spent acquiring both balance row locks")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("paymybuddy.transfers.retries")
+                .description("Transfers retried after a lock timeout or deadlock")
+                .register(meterRegistry);
+        this.lockFailureCounter = Counter.builder("paymybuddy.transfers.lock.failures")
+                .description("Transfers abandoned after the last retry")
+                .register(meterRegistry);
+        // compare paymybuddy.transfers.batch.items with paymybuddy.transfers for the batch gain
+        this.batchTimer = Timer.builder("paymybuddy.transfers.batch")
+                .description("Committed transfer batches")
+                .register(meterRegistry);
+        this.batchCreatedCounter = Counter.builder("paymybuddy.transfers.batch.items")
+                .tag("result", "created")
+                .register(meterRegistry);
+        this.batchRejectedCounter = Counter.builder("paymybuddy.transfers.batch.items")
+                .tag("result", "rejected")
+                .register(meterRegistry);
+    }
+
+    // transfer __________________________________
+    // runs in its own DB transaction, retried on lock timeouts
+    public Transaction transfer(Integer senderId, Integer receiverId, String description, BigDecimal amount) {
+        return transfer(senderId, receiverId, description, amount, transaction -> { });
+    }
+
+    // `andThen` runs in the same DB transaction once the transfer is written ;
+    // if it throws, the transfer is rolled back with it
+    public Transaction transfer(Integer senderId, Integer receiverId, String description, BigDecimal amount,
+                                Consumer<Transaction> andThen) {
+        return transfer(senderId, receiverId, description, amount, () -> { }, andThen);
+    }
+
+    // `first` runs in the same DB transaction before any balance is touched : a lock it takes
+    // is held until the transfer commits. If it throws, nothing is written
+    public Transaction transfer(Integer senderId, Integer receiverId, String description, BigDecimal amount,
+                                Runnable first, Consumer<Transaction> andThen) {
+        validate(senderId, receiverId, amount);
+
+        return withRetry(() -> transferTimer.record(() -> transactionTemplate.execute(status -> {
+            first.run();
+            Transaction transaction = apply(senderId, receiverId, description, amount);
+            andThen.accept(transaction);
+            return transaction;
+        })));
+    }
+
+    // joins the caller's DB transaction, no retry
+    public Transaction apply(Integer senderId, Integer receiverId, String description, BigDecimal amount) {
+        validate(senderId, receiverId, amount);
+
+        // the balance updates come before the insert: the foreign key checks of the
+        // insert then reuse the row locks instead of upgrading shared locks
+        long start = System.nanoTime();
+        if (senderId < receiverId) {
+            debit(senderId, amount);
+            credit(receiverId, amount);
+        } else {
+            credit(receiverId, amount);
+            debit(senderId, amount);
+        }
+        lockWaitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        userEntityCache.evict(List.of(senderId, receiverId));
+
+        Transaction transaction = new Transaction();
+        transaction.setSender(userRepository.getReferenceById(senderId));
+        transaction.setReceiver(userRepository.getReferenceById(receiverId));
+        transaction.setDescription(description);
+        transaction.setAmount(amount);
+        transaction = transactionRepository.save(transaction);
+        transferTotalsService.recordTransfer(transaction);
+        outboxService.publish(List.of(transferCreated(transaction.getId(), senderId, receiverId, amount)));
+        userVersions.bump(UserVersions.Kind.TRANSACTIONS, senderId, receiverId);
+        return transaction;
+    }
+
+    // batch _____________________________________
+    // all accepted transfers are committed in one DB transaction; each item is
+    // either created or rejected with its reason, in request order
+    public List<TransferResultDTO> transferBatch(List<TransferRequestDTO> transfers) {
+        if (transfers.size() > batchMaxSize) {
+            throw new IllegalArgumentException("Trop de transferts, maximum " + batchMaxSize);
+        }
+        List<TransferResultDTO> results = withRetry(() -> batchTimer.record(() ->
+                transactionTemplate.execute(status -> applyBatch(transfers))));
+
+        for (TransferResultDTO result : results) {
+            (result.getTransactionId() != null ? batchCreatedCounter : batchRejectedCounter).increment();
+        }
+        return results;
+    }
+
+    private List<TransferResultDTO> applyBatch(List<TransferRequestDTO> transfers) {
+        // one query checks every participant and locks their rows, lowest id first
+        Set<Integer> userIds = new TreeSet<>();
+        for (TransferRequestDTO transfer : transfers) {
+            if (invalidReason(transfer.getSenderId(), transfer.getReceiverId(), transfer.getAmount()) == null) {
+                userIds.add(transfer.getSenderId());
+                userIds.add(transfer.getReceiverId());
+            }
+        }
+        Map<Integer, BigDecimal> balances = transferJdbcRepository.lockBalances(userIds);
+
+        // apply in request order so that a transfer can spend money received earlier in the batch
+        List<TransferResultDTO> results = new ArrayList<>(transfers.size());
+        List<TransferRequestDTO> accepted = new ArrayList<>(transfers.size());
+        Map<Integer, BigDecimal> changed = new HashMap<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequestDTO transfer = transfers.get(i);
+            String error = invalidReason(transfer.getSenderId(), transfer.getReceiverId(), transfer.getAmount());
+            if (error == null) {
+                error = balanceError(balances, transfer);
+            }
+            if (error != null) {
+                results.add(new TransferResultDTO(i, null, error));
+                continue;
+            }
+            BigDecimal senderBalance = balances.get(transfer.getSenderId()).subtract(transfer.getAmount());
+            BigDecimal receiverBalance = balances.get(transfer.getReceiverId()).add(transfer.getAmount());
+            balances.put(transfer.getSenderId(), senderBalance);
+            balances.put(transfer.getReceiverId(), receiverBalance);
+            changed.put(transfer.getSenderId(), senderBalance);
+            changed.put(transfer.getReceiverId(), receiverBalance);
+            accepted.add(transfer);
+            results.add(new TransferResultDTO(i, null, null));
+        }
+
+        transferJdbcRepository.updateBalances(changed);
+        userEntityCache.evict(changed.keySet());
+        List<Integer> transactionIds = transferJdbcRepository.insertTransactions(accepted);
+        transferTotalsService.recordTransfers(accepted, transactionIds);
+        List<OutboxEvent> events = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            TransferRequestDTO transfer = accepted.get(i);
+            events.add(transferCreated(transactionIds.get(i), transfer.getSenderId(), transfer.getReceiverId(),
+                    transfer.getAmount()));
+        }
+        outboxService.publish(events);
+        userVersions.bump(UserVersions.Kind.TRANSACTIONS, changed.keySet().stream().mapToInt(Integer::intValue).toArray());
+
+        int next = 0;
+        for (TransferResultDTO result : results) {
+            if (result.getError() == null) {
+                result.setTransactionId(transactionIds.get(next++));
+            }
+        }
+        return results;
+    }
+
+    private String balanceError(Map<Integer, BigDecimal> balances, TransferRequestDTO transfer) {
+        BigDecimal senderBalance = balances.get(transfer.getSenderId());
+        if (senderBalance == null) {
+            return "Utilisateur source non trouvé";
+        }
+        if (!balances.containsKey(transfer.getReceiverId())) {
+            return "Destinataire non trouvé";
+        }
+        if (senderBalance.compareTo(transfer.getAmount()) < 0) {
+            return "Solde insuffisant";
+        }
+        return null;
+    }
+
+    // reverse ___________________________________
+    // deletes a transfer and moves its amount back, under the same row locks as a transfer ;
+    // joins the caller's DB transaction. Refused when the receiver has already spent it
+    public void reverse(Transaction transaction) {
+        int senderId = transaction.getSender().getId();
+        int receiverId = transaction.getReceiver().getId();
+        Map<Integer, BigDecimal> balances =
+                transferJdbcRepository.lockBalances(new TreeSet<>(List.of(senderId, receiverId)));
+        Map<Integer, BigDecimal> reversals = new HashMap<>();
+        reversals.put(senderId, transaction.getAmount());
+        reversals.put(receiverId, transaction.getAmount().negate());
+        giveBack(balances, reversals);
+
+        // before the delete : the totals read the row
+        transferTotalsService.recordDeleted(transaction);
+        transactionRepository.delete(transaction);
+        userVersions.bump(UserVersions.Kind.TRANSACTIONS, senderId, receiverId);
+    }
+
+    // applies the reversals to the locked balances ; none may go below zero
+    private void giveBack(Map<Integer, BigDecimal> balances, Map<Integer, BigDecimal> reversals) {
+        Map<Integer, BigDecimal> changed = new HashMap<>();
+        reversals.forEach((userId, amount) -> {
+            BigDecimal balance = balances.get(userId);
+            if (balance == null) {
+                // not locked : the account was closed, its balance no longer moves
+                throw new IllegalStateException("Compte fermé, la transaction ne peut pas être annulée");
+            }
+            if (balance.add(amount).signum() < 0) {
+                throw new IllegalStateException("Solde insuffisant pour annuler la transaction");
+            }
+            changed.put(userId, balance.add(amount));
+        });
+        transferJdbcRepository.updateBalances(changed);
+        userEntityCache.evict(changed.keySet());
+    }
+
+    // helpers ___________________________________
+    private OutboxEvent transferCreated(int transactionId, int senderId, int receiverId, BigDecimal amount) {
+        return outboxService.event(OutboxEvent.TRANSFER_CREATED, transactionId, Map.of(
+                "transactionId", transactionId,
+                "senderId", senderId,
+                "receiverId", receiverId,
+                "amount", amount));
+    }
+
+    private void validate(Integer senderId, Integer receiverId, BigDecimal amount) {
+        String error = invalidReason(senderId, receiverId, amount);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    private String invalidReason(Integer senderId, Integer receiverId, BigDecimal amount) {
+        if (senderId == null || receiverId == null) {
+            return "Utilisateur ou destinataire inconnu";
+        }
+        if (senderId.equals(receiverId)) {
+            return "Utilisateur ne peut pas se payer lui-même";
+        }
+        if (amount == null || amount.signum() <= 0) {
+            return "Montant invalide";
+        }
+        return null;
+    }
+
+    private void debit(Integer senderId, BigDecimal amount) {
+        if (userRepository.debit(senderId, amount) == 0) {
+            // nothing updated : either no such user, a closed account or not enough money.
+            // rejections, as in a batch : IllegalArgumentException either way
+            if (!userRepository.existsByIdAndDeletedAtIsNull(senderId)) {
+                throw new IllegalArgumentException("Utilisateur source non trouvé");
+            }
+            throw new IllegalArgumentException("Solde insuffisant");
+        }
+    }
+
+    // a closed receiver is not found either
+    private void credit(Integer receiverId, BigDecimal amount) {
+        if (userRepository.credit(receiverId, amount) == 0) {
+            throw new IllegalArgumentException("Destinataire non trouvé");
+        }
+    }
+
+    // a DB transaction that lost a lock is rolled back as a whole and started again
+    private <T> T withRetry(Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return work.get();
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    lockFailureCounter.increment();
+                    log.error("Transfer abandoned after {} attempts", attempt);
+                    throw e;
+                }
+                retryCounter.increment();
+                log.warn("Lock conflict on transfer, attempt {}", attempt);
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        // jitter keeps retried transfers on the same hot account from colliding again
+        long delay = retryBackoffMs * attempt + ThreadLocalRandom.current().nextLong(retryBackoffMs + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Transfert interrompu", e);
+        }
+    }
+}
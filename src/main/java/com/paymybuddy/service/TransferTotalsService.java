@@ -0,0 +1,189 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferTotal;
+import com.paymybuddy.repository.TransferJdbcRepository;
+import com.paymybuddy.repository.TransferTotalsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps transfer_totals in step with the transactions table.
+ * The record methods join the caller's DB transaction, so the totals commit or roll back
+ * with the transfer ; they expect the rows of both users to be locked already.
+ * Transactions older than the V3 migration are added by the backfill job, in the background.
+ */
+@Service
+@Slf4j
+public class TransferTotalsService implements DisposableBean {
+
+    private final TransferTotalsRepository transferTotalsRepository;
+    private final TransferJdbcRepository transferJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int backfillChunkSize;
+    private final ThreadPoolTaskExecutor backfillExecutor = new ThreadPoolTaskExecutor();
+
+    public TransferTotalsService(TransferTotalsRepository transferTotalsRepository,
+                                 TransferJdbcRepository transferJdbcRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${paymybuddy.transfer-totals.backfill-chunk-size:10000}") int backfillChunkSize) {
+        this.transferTotalsRepository = transferTotalsRepository;
+        this.transferJdbcRepository = transferJdbcRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.backfillChunkSize = backfillChunkSize;
+        backfillExecutor.setCorePoolSize(1);
+        backfillExecutor.setMaxPoolSize(1);
+        backfillExecutor.setThreadNamePrefix("totals-backfill-");
+        backfillExecutor.initialize();
+    }
+
+    // read ______________________________________
+    // the users the user has transfers with ; from the history while the backfill runs
+    public Collection<Integer> counterpartyIds(int userId) {
+        int[] progress = transferTotalsRepository.findBackfillProgress(false);
+        if (progress[1] < progress[0]) {
+            return transferJdbcRepository.findCounterpartyIds(userId);
+        }
+        return transferTotalsRepository.findCounterpartyIds(userId);
+    }
+
+    // record ____________________________________
+    public void recordTransfer(Transaction transaction) {
+        Map<Long, TransferTotal> changes = new LinkedHashMap<>();
+        addChanges(changes, transaction.getId(), transaction.getSender().getId(),
+                transaction.getReceiver().getId(), transaction.getAmount());
+        transferTotalsRepository.add(changes.values());
+    }
+
+    // a whole batch, with one change per pair
+    public void recordTransfers(List<TransferRequestDTO> transfers, List<Integer> transactionIds) {
+        Map<Long, TransferTotal> changes = new LinkedHashMap<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequestDTO transfer = transfers.get(i);
+            addChanges(changes, transactionIds.get(i), transfer.getSenderId(), transfer.getReceiverId(),
+                    transfer.getAmount());
+        }
+        transferTotalsRepository.add(changes.values());
+    }
+
+    // before the transaction is deleted ; locks both users
+    public void recordDeleted(Transaction transaction) {
+        int senderId = transaction.getSender().getId();
+        int receiverId = transaction.getReceiver().getId();
+        if (!isCounted(transaction.getId())) {
+            return;
+        }
+        transferJdbcRepository.lockBalances(new TreeSet<>(List.of(senderId, receiverId)));
+        removeChanges(transaction.getId(), senderId, receiverId, transaction.getAmount());
+    }
+
+    private void addChanges(Map<Long, TransferTotal> changes, int transactionId,
+                            int senderId, int receiverId, BigDecimal amount) {
+        addChange(changes, new TransferTotal(senderId, receiverId, amount, BigDecimal.ZERO, 1, transactionId));
+        addChange(changes, new TransferTotal(receiverId, senderId, BigDecimal.ZERO, amount, 1, transactionId));
+    }
+
+    private static void addChange(Map<Long, TransferTotal> changes, TransferTotal change) {
+        changes.merge(((long) change.getUserId() << 32) | (change.getCounterpartyId() & 0xFFFFFFFFL), change,
+                (total, more) -> {
+                    total.setSentTotal(total.getSentTotal().add(more.getSentTotal()));
+                    total.setReceivedTotal(total.getReceivedTotal().add(more.getReceivedTotal()));
+                    total.setTransferCount(total.getTransferCount() + more.getTransferCount());
+                    total.setLastTransactionId(Math.max(total.getLastTransactionId(), more.getLastTransactionId()));
+                    return total;
+                });
+    }
+
+    private void removeChanges(int transactionId, int senderId, int receiverId, BigDecimal amount) {
+        transferTotalsRepository.remove(senderId, receiverId, amount, BigDecimal.ZERO, transactionId);
+        transferTotalsRepository.remove(receiverId, senderId, BigDecimal.ZERO, amount, transactionId);
+    }
+
+    // whether the totals include this transaction : it is newer than the migration, or
+    // already backfilled. While the backfill runs, the answer waits for the current chunk
+    private boolean isCounted(int transactionId) {
+        int[] progress = transferTotalsRepository.findBackfillProgress(false);
+        if (progress[1] >= progress[0]) {
+            return true;
+        }
+        progress = transferTotalsRepository.findBackfillProgress(true);
+        return transactionId > progress[0] || transactionId <= progress[1];
+    }
+
+    // backfill __________________________________
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        int[] progress = transferTotalsRepository.findBackfillProgress(false);
+        if (progress[1] < progress[0]) {
+            log.info("transfer totals backfill scheduled from transaction {} to {}", progress[1], progress[0]);
+            backfillExecutor.execute(this::backfill);
+        }
+    }
+
+    // one short DB transaction per range of ids, so that it never holds many locks for long ;
+    // cut by a restart, it goes on from backfilled_up_to
+    void backfill() {
+        try {
+            long start = System.currentTimeMillis();
+            int chunks = 0;
+            while (Boolean.TRUE.equals(transactionTemplate.execute(status -> backfillChunk()))) {
+                chunks++;
+            }
+            log.info("transfer totals backfilled in {} chunks, {} ms", chunks, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("transfer totals backfill failed, retried at the next start", e);
+        }
+    }
+
+    private boolean backfillChunk() {
+        int[] progress = transferTotalsRepository.findBackfillProgress(true);
+        int watermark = progress[0];
+        int from = progress[1];
+        if (from >= watermark) {
+            return false;
+        }
+        int to = (int) Math.min((long) from + backfillChunkSize, watermark);
+
+        List<TransferTotal> sums = transferTotalsRepository.sumTransactions(from, to);
+        Set<Integer> userIds = new TreeSet<>();
+        for (TransferTotal sum : sums) {
+            userIds.add(sum.getUserId());
+            userIds.add(sum.getCounterpartyId());
+        }
+        // same lock order as the transfers ; users deleted meanwhile are skipped
+        Set<Integer> existing = transferJdbcRepository.lockBalances(userIds).keySet();
+
+        Map<Long, TransferTotal> changes = new LinkedHashMap<>();
+        for (TransferTotal sum : sums) {
+            if (existing.contains(sum.getUserId()) && existing.contains(sum.getCounterpartyId())) {
+                addChange(changes, sum);
+                addChange(changes, new TransferTotal(sum.getCounterpartyId(), sum.getUserId(), BigDecimal.ZERO,
+                        sum.getSentTotal(), sum.getTransferCount(), sum.getLastTransactionId()));
+            }
+        }
+        transferTotalsRepository.add(changes.values());
+        transferTotalsRepository.updateBackfilledUpTo(to);
+        return to < watermark;
+    }
+
+    @Override
+    public void destroy() {
+        backfillExecutor.shutdown();
+    }
+}
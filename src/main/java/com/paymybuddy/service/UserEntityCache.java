@@ -0,0 +1,47 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.User;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Eviction of User entities from the Hibernate second-level cache, for the writes that
+ * bypass Hibernate : the balance updates of TransferEngine. Writes made through Hibernate
+ * (save, JPQL updates and deletes) keep the cache right by themselves.
+ */
+@Component
+public class UserEntityCache {
+
+    private final Cache cache;
+
+    public UserEntityCache(EntityManagerFactory entityManagerFactory) {
+        this.cache = entityManagerFactory.getCache();
+    }
+
+    // evicts now and again once the DB transaction completes, so that a read made
+    // before the commit cannot put the old balance back
+    public void evict(Collection<Integer> userIds) {
+        evictNow(userIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<Integer> ids = List.copyOf(userIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(ids);
+                }
+            });
+        }
+    }
+
+    private void evictNow(Collection<Integer> userIds) {
+        for (Integer userId : userIds) {
+            cache.evict(User.class, userId);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.paymybuddy.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import com.paymybuddy.model.User;
+import com.paymybuddy.model.UserIdentity;
+import com.paymybuddy.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, expiring cache of user identities keyed by id, found by email through an email -> id index.
+ * Serves "who is the current user" lookups without a query ; password hashes are never cached,
+ * logins read them from the database (CustomUserDetailsService).
+ * Hits and misses are published as cache.gets{cache="userIdentity"}.
+ */
+@Component
+public class UserIdentityCache {
+
+    private final UserRepository userRepository;
+    private final StatsCounter stats = new ConcurrentStatsCounter();
+    private final Cache<Integer, UserIdentity> cache;
+    // an entry may outlive its identity (email changed) : identities are checked against the email they are found by
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // counts evictions, so that a load that raced with one is not kept
+    private final AtomicLong evictions = new AtomicLong();
+
+    public UserIdentityCache(UserRepository userRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${paymybuddy.cache.user-identity.max-size:10000}") long maxSize,
+                             @Value("${paymybuddy.cache.user-identity.ttl:10m}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats(() -> stats)
+                // entries dropped by size or age take their index entry with them
+                .<Integer, UserIdentity>evictionListener((id, identity, cause) -> {
+                    if (identity != null) {
+                        ids.remove(key(identity.getEmail()), id);
+                    }
+                })
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userIdentity");
+    }
+
+    // unknown emails are not cached, closed accounts are unknown
+    public Optional<UserIdentity> findByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        String key = key(email);
+        Integer id = ids.get(key);
+        UserIdentity cached = id == null ? null : cache.asMap().get(id);
+        if (cached != null && key(cached.getEmail()).equals(key)) {
+            stats.recordHits(1);
+            return Optional.of(cached);
+        }
+        stats.recordMisses(1);
+
+        long seen = evictions.get();
+        Optional<UserIdentity> identity = userRepository.findByEmail(email)
+                .filter(user -> user.getDeletedAt() == null)
+                .map(UserIdentity::of);
+        identity.ifPresent(found -> {
+            cache.put(found.getId(), found);
+            ids.put(key(found.getEmail()), found.getId());
+            // read before an eviction that has already run : may be the old values
+            if (evictions.get() != seen) {
+                cache.invalidate(found.getId());
+            }
+        });
+        return identity;
+    }
+
+    // evicts now and again once the DB transaction commits, so that a read made
+    // before the commit cannot put the old values back
+    public void evict(User user) {
+        evictNow(user.getId(), user.getEmail());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Integer id = user.getId();
+            String email = user.getEmail();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(id, email);
+                }
+            });
+        }
+    }
+
+    // by id : the entry goes even when the email it was found by has just changed
+    private void evictNow(Integer userId, String email) {
+        evictions.incrementAndGet();
+        if (userId == null) {
+            return;
+        }
+        UserIdentity removed = cache.asMap().remove(userId);
+        if (removed != null) {
+            ids.remove(key(removed.getEmail()), userId);
+        }
+        if (email != null) {
+            ids.remove(key(email), userId);
+        }
+    }
+
+    // emails compare case-insensitively in MySQL, so do the keys
+    private static String key(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,199 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserPurgeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Erases the descriptions a closed account wrote, when there are too many to go within the
+ * request (UserService.closeAccount). The transfers themselves stay, with their amounts and
+ * parties : only their free text goes, by chunks of one short DB transaction each.
+ * Each purge is a user_purges row, written with the closing of the account and deleted once
+ * done : a failed purge keeps its row and its error, and is retried with a growing delay ;
+ * one cut by a restart is resumed at startup.
+ */
+@Service
+@Slf4j
+public class UserPurgeService implements DisposableBean {
+
+    private static final int DUE_BATCH = 100;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final UserPurgeRepository userPurgeRepository;
+    private final TransactionRepository transactionRepository;
+    private final TransferTotalsService transferTotalsService;
+    private final UserVersions userVersions;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int asyncThreshold;
+    private final Duration retryBackoff;
+    private final Duration maxRetryBackoff;
+    // one round at a time, so that purges never compete with requests for many connections.
+    // A wake-up while a round runs queues one more round, the others are dropped
+    private final ThreadPoolTaskExecutor purgeExecutor = new ThreadPoolTaskExecutor();
+
+    private final Counter doneCounter;
+    private final Counter failedCounter;
+    private final AtomicInteger failing = new AtomicInteger();
+
+    public UserPurgeService(UserPurgeRepository userPurgeRepository,
+                            TransactionRepository transactionRepository,
+                            TransferTotalsService transferTotalsService,
+                            UserVersions userVersions,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${paymybuddy.purge.chunk-size:1000}") int chunkSize,
+                            @Value("${paymybuddy.purge.async-threshold:5000}") int asyncThreshold,
+                            @Value("${paymybuddy.purge.retry-backoff:1m}") Duration retryBackoff,
+                            @Value("${paymybuddy.purge.max-retry-backoff:6h}") Duration maxRetryBackoff) {
+        this.userPurgeRepository = userPurgeRepository;
+        this.transactionRepository = transactionRepository;
+        this.transferTotalsService = transferTotalsService;
+        this.userVersions = userVersions;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.asyncThreshold = asyncThreshold;
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+        purgeExecutor.setCorePoolSize(1);
+        purgeExecutor.setMaxPoolSize(1);
+        purgeExecutor.setQueueCapacity(1);
+        purgeExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        purgeExecutor.setThreadNamePrefix("purge-");
+        purgeExecutor.initialize();
+
+        this.doneCounter = Counter.builder("paymybuddy.purges")
+                .description("Purges of closed accounts done")
+                .tag("result", "done")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("paymybuddy.purges")
+                .description("Purges of closed accounts that failed and were rescheduled")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        // alert when it stays above 0 : user_purges.last_error tells why
+        Gauge.builder("paymybuddy.purge.failing", failing, AtomicInteger::get)
+                .description("Purges that failed at least once and are not done yet")
+                .register(meterRegistry);
+    }
+
+    // bounded read : stops counting past the threshold
+    public boolean hasLargeHistory(int userId) {
+        return transactionRepository.findDescribedIdsBySenderId(userId, Limit.of(asyncThreshold + 1)).size() > asyncThreshold;
+    }
+
+    // in the DB transaction that closes the account : the purge is recorded before the
+    // request answers, and starts once that DB transaction commits
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void schedule(int userId) {
+        userPurgeRepository.insert(userId, LocalDateTime.now());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                log.info("purge of user {} scheduled", userId);
+                wake();
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        wake();
+    }
+
+    // the failed purges, once their delay is over
+    @Scheduled(fixedDelayString = "${paymybuddy.purge.retry-interval:1m}",
+            initialDelayString = "${paymybuddy.purge.retry-interval:1m}")
+    public void retryDue() {
+        wake();
+    }
+
+    private void wake() {
+        purgeExecutor.execute(this::purgeDue);
+    }
+
+    // every purge due by now ; a failed one is pushed back by retry-backoff, doubled at each failure
+    void purgeDue() {
+        try {
+            Map<Integer, Integer> due;
+            do {
+                due = userPurgeRepository.findDue(LocalDateTime.now(), DUE_BATCH);
+                due.forEach((userId, attempts) -> {
+                    try {
+                        purge(userId);
+                        userPurgeRepository.delete(userId);
+                        doneCounter.increment();
+                    } catch (Exception e) {
+                        Duration delay = backoff(attempts);
+                        log.error("purge of user {} failed, attempt {}, retried in {}", userId, attempts + 1, delay, e);
+                        userPurgeRepository.reschedule(userId, LocalDateTime.now().plus(delay), error(e));
+                        failedCounter.increment();
+                    }
+                });
+            } while (due.size() == DUE_BATCH);
+            failing.set(userPurgeRepository.countFailing());
+        } catch (Exception e) {
+            // the rows stay due : the next round takes them again
+            log.error("purge round failed, retried after paymybuddy.purge.retry-interval", e);
+        }
+    }
+
+    void purge(int userId) {
+        long start = System.currentTimeMillis();
+        long erased = 0;
+        int chunk;
+        do {
+            chunk = transactionTemplate.execute(status -> {
+                List<Integer> ids = transactionRepository.findDescribedIdsBySenderId(userId, Limit.of(chunkSize));
+                if (!ids.isEmpty()) {
+                    transactionRepository.clearDescriptions(ids);
+                }
+                return ids.size();
+            });
+            erased += chunk;
+        } while (chunk == chunkSize);
+
+        // the receivers' histories lost the descriptions
+        userVersions.bump(UserVersions.Kind.TRANSACTIONS,
+                transferTotalsService.counterpartyIds(userId).stream().mapToInt(Integer::intValue).toArray());
+        log.info("user {} purged : {} descriptions erased in {} ms", userId, erased, System.currentTimeMillis() - start);
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts, 20));
+        return delay.compareTo(maxRetryBackoff) < 0 ? delay : maxRetryBackoff;
+    }
+
+    private static String error(Exception e) {
+        String error = e.toString();
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    @Override
+    public void destroy() {
+        purgeExecutor.shutdown();
+    }
+}
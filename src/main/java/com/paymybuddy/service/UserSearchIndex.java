@@ -0,0 +1,182 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.User;
+import com.paymybuddy.model.UserSearchResultDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory prefix index of usernames and emails, for the typeahead search.
+ * Terms are lower-cased and stripped of accents, then kept sorted : the users whose
+ * username or email starts with a prefix are one range of the index, so a search never
+ * scans the users table. The user's own connections are looked up first, through the
+ * connection graph, and ranked ahead of everybody else.
+ * Loaded at startup and kept in sync after each commit, like the ConnectionGraph.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class UserSearchIndex {
+
+    public static final int MAX_RESULTS = 20;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    // term + SEPARATOR + id : one key per user and term, sorted by term
+    private static final char SEPARATOR = '\u0000';
+
+    private final ConnectionGraph connectionGraph;
+    private final Object writeLock = new Object();
+    private final ConcurrentSkipListMap<String, Integer> index = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    public UserSearchIndex(JdbcTemplate jdbcTemplate, ConnectionGraph connectionGraph) {
+        this.connectionGraph = connectionGraph;
+        load(jdbcTemplate);
+    }
+
+    // read ______________________________________
+    // connections first (by username), then the others in term order ; never the user themself
+    public List<UserSearchResultDTO> search(String query, Integer userId, int limit) {
+        String prefix = normalize(query);
+        int size = Math.clamp(limit, 1, MAX_RESULTS);
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+
+        List<Entry> connections = new ArrayList<>();
+        ConnectionGraph.Neighbors neighbors = userId == null ? null : connectionGraph.neighbors(userId);
+        if (neighbors != null) {
+            neighbors.forEach(id -> {
+                Entry entry = entries.get(id);
+                if (entry != null && entry.matches(prefix)) {
+                    connections.add(entry);
+                }
+            });
+            connections.sort(Comparator.comparing(entry -> entry.terms[0]));
+        }
+
+        List<UserSearchResultDTO> results = new ArrayList<>(size);
+        for (int i = 0; i < connections.size() && results.size() < size; i++) {
+            results.add(connections.get(i).toResult(true));
+        }
+
+        // a user matching on both terms comes up twice in the range
+        Set<Integer> seen = new LinkedHashSet<>();
+        for (Integer id : index.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            if (results.size() >= size) {
+                break;
+            }
+            if (id.equals(userId) || (neighbors != null && neighbors.contains(id)) || !seen.add(id)) {
+                continue;
+            }
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                results.add(entry.toResult(false));
+            }
+        }
+        return results;
+    }
+
+    // write, once the DB transaction committed ___
+    public void put(User user) {
+        Entry entry = new Entry(user.getId(), user.getUsername(), user.getEmail());
+        afterCommit(() -> {
+            synchronized (writeLock) {
+                Entry previous = entries.put(entry.id, entry);
+                if (previous != null) {
+                    previous.keys().forEach(index::remove);
+                }
+                entry.keys().forEach(key -> index.put(key, entry.id));
+            }
+        });
+    }
+
+    public void remove(User user) {
+        int userId = user.getId();
+        afterCommit(() -> {
+            synchronized (writeLock) {
+                Entry previous = entries.remove(userId);
+                if (previous != null) {
+                    previous.keys().forEach(index::remove);
+                }
+            }
+        });
+    }
+
+    // helpers ___________________________________
+    private void load(JdbcTemplate jdbcTemplate) {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.query("SELECT id, username, email FROM users WHERE deleted_at IS NULL", (RowCallbackHandler) rs -> {
+            Entry entry = new Entry(rs.getInt("id"), rs.getString("username"), rs.getString("email"));
+            entries.put(entry.id, entry);
+            entry.keys().forEach(key -> index.put(key, entry.id));
+        });
+        log.info("user search index loaded : {} users in {} ms", entries.size(), System.currentTimeMillis() - start);
+    }
+
+    // "Élodie " and "elodie" are the same term
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    private static final class Entry {
+        final int id;
+        final String username;
+        final String email;
+        // normalized username, then email
+        final String[] terms;
+
+        Entry(int id, String username, String email) {
+            this.id = id;
+            this.username = username;
+            this.email = email;
+            this.terms = new String[]{normalize(username), normalize(email)};
+        }
+
+        boolean matches(String prefix) {
+            return terms[0].startsWith(prefix) || terms[1].startsWith(prefix);
+        }
+
+        List<String> keys() {
+            return List.of(terms[0] + SEPARATOR + id, terms[1] + SEPARATOR + id);
+        }
+
+        UserSearchResultDTO toResult(boolean connected) {
+            return new UserSearchResultDTO(id, username, email, connected);
+        }
+    }
+}
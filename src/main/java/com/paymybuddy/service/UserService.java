@@ -1,16 +1,23 @@
 package com.paymybuddy.service;
 
-import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.ConnectionSuggestionDTO;
+import com.paymybuddy.model.MutualConnectionsDTO;
+import com.paymybuddy.model.OutboxEvent;
 import com.paymybuddy.model.User;
+import com.paymybuddy.model.UserIdentity;
 import com.paymybuddy.model.UserProfileDTO;
+import com.paymybuddy.model.UserSearchResultDTO;
 import com.paymybuddy.repository.TransactionRepository;
 import com.paymybuddy.repository.UserRepository;
-import jakarta.transaction.Transactional;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.*;
 
 @Service
@@ -22,6 +29,13 @@ public class UserService {
     private final UserRepository userRepository;
     private final TransactionRepository transactionRepository;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final UserIdentityCache userIdentityCache;
+    private final ConnectionGraph connectionGraph;
+    private final UserSearchIndex userSearchIndex;
+    private final OutboxService outboxService;
+    private final UserVersions userVersions;
+    private final UserPurgeService userPurgeService;
+    private final TransferTotalsService transferTotalsService;
 
     // create ____________________________________
     public void signup(String username, String email, String password) {
@@ -31,8 +45,11 @@ public class UserService {
         user.setEmail(email);
         user.setPassword(hashPassword);
         userRepository.save(user);
+        connectionGraph.putUser(user);
+        userSearchIndex.put(user);
     }
 
+    @Timed(value = "paymybuddy.service", histogram = true)
     public void addConnection(Integer userId, Integer connectionId) {
         User user = getUserById(userId, "u");
         User connection = getUserById(connectionId, "u");
@@ -41,8 +58,7 @@ public class UserService {
             throw new IllegalArgumentException("Utilisateur ne peut pas s'ajouter");
         }
 
-        Optional<User> connectionExists = findConnection(userId, connection.getEmail());
-        if (connectionExists.isPresent()) {
+        if (isConnected(userId, connectionId)) {
             throw new RuntimeException("La connection existe déjà");
         }
 
@@ -51,6 +67,10 @@ public class UserService {
 
         connection.getConnections().add(user);
         userRepository.save(connection);
+        connectionGraph.connect(userId, connectionId);
+        userVersions.bump(UserVersions.Kind.CONNECTIONS, userId, connectionId);
+        outboxService.publish(OutboxEvent.CONNECTION_ADDED, userId,
+                Map.of("userId", userId, "connectionId", connectionId));
     }
 
     // read ____________________________________
@@ -61,13 +81,15 @@ public class UserService {
             case "r" -> "Destinataire non trouvé";
             default  -> "Utilisateur non trouvé";
         };
-        return userRepository.findById(id)
+        return findById(id)
                 .orElseThrow(() -> new RuntimeException(eMsg)
                 );
     }
 
+    // a closed account keeps its row, for its transfers : it is found no more
     public Optional<User> findById(int id) {
-        return userRepository.findById(id);
+        return userRepository.findById(id)
+                .filter(user -> user.getDeletedAt() == null);
     }
 
     public Optional<User> findByUsername(String username) {
@@ -78,20 +100,86 @@ public class UserService {
         return userRepository.findByEmail(email);
     }
 
+    // cached, for callers that only need to know who the user is
+    public Optional<UserIdentity> findIdentityByEmail(String email) {
+        return userIdentityCache.findByEmail(email);
+    }
+
+    // answered by the in-memory graph, no query
+    public boolean isConnected(Integer userId, Integer connectionId) {
+        return connectionGraph.areConnected(userId, connectionId);
+    }
+
     public Optional<User> findConnection(Integer userId, String connectionEmail) {
-        return userRepository.findConnectionsByUserId(userId)
-                .stream()
-                .filter(connection ->
-                        connection.getEmail().equals(connectionEmail))
-                .findFirst();
+        Integer connectionId = connectionGraph.findIdByEmail(connectionEmail);
+        if (connectionId == null || !isConnected(userId, connectionId)) {
+            return Optional.empty();
+        }
+        return userRepository.findById(connectionId);
+    }
+
+    // suggestions ________________________________
+    // friends of friends, most mutual connections first ; answered by the in-memory graph
+    @Timed(value = "paymybuddy.service", histogram = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ConnectionSuggestionDTO> getSuggestions(Integer userId, int limit) {
+        requireKnown(userId);
+        ConnectionGraph.Suggestions suggestions = connectionGraph.suggestions(userId);
+
+        int size = Math.clamp(limit, 1, ConnectionGraph.MAX_SUGGESTIONS);
+        List<ConnectionSuggestionDTO> suggestionsDTO = new ArrayList<>(size);
+        for (int i = 0; i < suggestions.size() && suggestionsDTO.size() < size; i++) {
+            int id = suggestions.id(i);
+            // skips users deleted since the suggestions were cached
+            String email = connectionGraph.email(id);
+            if (email != null && !connectionGraph.areConnected(userId, id)) {
+                suggestionsDTO.add(new ConnectionSuggestionDTO(
+                        connectionGraph.username(id), email, suggestions.mutualConnections(i)));
+            }
+        }
+        return suggestionsDTO;
     }
 
+    @Timed(value = "paymybuddy.service", histogram = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public MutualConnectionsDTO getMutualConnections(Integer userId, Integer otherId, int limit) {
+        requireKnown(userId);
+        requireKnown(otherId);
+        int[] mutual = connectionGraph.mutualConnections(userId, otherId);
+
+        int size = Math.min(mutual.length, Math.max(limit, 0));
+        List<UserProfileDTO> connectionsDTO = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            connectionsDTO.add(new UserProfileDTO(
+                    connectionGraph.username(mutual[i]), connectionGraph.email(mutual[i]), null));
+        }
+        return new MutualConnectionsDTO(mutual.length, connectionsDTO);
+    }
+
+    private void requireKnown(Integer userId) {
+        if (userId == null || connectionGraph.email(userId) == null) {
+            throw new IllegalArgumentException("Utilisateur n'existe pas");
+        }
+    }
+
+    // search ____________________________________
+    // typeahead on usernames and emails, connections first ; answered by the in-memory index
+    @Timed(value = "paymybuddy.service", histogram = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<UserSearchResultDTO> searchUsers(String query, Integer userId, int limit) {
+        return userSearchIndex.search(query, userId, limit);
+    }
+
+    // readOnly : served by a replica when there are some (ReadWriteRoutingDataSource)
+    @Transactional(readOnly = true)
     public Set<UserProfileDTO> getAllConnections(Integer userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
-        Set<User> connections = user.getConnections();
+        List<User> connections = new ArrayList<>(user.getConnections());
+        // same list, same bytes : the ETag of /users/{id}/connections is a strong one
+        connections.sort(Comparator.comparing(User::getId));
 
-        Set<UserProfileDTO> connectionsDTO = new HashSet<>();
+        Set<UserProfileDTO> connectionsDTO = new LinkedHashSet<>();
         for (User connection : connections) {
             connectionsDTO.add(new UserProfileDTO(connection.getUsername(), connection.getEmail(), null));
         }
@@ -104,42 +192,69 @@ public class UserService {
             throw new IllegalArgumentException("Utilisateur n'existe pas");
         }
         userRepository.save(user);
+        userIdentityCache.evict(user);
+        connectionGraph.putUser(user);
+        userSearchIndex.put(user);
+        userVersions.bump(UserVersions.Kind.PROFILE, user.getId());
+        // the name shows in the lists of the user's connections and counterparties
+        bumpConnections(user.getId());
+        userVersions.bump(UserVersions.Kind.TRANSACTIONS,
+                transferTotalsService.counterpartyIds(user.getId()).stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private void bumpConnections(int userId) {
+        ConnectionGraph.Neighbors neighbors = connectionGraph.neighbors(userId);
+        if (neighbors != null) {
+            userVersions.bump(UserVersions.Kind.CONNECTIONS, neighbors.toArray());
+        }
     }
 
     // delete __________________________________
+    // the account is closed, not erased : its settled transfers stay in the counterparties'
+    // histories and no balance moves. The row is anonymized, the connections go, and so do
+    // the descriptions the user wrote. Set-based : a few statements whatever the size of the history
+    @Timed(value = "paymybuddy.service", histogram = true)
     @Transactional
     public void deleteUser(User user) {
+        close(user, true);
+    }
 
-        if (!userRepository.existsById(user.getId())) {
-            throw new IllegalArgumentException("Utilisateur n'existe pas");
+    // returns false when the user wrote too many descriptions to erase now : the account is
+    // closed all the same (no login, no connections) and they are erased in the background.
+    // Both the closing and the purge are committed before the caller answers : a failure
+    // of either one fails the request instead of a 202
+    @Timed(value = "paymybuddy.service", histogram = true)
+    @Transactional
+    public boolean closeAccount(User user) {
+        if (!userPurgeService.hasLargeHistory(user.getId())) {
+            deleteUser(user);
+            return true;
         }
+        close(user, false);
+        userPurgeService.schedule(user.getId());
+        return false;
+    }
 
+    private void close(User user, boolean eraseDescriptions) {
+        if (userRepository.close(user.getId(), LocalDateTime.now()) == 0) {
+            throw new IllegalArgumentException("Utilisateur n'existe pas");
+        }
         try {
-            // delete this user's transactions
-            List<Transaction> transactionList = transactionRepository.findByUser(user);
-            transactionRepository.deleteAll(transactionList);
-
-            // delete the connections
-            Set<User> connections = new HashSet<>(user.getConnections());
-            for (User connection : connections) {
-                try {
-                    removeConnection(user.getId(), connection.getId());
-                } catch (Exception e) {
-                    log.error("Error removing connection between user {} and connection {}: {}", user.getId(), connection.getId(), e.getMessage());
-                }
-            }
-
-            // Remove user from other users' connections
-            List<User> allUsers = userRepository.findAll();
-            for (User otherUser : allUsers) {
-                if (otherUser.getConnections().contains(user)) {
-                    otherUser.getConnections().remove(user);
-                    userRepository.save(otherUser);
-                }
-            }
+            int connections = userRepository.deleteConnections(user.getId());
+            int descriptions = eraseDescriptions ? transactionRepository.clearDescriptionsBySenderId(user.getId()) : 0;
+            log.info("user {} closed with {} connection rows, {} descriptions erased",
+                    user.getId(), connections, descriptions);
 
-            // delete the user
-            userRepository.delete(user);
+            // the name goes from the connections' lists and from the counterparties' histories
+            bumpConnections(user.getId());
+            userVersions.bump(UserVersions.Kind.TRANSACTIONS,
+                    transferTotalsService.counterpartyIds(user.getId()).stream().mapToInt(Integer::intValue).toArray());
+            userVersions.remove(user.getId());
+            userIdentityCache.evict(user);
+            connectionGraph.removeUser(user);
+            userSearchIndex.remove(user);
+            outboxService.publish(OutboxEvent.USER_DELETED, user.getId(),
+                    Map.of("userId", user.getId(), "purged", eraseDescriptions));
         } catch (Exception e) {
             log.error("Erreur à la suppression de l'utilisateur", e);
             throw new RuntimeException("Erreur à la suppression");
@@ -157,6 +272,10 @@ public class UserService {
 
             connection.getConnections().remove(user);
             userRepository.save(connection);
+            connectionGraph.disconnect(userId, connectionId);
+            userVersions.bump(UserVersions.Kind.CONNECTIONS, userId, connectionId);
+            outboxService.publish(OutboxEvent.CONNECTION_REMOVED, userId,
+                    Map.of("userId", userId, "connectionId", connectionId));
         } else {
             log.warn("Utilisateur ou connection n'existe pas pour être supprimé");
         }
@@ -168,6 +287,7 @@ public class UserService {
         String hashedPassword = passwordEncoder.encode(newPassword);
         user.setPassword(hashedPassword);
         userRepository.save(user);
+        userIdentityCache.evict(user);
     }
     public boolean checkPassword(String password, String hashedPassword) {
         return passwordEncoder.matches(password, hashedPassword);
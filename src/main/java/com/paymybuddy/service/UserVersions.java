@@ -0,0 +1,111 @@
+package com.paymybuddy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user version of the connections list and of the transaction history, for the ETags
+ * of GET /users/{id}/connections and /transactions/user/{id}, and of the profile, for the
+ * principal kept in the session (SessionUser).
+ * A version changes after the commit of every write that changes the list, for every user
+ * whose list shows it (a rename : the connections and counterparties of the user) ; the ETag
+ * is read before the list, so that a response is never tagged newer than its content.
+ * Unknown and deleted users (not in the ConnectionGraph) get no ETag, so never a 304, and
+ * the versions of a deleted user are dropped.
+ * Versions live in memory, with an epoch in each ETag that changes at every start.
+ * Single instance only : they follow this instance's writes, like the ConnectionGraph. With
+ * several instances, a write on one leaves the ETags of the others current.
+ */
+@Component
+public class UserVersions {
+
+    public enum Kind { CONNECTIONS, TRANSACTIONS, PROFILE }
+
+    private final ConnectionGraph connectionGraph;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Version> versions = new ConcurrentHashMap<>();
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    // a replica may still serve the old list for this long after a change : no ETag meanwhile
+    private final long replicaLagNanos;
+
+    public UserVersions(ConnectionGraph connectionGraph,
+                        @Value("${paymybuddy.datasource.replica-urls:}") List<String> replicaUrls,
+                        @Value("${paymybuddy.datasource.read-your-writes:5s}") Duration readYourWrites) {
+        this.connectionGraph = connectionGraph;
+        this.replicaLagNanos = replicaUrls.isEmpty() ? 0 : readYourWrites.toNanos();
+    }
+
+    // read ______________________________________
+    // a strong ETag, or null for an unknown user and while the list may still be stale on a replica
+    public String etag(int userId, Kind kind) {
+        if (connectionGraph.email(userId) == null) {
+            return null;
+        }
+        Version version = versions.get(key(userId, kind));
+        if (version == null) {
+            return "\"" + epoch + "-" + kind.ordinal() + "-0\"";
+        }
+        if (replicaLagNanos > 0 && System.nanoTime() - version.changedAt < replicaLagNanos) {
+            return null;
+        }
+        return "\"" + epoch + "-" + kind.ordinal() + "-" + version.value + "\"";
+    }
+
+    // <epoch>-0 until the first change since the start, so that a version kept across a restart
+    // (a persisted session) is never current ; null for unknown and deleted users
+    public String version(int userId, Kind kind) {
+        if (connectionGraph.email(userId) == null) {
+            return null;
+        }
+        Version version = versions.get(key(userId, kind));
+        return epoch + "-" + (version == null ? 0 : version.value);
+    }
+
+    // write, once the DB transaction committed ___
+    public void bump(Kind kind, int... userIds) {
+        afterCommit(() -> {
+            for (int userId : userIds) {
+                versions.put(key(userId, kind), new Version(sequence.incrementAndGet(), System.nanoTime()));
+            }
+        });
+    }
+
+    // a deleted user : its versions go, and it gets no ETag any more
+    public void remove(int userId) {
+        afterCommit(() -> {
+            for (Kind kind : Kind.values()) {
+                versions.remove(key(userId, kind));
+            }
+        });
+    }
+
+    // helpers ___________________________________
+    private static long key(int userId, Kind kind) {
+        return ((long) userId << 2) | kind.ordinal();
+    }
+
+    private static void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    private record Version(long value, long changedAt) {
+    }
+}
@@ -0,0 +1,15 @@
+-- Result of each POST /transactions sent with an Idempotency-Key, replayed on a retry (IdempotencyService).
+-- Keys belong to the transfer's sender : two senders may send the same key.
+-- A key is inserted before the debit and gets its transaction_id in the same DB transaction.
+-- Purged by created_at once older than paymybuddy.idempotency.ttl
+
+CREATE TABLE idempotency_keys (
+             sender_id INT NOT NULL,
+             idempotency_key VARCHAR(255) NOT NULL,
+             fingerprint VARCHAR(64) NOT NULL,
+             transaction_id INT NULL,
+             created_at DATETIME NOT NULL,
+             PRIMARY KEY (sender_id, idempotency_key)
+);
+
+CREATE INDEX idx_idempotency_keys_created_at ON idempotency_keys (created_at);
@@ -0,0 +1,24 @@
+-- Running totals of each user with each counterparty : two rows per pair, one per side.
+-- Kept in the DB transaction of every transfer, update and deletion (TransferTotalsService).
+-- No foreign keys : the rows are derived data, removed with the user
+
+CREATE TABLE transfer_totals (
+             user_id INT NOT NULL,
+             counterparty_id INT NOT NULL,
+             sent_total DECIMAL(15,2) NOT NULL DEFAULT 0.00,
+             received_total DECIMAL(15,2) NOT NULL DEFAULT 0.00,
+             transfer_count INT NOT NULL DEFAULT 0,
+             last_transaction_id INT NULL,
+             PRIMARY KEY (user_id, counterparty_id)
+);
+
+-- transactions up to the watermark predate this migration : the backfill job adds them,
+-- chunk by chunk, and moves backfilled_up_to forward. Later ones are counted as they are written
+CREATE TABLE transfer_totals_backfill (
+             id INT PRIMARY KEY,
+             watermark INT NOT NULL,
+             backfilled_up_to INT NOT NULL
+);
+
+INSERT INTO transfer_totals_backfill (id, watermark, backfilled_up_to)
+SELECT 1, COALESCE(MAX(id), 0), 0 FROM transactions;
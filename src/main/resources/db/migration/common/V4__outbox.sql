@@ -0,0 +1,16 @@
+-- Transactional outbox : events are written in the DB transaction of the change they
+-- describe, then handed to the listeners by the relay (OutboxService) and deleted.
+-- available_at : when the relay may (re)claim the row, pushed forward while it is dispatched
+-- and after each failure
+
+CREATE TABLE outbox_events (
+             id BIGINT AUTO_INCREMENT PRIMARY KEY,
+             event_type VARCHAR(50) NOT NULL,
+             aggregate_id INT NOT NULL,
+             payload VARCHAR(2000) NOT NULL,
+             created_at DATETIME(3) NOT NULL,
+             available_at DATETIME(3) NOT NULL,
+             attempts INT NOT NULL DEFAULT 0
+);
+
+CREATE INDEX idx_outbox_events_available_at_id ON outbox_events (available_at, id);
@@ -0,0 +1,13 @@
+-- Background purges of closed accounts (UserPurgeService) : the row is written in the DB transaction
+-- that closes the account, and deleted once the purge is done.
+-- retry_at : when the purge may run (again), pushed back after each failure ; last_error : why the last one failed
+
+CREATE TABLE user_purges (
+             user_id INT PRIMARY KEY,
+             created_at DATETIME NOT NULL,
+             retry_at DATETIME NOT NULL,
+             attempts INT NOT NULL DEFAULT 0,
+             last_error VARCHAR(1000) NULL
+);
+
+CREATE INDEX idx_user_purges_retry_at ON user_purges (retry_at);
@@ -0,0 +1,2 @@
+-- same column as db/migration/mysql/V1_1, for the H2 databases of the tests
+ALTER TABLE users ADD COLUMN balance DECIMAL(10,2) NOT NULL DEFAULT 0.00;
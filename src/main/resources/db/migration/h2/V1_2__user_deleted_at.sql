@@ -0,0 +1,2 @@
+-- same column as db/migration/mysql/V1_2, for the H2 databases of the tests
+ALTER TABLE users ADD COLUMN deleted_at DATETIME NULL;
@@ -0,0 +1,6 @@
+-- same indexes as db/migration/mysql/V2, for the H2 databases of the tests
+
+CREATE INDEX idx_transactions_sender_id_id ON transactions (sender_id, id);
+CREATE INDEX idx_transactions_receiver_id_id ON transactions (receiver_id, id);
+CREATE INDEX idx_transactions_sender_id_receiver_id ON transactions (sender_id, receiver_id);
+CREATE INDEX idx_user_connections_connection_id ON user_connections (connection_id);
@@ -0,0 +1,3 @@
+-- Balance of each user, moved only by the transfers (TransferEngine). Existing users start at 0.00.
+-- INSTANT : only the table's metadata changes, the rows are not rewritten
+ALTER TABLE users ADD COLUMN balance DECIMAL(10,2) NOT NULL DEFAULT 0.00, ALGORITHM=INSTANT;
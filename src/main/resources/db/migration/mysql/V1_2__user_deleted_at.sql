@@ -0,0 +1,2 @@
+-- Set when an account is closed and its history is still being purged (UserPurgeService)
+ALTER TABLE users ADD COLUMN deleted_at DATETIME NULL, ALGORITHM=INSTANT;
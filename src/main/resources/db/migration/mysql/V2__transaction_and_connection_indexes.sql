@@ -0,0 +1,18 @@
+-- Indexes of the history queries (TransactionRepository) and of the reverse side of connections.
+-- Online : ALGORITHM=INPLACE, LOCK=NONE keeps reads and writes going while each index is built,
+-- and makes MySQL refuse the statement rather than lock the table if it cannot.
+-- MySQL DDL is not transactional : if a statement fails, drop the indexes already built
+-- and run flyway repair before migrating again.
+-- Each new index takes over the foreign key's own index, which MySQL then drops.
+
+-- findPageByUser / streamAllByUser / deleteAllBySenderId : sender branch, newest first
+ALTER TABLE transactions ADD INDEX idx_transactions_sender_id_id (sender_id, id), ALGORITHM=INPLACE, LOCK=NONE;
+
+-- same, receiver branch
+ALTER TABLE transactions ADD INDEX idx_transactions_receiver_id_id (receiver_id, id), ALGORITHM=INPLACE, LOCK=NONE;
+
+-- findBySenderAndReceiver
+ALTER TABLE transactions ADD INDEX idx_transactions_sender_id_receiver_id (sender_id, receiver_id), ALGORITHM=INPLACE, LOCK=NONE;
+
+-- connections seen from the other side (deleteConnections, ManyToMany removals)
+ALTER TABLE user_connections ADD INDEX idx_user_connections_connection_id (connection_id), ALGORITHM=INPLACE, LOCK=NONE;
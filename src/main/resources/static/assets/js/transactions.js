@@ -6,7 +6,23 @@ document.addEventListener("DOMContentLoaded", function () {
     const transactionsTable = document.getElementById('transactionsTable');
     const selectRelation = document.getElementById('selectRelation');
     const alertBox = document.getElementById('alertBox');
+    const loadMoreSentinel = document.getElementById('loadMoreSentinel');
+    const pageSize = 20;
     let userId;
+    // keyset pagination state
+    let nextCursor = null;
+    let hasMore = true;
+    let loading = false;
+    // bumped by each restart : the pages of an older list are dropped when they come back
+    let generation = 0;
+
+    // load the next page when the bottom of the table becomes visible
+    const observer = new IntersectionObserver(entries => {
+        if (entries[0].isIntersecting && userId && hasMore && !loading) {
+            loadTransactions();
+        }
+    });
+    observer.observe(loadMoreSentinel);
 
     // Fetch user info
     fetch('/users/email')
@@ -124,7 +140,18 @@ document.addEventListener("DOMContentLoaded", function () {
             .then(user => user.id);
     }
     function getTransactions() {
-        fetch(`/transactions/user/${userId}`)
+        // restart from the newest transaction
+        generation++;
+        transactionsTable.innerHTML = '';
+        nextCursor = null;
+        hasMore = true;
+        loadTransactions();
+    }
+    function loadTransactions() {
+        const current = generation;
+        loading = true;
+        const after = nextCursor !== null ? `&after=${nextCursor}` : '';
+        fetch(`/transactions/user/${userId}?limit=${pageSize}${after}`)
             .then(response => {
                 if (!response.ok) {
                     return response.text().then(text => {
@@ -133,22 +160,43 @@ document.addEventListener("DOMContentLoaded", function () {
                 }
                 return response.json();
             })
-            .then(data => {
-                transactionsTable.innerHTML = '';
-                if (data.length === 0) {
+            .then(page => {
+                if (current !== generation) {
+                    return;
+                }
+                if (nextCursor === null && page.transactions.length === 0) {
                     messageBox('WARNING', 'Aucune transaction trouvée');
-                } else {
-                    transactionsTable.innerHTML = '';
-                    data.forEach(transaction => {
-                        populateTransactionsTable(transaction);
-                    });
                 }
+                page.transactions.forEach(transaction => {
+                    populateTransactionsTable(transaction);
+                });
+                nextCursor = page.nextCursor;
+                hasMore = page.nextCursor !== null;
             })
             .catch(error => {
+                if (current !== generation) {
+                    return;
+                }
+                hasMore = false;
                 console.error('Error fetching transactions:', error);
                 messageBox('ERROR', `Erreur lors de la récupération des transactions : ${error.message}`);
+            })
+            .finally(() => {
+                // the restart's own load is running : leave it its state
+                if (current !== generation) {
+                    return;
+                }
+                loading = false;
+                // the page may still be too short to scroll
+                if (hasMore && isVisible(loadMoreSentinel)) {
+                    loadTransactions();
+                }
             });
     }
+    function isVisible(element) {
+        const rect = element.getBoundingClientRect();
+        return rect.top < window.innerHeight && rect.bottom >= 0;
+    }
     function populateTransactionsTable(transaction) {
         const row = document.createElement('tr');
         row.innerHTML = `
@@ -160,19 +208,17 @@ document.addEventListener("DOMContentLoaded", function () {
         </td>
     `;
         transactionsTable.appendChild(row);
-        addEventToDeleteButton();
+        addEventToDeleteButton(row.querySelector('.delete-btn'));
     }
-    function addEventToDeleteButton() {
-        document.querySelectorAll(".delete-btn").forEach(button => {
-            button.addEventListener('click', function () {
-                const transactionId = this.getAttribute('data-id');
-                fetch(`/transactions/${transactionId}`, { method: 'DELETE' })
-                    .then(() => getTransactions())
-                    .catch(error => {
-                        console.error(`Error deleting transaction: ${error.message}`);
-                        messageBox('ERROR', `Erreur lors de la suppression de la transaction`);
-                    });
-            });
+    function addEventToDeleteButton(button) {
+        button.addEventListener('click', function () {
+            const transactionId = this.getAttribute('data-id');
+            fetch(`/transactions/${transactionId}`, { method: 'DELETE' })
+                .then(() => getTransactions())
+                .catch(error => {
+                    console.error(`Error deleting transaction: ${error.message}`);
+                    messageBox('ERROR', `Erreur lors de la suppression de la transaction`);
+                });
         });
     }
     function messageBox(type, message) {
@@ -1,12 +1,12 @@
 use PayMyBuddy;
 
-INSERT INTO users (username, email, password) VALUES
-                  ('Alice',  'Alice@exemple.fr',  '$2a$12$ETriS/gpvIpjYdvsnxfhIuHByZM9vyBvUJk5Zl5UKDhkR7U0WbHeK'),
-                  ('John',   'John@exemple.fr',   '$2a$12$Yykn6BnnA2.gk/R3VBRxYe5rY1ysr3ooV.bnltrJeiofnIuYa6eK.'),
-                  ('Martin', 'Martin@exemple.fr', '$2a$12$NsHd6f0vZydvhX8LIbGiQOt9nE6HSzydZfbDoM/Iwn1oXP5zK7F2y'),
-                  ('Milo',   'Milo@exemple.fr',   '$2a$12$esreQeohkk8wNBwDwmhdfuUoErRc6z7vxplovOtxHYf02jr7mc0HK'),
-                  ('Dylan',  'Dylan@exemple.fr',  '$2a$12$NcRyJJM0tx8gf4JM5gvaGux3mJttINqCNukiCTXExAqZQkN2WeLHe'),
-                  ('Sara',   'Sara@exemple.fr',   '$2a$12$Osa6ggyMEvLVlnUb7z5ZJuafp04ZDCeiCyOnxPCJksecVU1UTZCIm');
+INSERT INTO users (username, email, password, balance) VALUES
+                  ('Alice',  'Alice@exemple.fr',  '$2a$12$ETriS/gpvIpjYdvsnxfhIuHByZM9vyBvUJk5Zl5UKDhkR7U0WbHeK', 500.00),
+                  ('John',   'John@exemple.fr',   '$2a$12$Yykn6BnnA2.gk/R3VBRxYe5rY1ysr3ooV.bnltrJeiofnIuYa6eK.', 500.00),
+                  ('Martin', 'Martin@exemple.fr', '$2a$12$NsHd6f0vZydvhX8LIbGiQOt9nE6HSzydZfbDoM/Iwn1oXP5zK7F2y', 500.00),
+                  ('Milo',   'Milo@exemple.fr',   '$2a$12$esreQeohkk8wNBwDwmhdfuUoErRc6z7vxplovOtxHYf02jr7mc0HK', 500.00),
+                  ('Dylan',  'Dylan@exemple.fr',  '$2a$12$NcRyJJM0tx8gf4JM5gvaGux3mJttINqCNukiCTXExAqZQkN2WeLHe', 500.00),
+                  ('Sara',   'Sara@exemple.fr',   '$2a$12$Osa6ggyMEvLVlnUb7z5ZJuafp04ZDCeiCyOnxPCJksecVU1UTZCIm', 500.00);
 
 INSERT INTO transactions (sender_id, receiver_id, description, amount) VALUES
                         (1, 2, 'Dîner', 25.50),
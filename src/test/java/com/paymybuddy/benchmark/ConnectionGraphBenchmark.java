@@ -0,0 +1,127 @@
+package com.paymybuddy.benchmark;
+
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.UserRepository;
+import com.paymybuddy.service.ConnectionGraph;
+import com.paymybuddy.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "Is this user one of my connections ?" : the connection set scan findConnection used to do
+ * (once findConnectionsByUserId had loaded it, so without the query) against the graph lookup,
+ * and UserService.findConnection as it is now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionGraphBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int connections;
+
+    private Set<User> connectionSet;
+    private ConnectionGraph connectionGraph;
+    private UserService userService;
+    private String presentEmail;
+    private String absentEmail;
+    private int presentId;
+    private int absentId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:graph-benchmark;DB_CLOSE_DELAY=-1", "sa", "", true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        jdbcTemplate.execute("CREATE TABLE users (id INT PRIMARY KEY, email VARCHAR(100), username VARCHAR(100), deleted_at TIMESTAMP NULL)");
+        jdbcTemplate.execute("CREATE TABLE user_connections (user_id INT, connection_id INT)");
+
+        connectionSet = new HashSet<>();
+        List<Object[]> users = new ArrayList<>();
+        List<Object[]> links = new ArrayList<>();
+        users.add(new Object[]{1, "user1@paymybuddy.com"});
+        for (int id = 2; id <= connections + 2; id++) {
+            User user = new User();
+            user.setId(id);
+            user.setEmail("user" + id + "@paymybuddy.com");
+            users.add(new Object[]{id, user.getEmail()});
+            // the last one stays a stranger
+            if (id <= connections + 1) {
+                connectionSet.add(user);
+                links.add(new Object[]{1, id});
+                links.add(new Object[]{id, 1});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (id, email) VALUES (?, ?)", users);
+        jdbcTemplate.batchUpdate("INSERT INTO user_connections (user_id, connection_id) VALUES (?, ?)", links);
+
+        connectionGraph = new ConnectionGraph(jdbcTemplate, new SimpleMeterRegistry(), 1000, 10_000);
+        presentId = connections / 2 + 2;
+        presentEmail = "user" + presentId + "@paymybuddy.com";
+        absentId = connections + 2;
+        absentEmail = "user" + absentId + "@paymybuddy.com";
+        dataSource.destroy();
+
+        // the service adds a primary key lookup of the connection found, stubbed here
+        User found = connectionSet.stream().filter(user -> user.getId() == presentId).findFirst().orElseThrow();
+        UserRepository userRepository = RepositoryStubs.returning(UserRepository.class,
+                Map.of("findById", Optional.of(found)));
+        userService = new UserService(userRepository, null, null, null, connectionGraph, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public boolean setScanPresent() {
+        return connectionSet.stream().anyMatch(connection -> connection.getEmail().equals(presentEmail));
+    }
+
+    @Benchmark
+    public boolean setScanAbsent() {
+        return connectionSet.stream().anyMatch(connection -> connection.getEmail().equals(absentEmail));
+    }
+
+    @Benchmark
+    public boolean graphPresent() {
+        return connectionGraph.areConnected(1, presentId);
+    }
+
+    @Benchmark
+    public boolean graphAbsent() {
+        return connectionGraph.areConnected(1, absentId);
+    }
+
+    @Benchmark
+    public Optional<User> userServiceFindConnection() {
+        return userService.findConnection(1, presentEmail);
+    }
+
+    @Benchmark
+    public boolean graphByEmail() {
+        Integer id = connectionGraph.findIdByEmail(presentEmail);
+        return id != null && connectionGraph.areConnected(1, id);
+    }
+}
@@ -0,0 +1,87 @@
+package com.paymybuddy.benchmark;
+
+import com.paymybuddy.service.ConnectionGraph;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "People you may know" for a user with `connections` connections, each of them with
+ * 200 connections of their own among 100 000 users. The suggestions cache is off
+ * (max-size 0) : every call counts the friends of friends again, the worst case.
+ * mutual is the mutual-connection list between the user and one of their connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionSuggestionsBenchmark {
+
+    private static final int USERS = 100_000;
+    private static final int FRIENDS_OF_FRIEND = 200;
+
+    @Param({"100", "5000"})
+    private int connections;
+
+    @Param({"200", "1000"})
+    private int maxFanout;
+
+    private ConnectionGraph connectionGraph;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:suggestions-benchmark;DB_CLOSE_DELAY=-1", "sa", "", true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        jdbcTemplate.execute("CREATE TABLE users (id INT PRIMARY KEY, email VARCHAR(100), username VARCHAR(100), deleted_at TIMESTAMP NULL)");
+        jdbcTemplate.execute("CREATE TABLE user_connections (user_id INT, connection_id INT)");
+        jdbcTemplate.execute("INSERT INTO users (id, email, username) SELECT X, CONCAT('user', X, '@paymybuddy.com'), CONCAT('user', X) "
+                + "FROM SYSTEM_RANGE(1, " + USERS + ")");
+
+        Random random = new Random(42);
+        List<Object[]> links = new ArrayList<>();
+        for (int friend = 2; friend <= connections + 1; friend++) {
+            links.add(new Object[]{1, friend});
+            links.add(new Object[]{friend, 1});
+            for (int i = 0; i < FRIENDS_OF_FRIEND; i++) {
+                int other = 2 + random.nextInt(USERS - 1);
+                links.add(new Object[]{friend, other});
+                links.add(new Object[]{other, friend});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO user_connections (user_id, connection_id) VALUES (?, ?)", links);
+
+        connectionGraph = new ConnectionGraph(jdbcTemplate, new SimpleMeterRegistry(), maxFanout, 0);
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public int suggestions() {
+        return connectionGraph.suggestions(1).size();
+    }
+
+    @Benchmark
+    public int mutual() {
+        return connectionGraph.mutualConnections(1, 2).length;
+    }
+}
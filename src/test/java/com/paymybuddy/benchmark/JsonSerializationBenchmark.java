@@ -0,0 +1,79 @@
+package com.paymybuddy.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.paymybuddy.model.TransactionDTO;
+import com.paymybuddy.model.TransactionPageDTO;
+import com.paymybuddy.model.UserProfileDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the DTOs the API returns, with the mapper Spring MVC builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter transactionWriter;
+    private TransactionDTO transaction;
+    private TransactionPageDTO page;
+    private UserProfileDTO profile;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        transactionWriter = objectMapper.writerFor(TransactionDTO.class);
+
+        transaction = new TransactionDTO(1234, "Linda", "Dinner, drinks", new BigDecimal("25.50"));
+        List<TransactionDTO> transactions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            transactions.add(new TransactionDTO(1000 - i, "user" + i, "Transaction " + i, BigDecimal.valueOf(i, 2)));
+        }
+        page = new TransactionPageDTO(transactions, 981);
+        profile = new UserProfileDTO("Malick", "malick@paymybuddy.com", null);
+    }
+
+    @Benchmark
+    public String transactionDTO() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(transaction);
+    }
+
+    // what the NDJSON export does per row
+    @Benchmark
+    public String transactionDTOWithWriter() throws JsonProcessingException {
+        return transactionWriter.writeValueAsString(transaction);
+    }
+
+    // GET /transactions/user/{id}, default page size
+    @Benchmark
+    public String transactionPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(page);
+    }
+
+    @Benchmark
+    public String userProfileDTO() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(profile);
+    }
+}
@@ -0,0 +1,25 @@
+package com.paymybuddy.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Repository stand-ins for benchmarks : each method returns a fixed value, at the cost
+ * of a proxy call, so that what is measured is the service code and not a mock framework.
+ */
+final class RepositoryStubs {
+
+    private RepositoryStubs() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T returning(Class<T> repository, Map<String, Object> resultsByMethod) {
+        return (T) Proxy.newProxyInstance(repository.getClassLoader(), new Class<?>[]{repository},
+                (proxy, method, args) -> {
+                    if (!resultsByMethod.containsKey(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return resultsByMethod.get(method.getName());
+                });
+    }
+}
@@ -0,0 +1,168 @@
+package com.paymybuddy.benchmark;
+
+import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.TransactionDTO;
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.TransactionRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The history of a user with `rows` transactions, on H2, read two ways :
+ * - entityMapping, the old path and the baseline : every transaction of the user as an entity,
+ *   sender and receiver loaded once per user as the persistence context did, then mapped to DTOs in Java
+ * - projection : the SQL of TransactionRepository.findPageByUser, rows read straight into DTOs,
+ *   for the whole history and for a first page (20, the default, plus the row that tells there is a next one)
+ * Plain JDBC on both sides : Hibernate's own cost on the entity path is not counted.
+ * H2 does not stop at `limit` entries of the (sender_id, id) / (receiver_id, id) indexes : it reads and sorts
+ * each branch, so the first page grows with the history here where MySQL walks the index backwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionMappingBenchmark {
+
+    private static final int USER_ID = 1;
+    private static final int CONNECTIONS = 50;
+    private static final int PAGE = 20;
+
+    // the entity query of the old TransactionRepository.findByUser
+    private static final String FIND_BY_USER = """
+            SELECT id, sender_id, receiver_id, description, amount
+              FROM transactions
+             WHERE sender_id = ? OR receiver_id = ?
+            """;
+
+    private static final RowMapper<TransactionDTO> DTO_MAPPER = (rs, rowNum) -> new TransactionDTO(
+            rs.getInt("id"), rs.getString("connectionName"), rs.getString("description"), rs.getBigDecimal("amount"));
+
+    @Param({"10", "1000", "100000"})
+    private int rows;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+    private String pageQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchMethodException {
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:mapping-benchmark;DB_CLOSE_DELAY=-1", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        jdbcTemplate.execute("CREATE TABLE users (id INT PRIMARY KEY, email VARCHAR(100), username VARCHAR(100), deleted_at TIMESTAMP NULL)");
+        jdbcTemplate.execute("CREATE TABLE transactions (id INT AUTO_INCREMENT PRIMARY KEY, sender_id INT NOT NULL, "
+                + "receiver_id INT NOT NULL, description TEXT NULL, amount DECIMAL(10,2) NOT NULL)");
+        // the indexes of db/migration/h2/V2
+        jdbcTemplate.execute("CREATE INDEX idx_transactions_sender_id_id ON transactions (sender_id, id)");
+        jdbcTemplate.execute("CREATE INDEX idx_transactions_receiver_id_id ON transactions (receiver_id, id)");
+        jdbcTemplate.execute("INSERT INTO users (id, email, username) SELECT X, CONCAT('user', X, '@paymybuddy.com'), CONCAT('user', X) "
+                + "FROM SYSTEM_RANGE(1, " + (CONNECTIONS + 1) + ")");
+
+        // half sent, half received
+        jdbcTemplate.execute("INSERT INTO transactions (sender_id, receiver_id, description, amount) "
+                + "SELECT CASEWHEN(MOD(X, 2) = 0, 1, 2 + MOD(X, " + CONNECTIONS + ")), "
+                + "CASEWHEN(MOD(X, 2) = 0, 2 + MOD(X, " + CONNECTIONS + "), 1), "
+                + "CONCAT('Transaction ', X), MOD(X, 500) / 100.0 "
+                + "FROM SYSTEM_RANGE(1, " + rows + ")");
+        // as much traffic between the connections, which the user's history must skip
+        jdbcTemplate.execute("INSERT INTO transactions (sender_id, receiver_id, description, amount) "
+                + "SELECT 2 + MOD(X, " + CONNECTIONS + "), 2 + MOD(X + 1, " + CONNECTIONS + "), "
+                + "CONCAT('Transaction ', X), MOD(X, 500) / 100.0 "
+                + "FROM SYSTEM_RANGE(1, " + rows + ")");
+
+        // the query the application runs, not a copy of it
+        pageQuery = TransactionRepository.class
+                .getMethod("findPageByUser", Integer.class, Integer.class, int.class)
+                .getAnnotation(Query.class).value();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<TransactionDTO> entityMapping() {
+        Map<Integer, User> users = new HashMap<>();
+        User user = loadUser(USER_ID, users);
+
+        List<Transaction> transactions = jdbcTemplate.query(FIND_BY_USER, (rs, rowNum) -> {
+            Transaction transaction = new Transaction();
+            transaction.setId(rs.getInt("id"));
+            transaction.setSender(loadUser(rs.getInt("sender_id"), users));
+            transaction.setReceiver(loadUser(rs.getInt("receiver_id"), users));
+            transaction.setDescription(rs.getString("description"));
+            transaction.setAmount(rs.getBigDecimal("amount"));
+            return transaction;
+        }, USER_ID, USER_ID);
+
+        // the old TransactionService.toDTO
+        List<TransactionDTO> transactionDTOS = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            String connectionName = transaction.getSender().getId().equals(user.getId()) ?
+                    transaction.getReceiver().getUsername() :
+                    transaction.getSender().getUsername();
+            transactionDTOS.add(new TransactionDTO(transaction.getId(), connectionName,
+                    transaction.getDescription(), transaction.getAmount()));
+        }
+        return transactionDTOS;
+    }
+
+    @Benchmark
+    public List<TransactionDTO> projection() {
+        return page(rows);
+    }
+
+    @Benchmark
+    public List<TransactionDTO> projectionFirstPage() {
+        return page(PAGE + 1);
+    }
+
+    private List<TransactionDTO> page(int limit) {
+        return namedJdbcTemplate.query(pageQuery, new MapSqlParameterSource()
+                .addValue("userId", USER_ID)
+                .addValue("before", Integer.MAX_VALUE)
+                .addValue("limit", limit), DTO_MAPPER);
+    }
+
+    // one SELECT per user the first time it is met, as the persistence context of a request
+    private User loadUser(int id, Map<Integer, User> users) {
+        return users.computeIfAbsent(id, key -> jdbcTemplate.queryForObject(
+                "SELECT id, email, username FROM users WHERE id = ?", (rs, rowNum) -> {
+                    User user = new User();
+                    user.setId(rs.getInt("id"));
+                    user.setEmail(rs.getString("email"));
+                    user.setUsername(rs.getString("username"));
+                    return user;
+                }, key));
+    }
+}
@@ -0,0 +1,126 @@
+package com.paymybuddy.config;
+
+import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import com.paymybuddy.service.TransactionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// two H2 databases : testdb is the primary, replica stands for a MySQL replica.
+// the second replica does not exist and is skipped
+@SpringBootTest(properties = {
+        "paymybuddy.datasource.replica-urls=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1,jdbc:h2:mem:missing;IFEXISTS=TRUE",
+        "paymybuddy.datasource.replica-connection-timeout=250ms",
+        "paymybuddy.datasource.replica-downtime=1m"})
+public class DataSourceRoutingConfigTest {
+
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private ReadWriteRoutingDataSource routingDataSource;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private SingleConnectionDataSource replica;
+    private User user1;
+
+    @BeforeEach
+    public void setUp() {
+        transactionRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user1 = new User();
+        user1.setUsername("Malick");
+        user1.setEmail("malick@paymybuddy.com");
+        user1.setPassword("MalickPW@");
+        userRepository.save(user1);
+
+        User user2 = new User();
+        user2.setUsername("Linda");
+        user2.setEmail("linda@paymybuddy.com");
+        user2.setPassword("LindaPW@");
+        userRepository.save(user2);
+
+        Transaction transaction = new Transaction();
+        transaction.setSender(user1);
+        transaction.setReceiver(user2);
+        transaction.setAmount(BigDecimal.ONE);
+        transactionRepository.save(transaction);
+
+        // the replica gets the primary's schema and data, then one more transaction
+        JdbcTemplate primaryJdbc = new JdbcTemplate(dataSource);
+        List<String> script = primaryJdbc.queryForList("SCRIPT", String.class);
+        replica = new SingleConnectionDataSource("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1", "sa", "", true);
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replica);
+        replicaJdbc.execute("DROP ALL OBJECTS");
+        script.forEach(replicaJdbc::execute);
+        replicaJdbc.update("INSERT INTO transactions (sender_id, receiver_id, amount) VALUES (?, ?, 2)",
+                user2.getId(), user1.getId());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        replica.destroy();
+    }
+
+    @DisplayName("Should read from the replica in read-only transactions, from the primary otherwise")
+    @Test
+    public void testReadOnlyOnReplica() {
+        assertThat(transactionService.getTransactionsByUser(user1.getId(), null, 20).getTransactions()).hasSize(2);
+
+        assertThat(transactionService.getTransaction(1_000_000)).isEmpty();
+        assertThat(new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM transactions", Long.class))
+                .isEqualTo(1);
+    }
+
+    @DisplayName("Should skip a replica that does not answer")
+    @Test
+    public void testReplicaDown() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(transactionService.getTransactionsByUser(user1.getId(), null, 20).getTransactions()).hasSize(2);
+        }
+        assertThat(meterRegistry.get("paymybuddy.datasource.replicas.up").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("paymybuddy.datasource.replica.failures").counter().count()).isEqualTo(1);
+    }
+
+    @DisplayName("Should read the user's own writes from the primary for a while")
+    @Test
+    public void testReadYourWrites() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/transactions");
+        request.setUserPrincipal(new UsernamePasswordAuthenticationToken(user1.getEmail(), null));
+        routingDataSource.requestCompleted(request);
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user1.getEmail(), null));
+        assertThat(transactionService.getTransactionsByUser(user1.getId(), null, 20).getTransactions()).hasSize(1);
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("linda@paymybuddy.com", null));
+        assertThat(transactionService.getTransactionsByUser(user1.getId(), null, 20).getTransactions()).hasSize(2);
+    }
+}
@@ -0,0 +1,113 @@
+package com.paymybuddy.config;
+
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import com.paymybuddy.service.TransferEngine;
+import com.paymybuddy.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class HibernateCacheConfigTest {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private TransferEngine transferEngine;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private User user1;
+    private User user2;
+
+    @BeforeEach
+    public void setUp() {
+        transactionRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user1 = new User();
+        user1.setUsername("Malick");
+        user1.setEmail("malick@paymybuddy.com");
+        user1.setPassword("MalickPW@");
+        user1.setBalance(BigDecimal.valueOf(100));
+        userRepository.save(user1);
+
+        user2 = new User();
+        user2.setUsername("Linda");
+        user2.setEmail("linda@paymybuddy.com");
+        user2.setPassword("LindaPW@");
+        userRepository.save(user2);
+    }
+
+    private boolean cached(User user) {
+        return entityManagerFactory.getCache().contains(User.class, user.getId());
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tag("cache", HibernateCacheConfig.USERS)
+                .tag("result", "hit").functionCounter().count();
+    }
+
+    @DisplayName("Should serve a user read again from the second-level cache")
+    @Test
+    public void testUserCached() {
+        entityManagerFactory.getCache().evictAll();
+        double hits = hits();
+
+        userRepository.findById(user1.getId());
+        assertThat(cached(user1)).isTrue();
+        userRepository.findById(user1.getId());
+
+        assertThat(hits()).isGreaterThan(hits);
+    }
+
+    @DisplayName("Should evict the users whose balance a transfer moved, and only them")
+    @Test
+    public void testTransferEvicts() {
+        userRepository.findById(user1.getId());
+        userRepository.findById(user2.getId());
+        assertThat(cached(user1)).isTrue();
+
+        transferEngine.transfer(user1.getId(), user2.getId(), "Dinner", BigDecimal.valueOf(40));
+
+        assertThat(cached(user1)).isFalse();
+        assertThat(cached(user2)).isFalse();
+        assertThat(userRepository.findById(user1.getId()).orElseThrow().getBalance()).isEqualByComparingTo("60");
+        assertThat(userRepository.findById(user2.getId()).orElseThrow().getBalance()).isEqualByComparingTo("40");
+    }
+
+    @DisplayName("Should not serve a renamed or closed user from the cache")
+    @Test
+    public void testUpdateAndDelete() {
+        User user = userRepository.findByEmail("malick@paymybuddy.com").orElseThrow();
+        user.setUsername("Malick B.");
+        userService.updateUser(user);
+
+        assertThat(userRepository.findById(user1.getId()).orElseThrow().getUsername()).isEqualTo("Malick B.");
+        assertThat(userRepository.findByUsername("Malick B.")).isPresent();
+        assertThat(userRepository.findByUsername("Malick")).isEmpty();
+
+        userService.deleteUser(user);
+
+        // the closed row stays, anonymized
+        assertThat(userRepository.findById(user1.getId()).orElseThrow().getDeletedAt()).isNotNull();
+        assertThat(userRepository.findByUsername("Malick B.")).isEmpty();
+        assertThat(userRepository.findByEmail("malick@paymybuddy.com")).isEmpty();
+    }
+}
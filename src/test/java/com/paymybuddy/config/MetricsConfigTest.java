@@ -0,0 +1,47 @@
+package com.paymybuddy.config;
+
+import com.paymybuddy.service.TransactionService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "management.endpoints.web.exposure.include=health,metrics,prometheus")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class MetricsConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private TransactionService transactionService;
+
+    @DisplayName("Should publish service, login, repository and pool metrics for Prometheus")
+    @Test
+    public void testPrometheusEndpoint() throws Exception {
+        assertThatThrownBy(() -> transactionService.getTransactionsByUser(999_999, null, 20));
+        mockMvc.perform(post("/login")
+                        .param("username", "nobody@paymybuddy.com")
+                        .param("password", "wrong"))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(
+                        "paymybuddy_service_seconds_bucket{class=\"com.paymybuddy.service.TransactionService\"")))
+                .andExpect(content().string(containsString("paymybuddy_login_seconds_count{outcome=\"failure\"}")))
+                .andExpect(content().string(containsString("paymybuddy_login_handler_seconds_count")))
+                .andExpect(content().string(containsString("spring_data_repository_invocations_seconds_count")))
+                .andExpect(content().string(containsString("hikaricp_connections_active")));
+    }
+}
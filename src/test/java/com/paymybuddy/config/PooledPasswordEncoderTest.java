@@ -0,0 +1,81 @@
+package com.paymybuddy.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PooledPasswordEncoderTest {
+
+    private MeterRegistry meterRegistry;
+    private PooledPasswordEncoder passwordEncoder;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        passwordEncoder = new PooledPasswordEncoder(4, 2, 10, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        passwordEncoder.destroy();
+    }
+
+    @DisplayName("Should hash and check passwords on the BCrypt threads")
+    @Test
+    public void testEncodeAndMatches() {
+        String hash = passwordEncoder.encode("MalickPW@");
+
+        assertThat(hash).startsWith("$2a$04$");
+        assertThat(passwordEncoder.matches("MalickPW@", hash)).isTrue();
+        assertThat(passwordEncoder.matches("LindaPW@", hash)).isFalse();
+        assertThat(meterRegistry.get("paymybuddy.password.hash").tag("operation", "matches").timer().count())
+                .isEqualTo(2);
+        assertThat(meterRegistry.get("paymybuddy.password.hash.queue").timer().count()).isEqualTo(3);
+    }
+
+    @DisplayName("Should ask for a re-hash when the strength differs")
+    @Test
+    public void testUpgradeEncoding() {
+        assertThat(passwordEncoder.upgradeEncoding(passwordEncoder.encode("MalickPW@"))).isFalse();
+        assertThat(passwordEncoder.upgradeEncoding(
+                "$2a$12$FYqf.0c9wqzwzlPElWP8iuGUDxk88r7PIw/ole73yJ2AzFxzrznqe")).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding("not a hash")).isFalse();
+        assertThat(passwordEncoder.upgradeEncoding(null)).isFalse();
+    }
+
+    @DisplayName("Should refuse a hash at once when the queue is full")
+    @Test
+    public void testRejectedWhenFull() throws Exception {
+        // one thread, no queue : a second hash is refused while the first one runs
+        passwordEncoder.destroy();
+        passwordEncoder = new PooledPasswordEncoder(4, 1, 0, meterRegistry);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> busy = CompletableFuture.supplyAsync(() -> passwordEncoder.run("test", () -> {
+            running.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        running.await();
+
+        assertThatThrownBy(() -> passwordEncoder.encode("MalickPW@"))
+                .isInstanceOf(PasswordHashingBusyException.class);
+        assertThat(meterRegistry.get("paymybuddy.password.hash.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(busy.get()).isTrue();
+    }
+}
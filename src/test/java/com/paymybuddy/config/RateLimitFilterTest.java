@@ -0,0 +1,42 @@
+package com.paymybuddy.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "paymybuddy.rate-limit.ip.capacity=100",
+        "paymybuddy.rate-limit.account.capacity=2",
+        "paymybuddy.rate-limit.account.period=1h"})
+@AutoConfigureMockMvc
+public class RateLimitFilterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DisplayName("Should answer 429 with Retry-After before checking the password of a throttled account")
+    @Test
+    public void testLoginThrottled() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/login")
+                            .param("username", "stuffed@paymybuddy.com")
+                            .param("password", "guess" + i))
+                    .andExpect(status().isUnauthorized());
+        }
+
+        mockMvc.perform(post("/login")
+                        .param("username", "stuffed@paymybuddy.com")
+                        .param("password", "guess"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1800"))
+                .andExpect(jsonPath("$.error").value("Trop de requêtes, veuillez réessayer"));
+    }
+}
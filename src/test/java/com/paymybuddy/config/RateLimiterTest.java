@@ -0,0 +1,63 @@
+package com.paymybuddy.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static com.paymybuddy.config.RateLimiter.Endpoint.LOGIN;
+import static com.paymybuddy.config.RateLimiter.Endpoint.SIGNUP;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // 3 per IP and 2 per account, per minute
+    private RateLimiter rateLimiter(boolean enabled) {
+        return new RateLimiter(meterRegistry, enabled, 3, Duration.ofMinutes(1), 2, Duration.ofMinutes(1), 1000);
+    }
+
+    private double rejected(String key) {
+        return meterRegistry.get("paymybuddy.rate-limit.rejected").tag("key", key).counter().count();
+    }
+
+    @DisplayName("Should let a burst of capacity requests through per IP, then ask to wait for the next token")
+    @Test
+    public void testIpBucket() {
+        RateLimiter rateLimiter = rateLimiter(true);
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.acquire(SIGNUP, "10.0.0.1", null)).isNull();
+        }
+
+        Duration retryAfter = rateLimiter.acquire(SIGNUP, "10.0.0.1", null);
+        assertThat(retryAfter).isPositive().isLessThanOrEqualTo(Duration.ofSeconds(20));
+        assertThat(rejected("ip")).isEqualTo(1);
+        // other IPs and other endpoints have their own buckets
+        assertThat(rateLimiter.acquire(SIGNUP, "10.0.0.2", null)).isNull();
+        assertThat(rateLimiter.acquire(LOGIN, "10.0.0.1", null)).isNull();
+    }
+
+    @DisplayName("Should limit an account tried from many IPs")
+    @Test
+    public void testAccountBucket() {
+        RateLimiter rateLimiter = rateLimiter(true);
+        assertThat(rateLimiter.acquire(LOGIN, "10.0.0.1", "malick@paymybuddy.com")).isNull();
+        assertThat(rateLimiter.acquire(LOGIN, "10.0.0.2", "Malick@PayMyBuddy.com")).isNull();
+
+        assertThat(rateLimiter.acquire(LOGIN, "10.0.0.3", "malick@paymybuddy.com")).isPositive();
+        assertThat(rejected("account")).isEqualTo(1);
+        assertThat(rejected("ip")).isZero();
+        assertThat(rateLimiter.acquire(LOGIN, "10.0.0.3", "linda@paymybuddy.com")).isNull();
+    }
+
+    @DisplayName("Should let everything through when disabled")
+    @Test
+    public void testDisabled() {
+        RateLimiter rateLimiter = rateLimiter(false);
+        for (int i = 0; i < 10; i++) {
+            assertThat(rateLimiter.acquire(LOGIN, "10.0.0.1", "malick@paymybuddy.com")).isNull();
+        }
+    }
+}
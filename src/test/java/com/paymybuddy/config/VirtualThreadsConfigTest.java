@@ -0,0 +1,56 @@
+package com.paymybuddy.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@SpringBootTest
+@ActiveProfiles("virtual-threads")
+public class VirtualThreadsConfigTest {
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor applicationTaskExecutor;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DisplayName("Should run @Async work on virtual threads")
+    @Test
+    public void testAsyncOnVirtualThreads() throws Exception {
+        assertThat(applicationTaskExecutor.submit(() -> Thread.currentThread().isVirtual()).get()).isTrue();
+    }
+
+    @DisplayName("Should count a virtual thread blocked inside a synchronized block")
+    @Test
+    public void testPinnedThreadCounted() throws Exception {
+        // from JDK 24, synchronized no longer pins
+        assumeTrue(Runtime.version().feature() < 24);
+        Object lock = new Object();
+
+        Thread.ofVirtual().start(() -> {
+            synchronized (lock) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).join();
+
+        // JFR streams its events about once a second
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (meterRegistry.counter("paymybuddy.virtual.pinned").count() == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(meterRegistry.counter("paymybuddy.virtual.pinned").count()).isPositive();
+    }
+}
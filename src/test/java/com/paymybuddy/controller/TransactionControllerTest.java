@@ -1,12 +1,23 @@
 package com.paymybuddy.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paymybuddy.config.ExportTasks;
+import com.paymybuddy.model.CounterpartyTotalDTO;
+import com.paymybuddy.model.IdempotencyKey;
 import com.paymybuddy.model.Transaction;
 import com.paymybuddy.model.TransactionDTO;
+import com.paymybuddy.model.TransactionPageDTO;
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferResultDTO;
+import com.paymybuddy.model.TransferTotalsDTO;
 import com.paymybuddy.model.User;
 import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.service.ConnectionGraph;
+import com.paymybuddy.service.IdempotencyService;
+import com.paymybuddy.service.TransactionExportService;
 import com.paymybuddy.service.TransactionService;
 import com.paymybuddy.service.UserService;
+import com.paymybuddy.service.UserVersions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -15,20 +26,25 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @AutoConfigureMockMvc
 public class TransactionControllerTest {
@@ -40,6 +56,16 @@ public class TransactionControllerTest {
     private TransactionService mockTransactionService;
     @Mock
     private TransactionRepository mockTransactionRepository;
+    @Mock
+    private TransactionExportService mockTransactionExportService;
+    @Spy
+    private ExportTasks exportTasks = new ExportTasks(1, 10, 5000);
+    @Mock
+    private IdempotencyService mockIdempotencyService;
+    // every id is a known user, unless stubbed otherwise
+    private final ConnectionGraph connectionGraph = mock(ConnectionGraph.class);
+    @Spy
+    private UserVersions userVersions = new UserVersions(connectionGraph, List.of(), Duration.ofSeconds(5));
     @InjectMocks
     private TransactionController transactionController;
 
@@ -66,6 +92,7 @@ public class TransactionControllerTest {
     @BeforeEach
     void setUpTransaction() {
         MockitoAnnotations.openMocks(this);
+        when(connectionGraph.email(anyInt())).thenReturn("user@paymybuddy.com");
         mockMvc = MockMvcBuilders.standaloneSetup(transactionController)
                 .build();
         objectMapper = new ObjectMapper();
@@ -92,16 +119,99 @@ public class TransactionControllerTest {
         BigDecimal amount = transaction1.getAmount();
 
         doNothing().when(mockTransactionService)
-                .create(senderId, receiverId, description, amount);
+                .create(senderId, receiverId, description, amount, null);
+
+        mockMvc.perform(post("/transactions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(transaction1)))
+                .andExpect(status().isCreated())
+                .andExpect(content().string("Trasaction créée"));
+
+        verify(mockTransactionService, times(1)).create(senderId, receiverId, description, amount, null);
+
+    }
+
+    @DisplayName("reject a transaction when the sender cannot pay")
+    @Test
+    void testCreateTransactionInsufficientBalance() throws Exception {
+        doThrow(new IllegalArgumentException("Solde insuffisant")).when(mockTransactionService)
+                .create(anyInt(), anyInt(), any(), any(BigDecimal.class), any());
 
         mockMvc.perform(post("/transactions")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(transaction1)))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Solde insuffisant"));
+    }
+
+    @DisplayName("replay a transaction already created with the same idempotency key")
+    @Test
+    void testCreateTransactionReplayed() throws Exception {
+        when(mockIdempotencyService.findReplay(eq(user1.getId()), eq("key-1"), anyString()))
+                .thenReturn(Optional.of(new IdempotencyKey(user1.getId(), "key-1", "fingerprint", 1)));
+
+        mockMvc.perform(post("/transactions")
+                        .header(TransactionController.IDEMPOTENCY_KEY, "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(transaction1)))
                 .andExpect(status().isCreated())
+                .andExpect(header().string(TransactionController.IDEMPOTENT_REPLAYED, "true"))
                 .andExpect(content().string("Trasaction créée"));
 
-        verify(mockTransactionService, times(1)).create(senderId, receiverId, description, amount);
+        verify(mockTransactionService, never()).create(any(), any(), any(), any(), any());
+    }
+
+    @DisplayName("reject an idempotency key reused for another transaction")
+    @Test
+    void testCreateTransactionKeyReused() throws Exception {
+        when(mockIdempotencyService.findReplay(eq(user1.getId()), eq("key-1"), anyString()))
+                .thenThrow(new IllegalArgumentException("Idempotency-Key déjà utilisée pour une autre requête"));
+
+        mockMvc.perform(post("/transactions")
+                        .header(TransactionController.IDEMPOTENCY_KEY, "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(transaction1)))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(mockTransactionService, never()).create(any(), any(), any(), any(), any());
+    }
+
+    @DisplayName("answer a duplicate that lost the race on the key with the first result")
+    @Test
+    void testCreateTransactionConcurrentDuplicate() throws Exception {
+        when(mockIdempotencyService.findReplay(eq(user1.getId()), eq("key-1"), anyString()))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new IdempotencyKey(user1.getId(), "key-1", "fingerprint", 1)));
+        doThrow(new DuplicateKeyException("Idempotency-Key déjà utilisée")).when(mockTransactionService)
+                .create(anyInt(), anyInt(), any(), any(BigDecimal.class), eq("key-1"));
+
+        mockMvc.perform(post("/transactions")
+                        .header(TransactionController.IDEMPOTENCY_KEY, "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(transaction1)))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(TransactionController.IDEMPOTENT_REPLAYED, "true"));
+    }
+
+    @DisplayName("create a batch of transactions")
+    @Test
+    void testCreateTransactionBatch() throws Exception {
+        List<TransferRequestDTO> transfers = List.of(
+                new TransferRequestDTO(1, 2, "Dinner", BigDecimal.TEN),
+                new TransferRequestDTO(1, 2, null, BigDecimal.ZERO));
+        List<TransferResultDTO> results = List.of(
+                new TransferResultDTO(0, 7, null),
+                new TransferResultDTO(1, null, "Montant invalide"));
 
+        when(mockTransactionService.createBatch(anyList())).thenReturn(results);
+
+        mockMvc.perform(post("/transactions/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(transfers)))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(results)));
+
+        verify(mockTransactionService, times(1)).createBatch(anyList());
     }
 
     @DisplayName("get a transaction")
@@ -129,15 +239,122 @@ public class TransactionControllerTest {
         TransactionDTO transactionDTO1 = new TransactionDTO(1, user2.getUsername(), null, BigDecimal.valueOf(100.0));
         TransactionDTO transactionDTO2 = new TransactionDTO(2, user1.getUsername(), null, BigDecimal.valueOf(250.0));
 
-        List<TransactionDTO> transactionsDTO = List.of(transactionDTO1, transactionDTO2);
+        TransactionPageDTO page = new TransactionPageDTO(List.of(transactionDTO2, transactionDTO1), null);
 
-        when(mockTransactionService.getTransactionsByUser(anyInt())).thenReturn(transactionsDTO);
+        when(mockTransactionService.getTransactionsByUser(anyInt(), any(), anyInt())).thenReturn(page);
 
         mockMvc.perform(get("/transactions/user/{userId}", user1.getId()))
                 .andExpect(status().isOk())
-                .andExpect(content().json(objectMapper.writeValueAsString(transactionsDTO)));
+                .andExpect(content().json(objectMapper.writeValueAsString(page)));
+
+        verify(mockTransactionService, times(1))
+                .getTransactionsByUser(user1.getId(), null, TransactionService.DEFAULT_PAGE_SIZE);
+    }
+
+    @DisplayName("answer 304 to a history request whose ETag is still current, until a transfer")
+    @Test
+    void testGetTransactionsByUserNotModified() throws Exception {
+        TransactionPageDTO page = new TransactionPageDTO(
+                List.of(new TransactionDTO(1, user2.getUsername(), null, BigDecimal.valueOf(100.0))), null);
+        when(mockTransactionService.getTransactionsByUser(anyInt(), any(), anyInt())).thenReturn(page);
+
+        String etag = mockMvc.perform(get("/transactions/user/{userId}", user1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/transactions/user/{userId}", user1.getId()).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(mockTransactionService, times(1)).getTransactionsByUser(anyInt(), any(), anyInt());
+
+        userVersions.bump(UserVersions.Kind.TRANSACTIONS, user2.getId(), user1.getId());
+        mockMvc.perform(get("/transactions/user/{userId}", user1.getId()).header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @DisplayName("give no ETag, and so never a 304, for an unknown user")
+    @Test
+    void testGetTransactionsByUnknownUser() throws Exception {
+        TransactionPageDTO page = new TransactionPageDTO(List.of(), null);
+        when(mockTransactionService.getTransactionsByUser(anyInt(), any(), anyInt())).thenReturn(page);
+        when(connectionGraph.email(99)).thenReturn(null);
+
+        // the same version 0 as any user unchanged since the start
+        String etag = mockMvc.perform(get("/transactions/user/{userId}", user1.getId()))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/transactions/user/{userId}", 99).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"));
+    }
+
+    @DisplayName("get the next page of transactions after a cursor")
+    @Test
+    void testGetTransactionsByUserAfterCursor() throws Exception {
+        TransactionPageDTO page = new TransactionPageDTO(
+                List.of(new TransactionDTO(1, user2.getUsername(), null, BigDecimal.valueOf(100.0))), null);
+
+        when(mockTransactionService.getTransactionsByUser(1, 2, 1)).thenReturn(page);
+
+        mockMvc.perform(get("/transactions/user/{userId}", user1.getId())
+                        .param("after", "2")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(page)));
+
+        verify(mockTransactionService, times(1)).getTransactionsByUser(1, 2, 1);
+    }
+
+    @DisplayName("get the transfer totals of a user with each counterparty")
+    @Test
+    void testGetTotalsByUser() throws Exception {
+        TransferTotalsDTO totals = new TransferTotalsDTO(BigDecimal.valueOf(100.0), BigDecimal.valueOf(250.0), 2,
+                List.of(new CounterpartyTotalDTO(2, user2.getUsername(),
+                        BigDecimal.valueOf(100.0), BigDecimal.valueOf(250.0), 2, 2)));
+
+        when(mockTransactionService.getTotalsByUser(1)).thenReturn(totals);
+
+        mockMvc.perform(get("/transactions/user/{userId}/totals", user1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(totals)));
+    }
+
+    @DisplayName("export the transaction history as a streamed csv file")
+    @Test
+    void testExportTransactions() throws Exception {
+        when(mockTransactionExportService.isSupported("csv")).thenReturn(true);
+        when(mockTransactionExportService.userExists(1)).thenReturn(true);
+        List<String> threads = new ArrayList<>();
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            OutputStream outputStream = invocation.getArgument(2);
+            outputStream.write("id,connectionName,description,amount\n".getBytes());
+            return null;
+        }).when(mockTransactionExportService).export(eq(1), eq("csv"), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(get("/transactions/user/{userId}/export", 1))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(5000L, result.getRequest().getAsyncContext().getTimeout());
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"transactions-1.csv\""))
+                .andExpect(content().string("id,connectionName,description,amount\n"));
+        // the export's own threads, not Spring MVC's async executor
+        assertEquals(List.of("export-1"), threads);
+    }
+
+    @DisplayName("refuse an unknown export format")
+    @Test
+    void testExportTransactionsUnknownFormat() throws Exception {
+        when(mockTransactionExportService.isSupported("xml")).thenReturn(false);
+
+        mockMvc.perform(get("/transactions/user/{userId}/export", 1).param("format", "xml"))
+                .andExpect(status().isBadRequest());
 
-        verify(mockTransactionService, times(1)).getTransactionsByUser(user1.getId());
+        verify(mockTransactionExportService, never()).export(anyInt(), anyString(), any(OutputStream.class));
     }
 
     @DisplayName("update details of a transaction")
@@ -180,4 +397,19 @@ public class TransactionControllerTest {
 
         verify(mockTransactionService, times(1)).delete(id);
     }
+
+    @DisplayName("refuse to delete a transaction whose amount the receiver has spent")
+    @Test
+    void testDeleteSpentTransaction() throws Exception {
+        int id = transaction1.getId();
+
+        when(mockTransactionService.getTransaction(id))
+                .thenReturn(Optional.of(transaction1));
+        doThrow(new IllegalStateException("Solde insuffisant pour annuler la transaction"))
+                .when(mockTransactionService).delete(id);
+
+        mockMvc.perform(delete("/transactions/{id}", id))
+                .andExpect(status().isConflict())
+                .andExpect(content().string("Solde insuffisant pour annuler la transaction"));
+    }
 }
@@ -1,10 +1,18 @@
 package com.paymybuddy.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paymybuddy.config.SessionUserArgumentResolver;
+import com.paymybuddy.model.ConnectionSuggestionDTO;
+import com.paymybuddy.model.MutualConnectionsDTO;
+import com.paymybuddy.model.SessionUser;
 import com.paymybuddy.model.User;
 import com.paymybuddy.model.UserProfileDTO;
+import com.paymybuddy.model.UserSearchResultDTO;
 import com.paymybuddy.repository.UserRepository;
+import com.paymybuddy.service.ConnectionGraph;
+import com.paymybuddy.service.SessionUserService;
 import com.paymybuddy.service.UserService;
+import com.paymybuddy.service.UserVersions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,16 +20,22 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.time.Duration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -37,6 +51,12 @@ public class UserControllerTest {
     private UserRepository mockUserRepository;
     @Mock
     private UserService mockUserService;
+    @Mock
+    private SessionUserService mockSessionUserService;
+    // every id is a known user, unless stubbed otherwise
+    private final ConnectionGraph connectionGraph = mock(ConnectionGraph.class);
+    @Spy
+    private UserVersions userVersions = new UserVersions(connectionGraph, List.of(), Duration.ofSeconds(5));
     @InjectMocks
     private UserController userController;
     private User user1;
@@ -45,7 +65,9 @@ public class UserControllerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(connectionGraph.email(anyInt())).thenReturn("user@paymybuddy.com");
         mockMvc = MockMvcBuilders.standaloneSetup(userController)
+                .setCustomArgumentResolvers(new SessionUserArgumentResolver(mockSessionUserService))
                 .build();
 
         user1 = new User();
@@ -115,6 +137,95 @@ public class UserControllerTest {
         verify(mockUserService, times(1)).findById(user1.getId());
     }
 
+    @DisplayName("suggest friends of friends with their mutual connection count")
+    @Test
+    public void testGetSuggestions() throws Exception {
+        when(mockUserService.getSuggestions(1, 5))
+                .thenReturn(List.of(new ConnectionSuggestionDTO("Linda", "Linda@example.com", 3)));
+
+        mockMvc.perform(get("/users/{id}/suggestions", user1.getId()).param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].username").value("Linda"))
+                .andExpect(jsonPath("$[0].mutualConnections").value(3));
+    }
+
+    @DisplayName("answer 404 for the suggestions of an unknown user")
+    @Test
+    public void testGetSuggestionsUnknownUser() throws Exception {
+        when(mockUserService.getSuggestions(9, 10))
+                .thenThrow(new IllegalArgumentException("Utilisateur n'existe pas"));
+
+        mockMvc.perform(get("/users/{id}/suggestions", 9))
+                .andExpect(status().isNotFound());
+    }
+
+    @DisplayName("get the connections two users have in common")
+    @Test
+    public void testGetMutualConnections() throws Exception {
+        when(mockUserService.getMutualConnections(1, 2, 20))
+                .thenReturn(new MutualConnectionsDTO(1, List.of(new UserProfileDTO("Hayley", "hayley@example.com", null))));
+
+        mockMvc.perform(get("/users/{id}/mutual/{otherId}", user1.getId(), user2.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(1))
+                .andExpect(jsonPath("$.connections[0].username").value("Hayley"));
+    }
+
+    @DisplayName("search users by prefix, for the user of the session")
+    @Test
+    public void testSearch() throws Exception {
+        SessionUser principal = SessionUser.of(user1, "0");
+        when(mockSessionUserService.refresh(principal)).thenReturn(Optional.of(principal));
+        when(mockUserService.searchUsers("li", user1.getId(), 10))
+                .thenReturn(List.of(new UserSearchResultDTO(2, "Linda", "linda@example.com", true)));
+
+        mockMvc.perform(get("/users/search").param("q", "li").sessionAttr(SessionUser.ATTRIBUTE, principal))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].username").value("Linda"))
+                .andExpect(jsonPath("$[0].connected").value(true));
+    }
+
+    @DisplayName("answer 401 to a search without a session")
+    @Test
+    public void testSearchWithoutSession() throws Exception {
+        mockMvc.perform(get("/users/search").param("q", "li"))
+                .andExpect(status().isUnauthorized());
+
+        verify(mockUserService, never()).searchUsers(anyString(), any(), anyInt());
+    }
+
+    @DisplayName("get the connected user from the session without the password")
+    @Test
+    public void testFindByEmailFromSession() throws Exception {
+        SessionUser principal = SessionUser.of(user1, "0");
+        when(mockSessionUserService.refresh(principal)).thenReturn(Optional.of(principal));
+
+        mockMvc.perform(get("/users/email").sessionAttr(SessionUser.ATTRIBUTE, principal))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(user1.getId()))
+                .andExpect(jsonPath("$.password").doesNotExist());
+
+        verify(mockUserService, never()).findByEmail(anyString());
+        verify(mockUserService, never()).findIdentityByEmail(anyString());
+    }
+
+    @DisplayName("replace a stale principal in the session with the user read again")
+    @Test
+    public void testFindByEmailFromSessionStale() throws Exception {
+        SessionUser stale = SessionUser.of(user1, "0");
+        SessionUser current = new SessionUser(user1.getId(), user1.getUsername(), "malick@newmail.fr", "1");
+        when(mockSessionUserService.refresh(stale)).thenReturn(Optional.of(current));
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(SessionUser.ATTRIBUTE, stale);
+
+        mockMvc.perform(get("/users/email").session(session))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.email").value("malick@newmail.fr"));
+
+        assertSame(current, session.getAttribute(SessionUser.ATTRIBUTE));
+        assertEquals("malick@newmail.fr", session.getAttribute("email"));
+    }
+
     @DisplayName("get all connections")
     @Test
     public void testGetAllConnections() throws Exception {
@@ -133,6 +244,27 @@ public class UserControllerTest {
         verify(mockUserService, times(1)).getAllConnections(id);
     }
 
+    @DisplayName("answer 304 to a connections request whose ETag is still current, until a new connection")
+    @Test
+    public void testGetAllConnectionsNotModified() throws Exception {
+        int id = user1.getId();
+        Set<UserProfileDTO> connections = Set.of(new UserProfileDTO(user2.getUsername(), user2.getEmail(), null));
+        when(mockUserService.getAllConnections(id)).thenReturn(connections);
+
+        String etag = mockMvc.perform(get("/users/{id}/connections", id))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/users/{id}/connections", id).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        verify(mockUserService, times(1)).getAllConnections(id);
+
+        userVersions.bump(UserVersions.Kind.CONNECTIONS, id, 3);
+        mockMvc.perform(get("/users/{id}/connections", id).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)));
+    }
+
     @DisplayName("update user information")
     @Test
     public void testUpdateUser() throws Exception {
@@ -175,7 +307,6 @@ public class UserControllerTest {
     public void testDeleteConnection() throws Exception {
         // mock users
         int userId = user1.getId();
-        String connectionEmail = user2.getEmail();
         int connectionId = user2.getId();
 
         when(mockUserRepository.findById(userId))
@@ -184,14 +315,8 @@ public class UserControllerTest {
                 .thenReturn(Optional.of(user2));
 
         // mock a connection
-        Set<User> connections = new HashSet<>();
-        connections.add(user1);
-        connections.add(user2);
-
-        when(mockUserRepository.findConnectionsByUserId(userId))
-                .thenReturn(connections);
-        when(mockUserService.findConnection(userId, connectionEmail))
-                .thenReturn(Optional.of(user2));
+        when(mockUserService.isConnected(userId, connectionId))
+                .thenReturn(true);
 
         // act
         doNothing().when(mockUserService).removeConnection(anyInt(), anyInt());
@@ -0,0 +1,68 @@
+package com.paymybuddy.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors of one load step, by endpoint ("POST /transactions", ...).
+ * Latencies are kept in microseconds, in HdrHistograms : percentiles up to p999 without
+ * keeping each sample.
+ */
+final class EndpointStats {
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    void record(String endpoint, long startNanos, boolean success) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, name -> new Endpoint());
+        stats.latencies.recordValue(Math.max(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), 1));
+        if (!success) {
+            stats.errors.increment();
+        }
+    }
+
+    long count(String endpoint) {
+        Endpoint stats = endpoints.get(endpoint);
+        return stats == null ? 0 : stats.latencies.getTotalCount();
+    }
+
+    // endpoint -> count, errors, throughput (per second over elapsed), latencies in ms
+    Map<String, Map<String, Object>> summary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        Map<String, Map<String, Object>> summary = new TreeMap<>();
+        endpoints.forEach((name, stats) -> {
+            Histogram latencies = stats.latencies.copy();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("count", latencies.getTotalCount());
+            row.put("errors", stats.errors.sum());
+            row.put("throughput", round(latencies.getTotalCount() / seconds));
+            row.put("p50Ms", millis(latencies.getValueAtPercentile(50)));
+            row.put("p95Ms", millis(latencies.getValueAtPercentile(95)));
+            row.put("p99Ms", millis(latencies.getValueAtPercentile(99)));
+            row.put("p999Ms", millis(latencies.getValueAtPercentile(99.9)));
+            row.put("maxMs", millis(latencies.getMaxValue()));
+            summary.put(name, row);
+        });
+        return summary;
+    }
+
+    private static double millis(long micros) {
+        return round(micros / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private static final class Endpoint {
+        // 3 significant digits, resized as needed
+        final Histogram latencies = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+    }
+}
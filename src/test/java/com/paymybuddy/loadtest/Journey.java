@@ -0,0 +1,193 @@
+package com.paymybuddy.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * One user's visit : sign up, log in, add connections, make transfers, read the history.
+ * Each request is recorded under its endpoint ; the whole visit under "journey", from the
+ * time it was meant to start (open model : a late start counts against the latency).
+ * A failed signup or login ends the visit, the other steps go on after an error.
+ * There is no deposit endpoint : the sender is funded by the caller (fund), outside the
+ * measured requests.
+ */
+final class Journey {
+
+    static final String JOURNEY = "journey";
+    private static final String PASSWORD = "LoadTest1!";
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final AtomicLong USERS = new AtomicLong();
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // users that finished logging in, the others connect to them
+    private final List<Integer> userIds = new CopyOnWriteArrayList<>();
+    private final int connections;
+    private final int transfers;
+    private final int historyReads;
+    private final IntConsumer fund;
+
+    Journey(HttpClient client, URI baseUri, IntConsumer fund, int connections, int transfers, int historyReads) {
+        this.client = client;
+        this.baseUri = baseUri;
+        this.fund = fund;
+        this.connections = connections;
+        this.transfers = transfers;
+        this.historyReads = historyReads;
+    }
+
+    // returns whether every request succeeded
+    boolean run(EndpointStats stats, long intendedStartNanos) {
+        Session session = new Session();
+        String name = "load" + USERS.incrementAndGet();
+        String email = name + "@loadtest.paymybuddy.com";
+        boolean ok;
+
+        // 1. sign up
+        ok = session.send(stats, "POST /users/signup", json("/users/signup").POST(body(Map.of(
+                "username", name, "email", email, "password", PASSWORD))), 201) != null;
+        if (!ok) {
+            return false;
+        }
+
+        // 2. log in, then who am I
+        String form = "username=" + URLEncoder.encode(email, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(PASSWORD, StandardCharsets.UTF_8);
+        ok = session.send(stats, "POST /login", request("/login")
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form)), 302) != null;
+        HttpResponse<String> me = ok ? session.send(stats, "GET /users/email", request("/users/email").GET(), 200) : null;
+        if (me == null) {
+            return false;
+        }
+        int userId = readId(me.body());
+
+        // 3. add connections, among the users already logged in
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Integer> known = List.copyOf(userIds);
+        List<Integer> connected = new ArrayList<>();
+        for (int i = 0; i < Math.min(connections, known.size()); i++) {
+            int connectionId = known.get(random.nextInt(known.size()));
+            if (connectionId == userId || connected.contains(connectionId)) {
+                continue;
+            }
+            if (session.send(stats, "PUT /users/add/{userId}/connections/{connectionId}",
+                    request("/users/add/" + userId + "/connections/" + connectionId)
+                            .PUT(HttpRequest.BodyPublishers.noBody()), 201) != null) {
+                connected.add(connectionId);
+            } else {
+                ok = false;
+            }
+        }
+        userIds.add(userId);
+
+        // 4. make transfers, to the new connections
+        if (!connected.isEmpty()) {
+            fund.accept(userId);
+            for (int i = 0; i < transfers; i++) {
+                int receiverId = connected.get(random.nextInt(connected.size()));
+                ok &= session.send(stats, "POST /transactions", json("/transactions").POST(body(Map.of(
+                        "sender", Map.of("id", userId),
+                        "receiver", Map.of("id", receiverId),
+                        "description", "load test",
+                        "amount", 1 + random.nextInt(20)))), 201) != null;
+            }
+        }
+
+        // 5. read the history, again with the ETag of the last answer
+        String etag = null;
+        for (int i = 0; i < historyReads; i++) {
+            HttpRequest.Builder read = request("/transactions/user/" + userId).GET();
+            if (etag != null) {
+                read.header("If-None-Match", etag);
+            }
+            HttpResponse<String> history = session.send(stats, "GET /transactions/user/{id}", read, 200, 304);
+            if (history == null) {
+                ok = false;
+            } else {
+                etag = history.headers().firstValue("ETag").orElse(etag);
+            }
+        }
+
+        stats.record(JOURNEY, intendedStartNanos, ok);
+        return ok;
+    }
+
+    // requests ___________________________________
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(TIMEOUT);
+    }
+
+    private HttpRequest.Builder json(String path) {
+        return request(path).header("Content-Type", "application/json");
+    }
+
+    private HttpRequest.BodyPublisher body(Object value) {
+        try {
+            return HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(value));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private int readId(String body) {
+        try {
+            JsonNode node = objectMapper.readTree(body);
+            return node.get("id").asInt();
+        } catch (IOException e) {
+            throw new IllegalStateException("unexpected /users/email answer : " + body, e);
+        }
+    }
+
+    // the session cookie of one visitor : the client is shared, its cookies are not
+    private final class Session {
+        private String cookie;
+
+        // the response, or null when it failed or had another status
+        HttpResponse<String> send(EndpointStats stats, String endpoint, HttpRequest.Builder builder,
+                                  int... expected) {
+            if (cookie != null) {
+                builder.header("Cookie", cookie);
+            }
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+                response.headers().allValues("Set-Cookie").stream()
+                        .filter(value -> value.startsWith("JSESSIONID="))
+                        .findFirst()
+                        .ifPresent(value -> cookie = value.substring(0, value.indexOf(';') < 0
+                                ? value.length() : value.indexOf(';')));
+                boolean success = false;
+                for (int status : expected) {
+                    success |= response.statusCode() == status;
+                }
+                stats.record(endpoint, start, success);
+                return success ? response : null;
+            } catch (IOException e) {
+                stats.record(endpoint, start, false);
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stats.record(endpoint, start, false);
+                return null;
+            }
+        }
+    }
+}
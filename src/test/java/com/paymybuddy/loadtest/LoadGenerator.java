@@ -0,0 +1,216 @@
+package com.paymybuddy.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.paymybuddy.PayMyBuddyApplication;
+import com.paymybuddy.service.UserEntityCache;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * Load test of the user journey (Journey) against the application started in this JVM,
+ * on the in-memory H2 database of the tests.
+ * Runs one step per level, each for loadtest.step-duration, after a warm-up :
+ * - open model (loadtest.mode=open) : new visits arrive at each of loadtest.arrival-rates per
+ *   second, whether or not the earlier ones are done ; past loadtest.max-in-flight, arrivals are dropped
+ * - closed model (loadtest.mode=closed) : each of loadtest.concurrency visitors starts a new
+ *   visit when the previous one ends
+ * Throughput and p50 / p95 / p99 / p999 per endpoint, per step, go to loadtest.output (JSON) :
+ * the saturation point is the step where throughput stops following the load and p99 climbs.
+ * Application properties are passed as usual (--paymybuddy.transfer.group-commit.enabled=true).
+ */
+public final class LoadGenerator {
+
+    // credited to each visitor before its transfers, straight in the database : there is no deposit endpoint
+    private static final BigDecimal FUNDS = BigDecimal.valueOf(1000);
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        SpringApplication application = new SpringApplication(PayMyBuddyApplication.class);
+        application.setDefaultProperties(Map.of(
+                "server.port", "0",
+                // every visitor comes from 127.0.0.1
+                "paymybuddy.rate-limit.enabled", "false",
+                "spring.main.banner-mode", "off",
+                "logging.level.com.paymybuddy", "WARN",
+                "logging.level.paymybuddy.audit", "WARN"));
+        ServletWebServerApplicationContext context =
+                (ServletWebServerApplicationContext) application.run(args);
+        try {
+            Environment env = context.getEnvironment();
+            URI baseUri = URI.create("http://localhost:" + context.getWebServer().getPort());
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            UserEntityCache userEntityCache = context.getBean(UserEntityCache.class);
+            run(env, baseUri, userId -> {
+                jdbcTemplate.update("UPDATE users SET balance = balance + ? WHERE id = ?", FUNDS, userId);
+                userEntityCache.evict(List.of(userId));
+            });
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void run(Environment env, URI baseUri, IntConsumer fund) throws Exception {
+        String mode = env.getProperty("loadtest.mode", "open");
+        boolean open = switch (mode) {
+            case "open" -> true;
+            case "closed" -> false;
+            default -> throw new IllegalArgumentException("loadtest.mode : open or closed, not " + mode);
+        };
+        List<Double> levels = Arrays.stream(env.getProperty(open ? "loadtest.arrival-rates" : "loadtest.concurrency",
+                        open ? "2,5,10,20" : "1,4,16,64").split(","))
+                .map(String::trim)
+                .map(Double::valueOf)
+                .toList();
+        Duration stepDuration = env.getProperty("loadtest.step-duration", Duration.class, Duration.ofSeconds(30));
+        Duration warmup = env.getProperty("loadtest.warmup", Duration.class, Duration.ofSeconds(10));
+        int maxInFlight = env.getProperty("loadtest.max-in-flight", Integer.class, 2000);
+        File output = new File(env.getProperty("loadtest.output", "target/loadtest-result.json"));
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Journey journey = new Journey(client, baseUri, fund,
+                env.getProperty("loadtest.connections", Integer.class, 3),
+                env.getProperty("loadtest.transfers", Integer.class, 5),
+                env.getProperty("loadtest.history-reads", Integer.class, 3));
+
+        // warm-up at the first level : JIT, pools and caches ; not reported
+        System.out.printf("warm-up %s at %s %s%n", warmup, levels.getFirst(), open ? "visits/s" : "visitors");
+        step(journey, open, levels.getFirst(), warmup, maxInFlight);
+
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (double level : levels) {
+            Map<String, Object> step = step(journey, open, level, stepDuration, maxInFlight);
+            steps.add(step);
+            print(step);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("date", Instant.now().toString());
+        report.put("mode", mode);
+        report.put("stepDurationSeconds", stepDuration.toSeconds());
+        report.put("journey", Map.of(
+                "connections", env.getProperty("loadtest.connections", Integer.class, 3),
+                "transfers", env.getProperty("loadtest.transfers", Integer.class, 5),
+                "historyReads", env.getProperty("loadtest.history-reads", Integer.class, 3)));
+        report.put("steps", steps);
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("cannot create " + parent);
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output, report);
+        System.out.printf("results written to %s%n", output.getAbsolutePath());
+    }
+
+    // one level, on virtual threads : visits spend their time waiting for the server
+    private static Map<String, Object> step(Journey journey, boolean open, double level,
+                                            Duration duration, int maxInFlight) throws InterruptedException {
+        EndpointStats stats = new EndpointStats();
+        AtomicLong started = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long dropped = 0;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (open) {
+                AtomicInteger inFlight = new AtomicInteger();
+                long interval = (long) (TimeUnit.SECONDS.toNanos(1) / level);
+                for (long next = start; next < end; next += interval) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    if (inFlight.get() >= maxInFlight) {
+                        dropped++;
+                        continue;
+                    }
+                    inFlight.incrementAndGet();
+                    started.incrementAndGet();
+                    long intendedStart = next;
+                    executor.execute(() -> {
+                        try {
+                            visit(journey, stats, intendedStart, failed);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    });
+                }
+            } else {
+                for (int i = 0; i < (int) level; i++) {
+                    executor.execute(() -> {
+                        while (System.nanoTime() < end) {
+                            started.incrementAndGet();
+                            visit(journey, stats, System.nanoTime(), failed);
+                        }
+                    });
+                }
+            }
+            // the visits started in the step are finished and counted in it
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, Object> step = new LinkedHashMap<>();
+        step.put(open ? "arrivalRate" : "concurrency", level);
+        step.put("elapsedSeconds", Math.round(elapsed / 1e6) / 1000.0);
+        step.put("visits", Map.of(
+                "started", started.get(),
+                "completed", stats.count(Journey.JOURNEY),
+                "failed", failed.get(),
+                "dropped", dropped));
+        step.put("endpoints", stats.summary(elapsed));
+        return step;
+    }
+
+    private static void visit(Journey journey, EndpointStats stats, long intendedStart, AtomicLong failed) {
+        try {
+            if (!journey.run(stats, intendedStart)) {
+                failed.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> step) {
+        System.out.printf("%n%s%n", step.entrySet().stream()
+                .filter(entry -> !"endpoints".equals(entry.getKey()))
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .toList());
+        System.out.printf("%-52s %8s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "count", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "p999 ms");
+        ((Map<String, Map<String, Object>>) step.get("endpoints")).forEach((name, row) ->
+                System.out.printf("%-52s %8s %7s %9s %9s %9s %9s %9s%n", name, row.get("count"), row.get("errors"),
+                        row.get("throughput"), row.get("p50Ms"), row.get("p95Ms"), row.get("p99Ms"), row.get("p999Ms")));
+    }
+}
@@ -0,0 +1,111 @@
+package com.paymybuddy.repository;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the schema comes from db/migration : each history query must walk its index
+@DataJpaTest
+public class SchemaMigrationTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    private String plan(String sql) {
+        return new JdbcTemplate(dataSource).queryForObject("EXPLAIN " + sql, String.class);
+    }
+
+    @DisplayName("Should apply every migration")
+    @Test
+    public void testMigrationsApplied() {
+        // the columns and tables added after the MPD come as their own versions, after the baseline
+        assertThat(new JdbcTemplate(dataSource).queryForList(
+                "SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"success\" AND \"version\" IS NOT NULL ORDER BY \"installed_rank\"",
+                String.class))
+                .containsExactly("1", "1.1", "1.2", "1.3", "2", "3", "4", "5");
+    }
+
+    @DisplayName("Should bring a database created from MPD.sql, and baselined at 1, to the current schema")
+    @Test
+    public void testBaselinedMpdDatabase() {
+        DriverManagerDataSource mpdDatabase = new DriverManagerDataSource("jdbc:h2:mem:mpd;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(mpdDatabase);
+        jdbcTemplate.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(255) NOT NULL UNIQUE, "
+                + "email VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255) NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE transactions (id INT AUTO_INCREMENT PRIMARY KEY, sender_id INT NOT NULL, "
+                + "receiver_id INT NOT NULL, description TEXT NULL, amount DECIMAL(10,2) NOT NULL, "
+                + "FOREIGN KEY (sender_id) REFERENCES users(id), FOREIGN KEY (receiver_id) REFERENCES users(id))");
+        jdbcTemplate.execute("CREATE TABLE user_connections (user_id INT NOT NULL, connection_id INT NOT NULL, "
+                + "PRIMARY KEY (user_id, connection_id), FOREIGN KEY (user_id) REFERENCES users(id), "
+                + "FOREIGN KEY (connection_id) REFERENCES users(id))");
+        jdbcTemplate.update("INSERT INTO users (username, email, password) VALUES ('Malick', 'malick@paymybuddy.com', 'hash')");
+
+        Flyway.configure()
+                .dataSource(mpdDatabase)
+                .locations("classpath:db/migration/common", "classpath:db/migration/h2")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT balance FROM users", BigDecimal.class)).isEqualByComparingTo("0");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE deleted_at IS NULL", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_keys", Integer.class)).isZero();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @DisplayName("Should page the sent transactions on (sender_id, id)")
+    @Test
+    public void testSenderPagePlan() {
+        assertThat(plan("SELECT t.id FROM transactions t WHERE t.sender_id = 1 AND t.id < 100 ORDER BY t.id DESC LIMIT 20"))
+                .contains("IDX_TRANSACTIONS_SENDER_ID_ID")
+                .doesNotContain("tableScan");
+    }
+
+    @DisplayName("Should page the received transactions on (receiver_id, id)")
+    @Test
+    public void testReceiverPagePlan() {
+        assertThat(plan("SELECT t.id FROM transactions t WHERE t.receiver_id = 1 AND t.id < 100 ORDER BY t.id DESC LIMIT 20"))
+                .contains("IDX_TRANSACTIONS_RECEIVER_ID_ID")
+                .doesNotContain("tableScan");
+    }
+
+    @DisplayName("Should find the transactions between two users on (sender_id, receiver_id)")
+    @Test
+    public void testSenderAndReceiverPlan() {
+        assertThat(plan("SELECT t.id FROM transactions t WHERE t.sender_id = 1 AND t.receiver_id = 2"))
+                .contains("IDX_TRANSACTIONS_SENDER_ID_RECEIVER_ID")
+                .doesNotContain("tableScan");
+    }
+
+    @DisplayName("Should claim the available outbox events on (available_at, id)")
+    @Test
+    public void testOutboxClaimPlan() {
+        assertThat(plan("SELECT o.id FROM outbox_events o WHERE o.available_at <= CURRENT_TIMESTAMP ORDER BY o.available_at, o.id LIMIT 100"))
+                .contains("IDX_OUTBOX_EVENTS_AVAILABLE_AT_ID")
+                .doesNotContain("tableScan");
+    }
+
+    // H2 keeps the foreign key's own index on connection_id and may pick it,
+    // MySQL drops it for the new one
+    @DisplayName("Should find who is connected to a user on an index of connection_id")
+    @Test
+    public void testReverseConnectionPlan() {
+        assertThat(plan("SELECT c.user_id FROM user_connections c WHERE c.connection_id = 1"))
+                .contains("CONNECTION_ID = 1")
+                .doesNotContain("tableScan");
+        assertThat(new JdbcTemplate(dataSource).queryForList(
+                "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.INDEX_COLUMNS WHERE INDEX_NAME = 'IDX_USER_CONNECTIONS_CONNECTION_ID'",
+                String.class))
+                .containsExactly("CONNECTION_ID");
+    }
+}
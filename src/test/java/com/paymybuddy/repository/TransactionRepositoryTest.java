@@ -3,6 +3,7 @@ package com.paymybuddy.repository;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.TransactionDTO;
 import com.paymybuddy.model.User;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,9 +11,11 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.stream.Stream;
 
 @DataJpaTest
 public class TransactionRepositoryTest {
@@ -55,17 +58,6 @@ public class TransactionRepositoryTest {
         transactionRepository.save(transaction2);
     }
 
-    @DisplayName("Find a transaction by any user (user1 or user2)")
-    @Test
-    public void testFindByUser() {
-        // Given
-        // user1 was the sender in transaction #1 + the receiver in transaction #2 = 2 transactions
-        // When
-        List<Transaction> transactions = transactionRepository.findByUser(user1);
-        // Then
-        assertThat(transactions).hasSize(2);
-    }
-
     @DisplayName("Find a transaction made as sender only")
     @Test
     public void testFindBySender() {
@@ -86,4 +78,71 @@ public class TransactionRepositoryTest {
         assertThat(transactions.get(0).getAmount()).isEqualByComparingTo(BigDecimal.valueOf(250.0));
     }
 
+    @DisplayName("Read a page of transactions as DTOs named after the other user")
+    @Test
+    public void testFindPageByUser() {
+        // When
+        List<TransactionDTO> page = transactionRepository.findPageByUser(user1.getId(), Integer.MAX_VALUE, 10);
+        List<TransactionDTO> nextPage = transactionRepository.findPageByUser(user1.getId(), transaction2.getId(), 10);
+        // Then
+        assertThat(page).hasSize(2);
+        assertThat(page.get(0).getId()).isEqualTo(transaction2.getId());
+        assertThat(page.get(0).getConnectionName()).isEqualTo("Linda");
+        assertThat(page.get(0).getAmount()).isEqualByComparingTo(BigDecimal.valueOf(250.0));
+        assertThat(page.get(1).getId()).isEqualTo(transaction1.getId());
+        assertThat(page.get(1).getConnectionName()).isEqualTo("Linda");
+        assertThat(nextPage).hasSize(1);
+    }
+
+    @DisplayName("Stream the whole history oldest first")
+    @Test
+    public void testStreamAllByUser() {
+        // When
+        List<TransactionDTO> transactions;
+        try (Stream<TransactionDTO> stream = transactionRepository.streamAllByUser(user1.getId())) {
+            transactions = stream.toList();
+        }
+        // Then
+        assertThat(transactions).extracting(TransactionDTO::getId)
+                .containsExactly(transaction1.getId(), transaction2.getId());
+    }
+
+    @DisplayName("Read the ids of the transactions a user described, by chunks")
+    @Test
+    public void testFindDescribedIdsBySenderId() {
+        // Given
+        Transaction transaction3 = new Transaction();
+        transaction3.setSender(user1);
+        transaction3.setReceiver(user2);
+        transaction3.setDescription("Cinema");
+        transaction3.setAmount(BigDecimal.TEN);
+        transactionRepository.save(transaction3);
+        transaction2.setDescription("Dinner");
+        transactionRepository.save(transaction2);
+        // When
+        List<Integer> firstChunk = transactionRepository.findDescribedIdsBySenderId(user1.getId(), Limit.of(1));
+        List<Integer> all = transactionRepository.findDescribedIdsBySenderId(user1.getId(), Limit.of(10));
+        // Then : neither the one without a description nor the received one
+        assertThat(firstChunk).hasSize(1);
+        assertThat(all).containsExactly(transaction3.getId());
+    }
+
+    @DisplayName("Erase the descriptions a user wrote, and keep the transactions")
+    @Test
+    public void testClearDescriptionsBySenderId() {
+        // Given
+        transaction1.setDescription("Dinner");
+        transactionRepository.save(transaction1);
+        transaction2.setDescription("Cinema");
+        transactionRepository.save(transaction2);
+        // When
+        int erased = transactionRepository.clearDescriptionsBySenderId(user1.getId());
+        // Then
+        assertThat(erased).isEqualTo(1);
+        assertThat(transactionRepository.count()).isEqualTo(2);
+        assertThat(transactionRepository.findPageByUser(user1.getId(), Integer.MAX_VALUE, 10))
+                .extracting(TransactionDTO::getDescription)
+                .containsExactly("Cinema", null);
+    }
+
 }
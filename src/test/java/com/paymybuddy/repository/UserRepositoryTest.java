@@ -6,6 +6,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.Set;
 import com.paymybuddy.model.User;
@@ -73,4 +74,39 @@ public class UserRepositoryTest {
         assertThat(connections).contains(user2);
     }
 
+    @DisplayName("Should delete the connection rows on both sides")
+    @Test
+    void testDeleteConnections() {
+        // Given
+        user1.getConnections().add(user2);
+        user2.getConnections().add(user1);
+        userRepository.save(user1);
+        userRepository.save(user2);
+
+        // When
+        int rows = userRepository.deleteConnections(user1.getId());
+
+        // Then
+        assertThat(rows).isEqualTo(2);
+        assertThat(userRepository.findConnectionsByUserId(user2.getId())).isEmpty();
+    }
+
+    @DisplayName("Should anonymize a closed account and keep its row, once")
+    @Test
+    void testClose() {
+        // When
+        int closed = userRepository.close(user2.getId(), LocalDateTime.now());
+        int closedAgain = userRepository.close(user2.getId(), LocalDateTime.now());
+
+        // Then
+        assertThat(closed).isEqualTo(1);
+        assertThat(closedAgain).isZero();
+        User row = userRepository.findById(user2.getId()).orElseThrow();
+        assertThat(row.getUsername()).isEqualTo("deleted-" + user2.getId());
+        assertThat(row.getEmail()).isEqualTo("deleted-" + user2.getId() + "@paymybuddy.invalid");
+        assertThat(row.getPassword()).isEmpty();
+        assertThat(row.getDeletedAt()).isNotNull();
+        assertThat(userRepository.findByEmail("linda@paymybuddy.com")).isEmpty();
+    }
+
 }
@@ -0,0 +1,177 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ConnectionGraphTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ConnectionGraph connectionGraph;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        // user_connections holds 1 <-> 2 and users holds 1, 2 and 3 (not closed)
+        ResultSet rs = mock(ResultSet.class);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            when(rs.getInt(1)).thenReturn(1, 2);
+            when(rs.getInt(2)).thenReturn(2, 1);
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(eq("SELECT user_id, connection_id FROM user_connections"), any(RowCallbackHandler.class));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            when(rs.getInt("id")).thenReturn(1, 2, 3);
+            when(rs.getString("email")).thenReturn("Malick@paymybuddy.com", "linda@paymybuddy.com", "hayley@paymybuddy.com");
+            when(rs.getString("username")).thenReturn("Malick", "Linda", "Hayley");
+            for (int i = 0; i < 3; i++) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(eq("SELECT id, email, username FROM users WHERE deleted_at IS NULL"), any(RowCallbackHandler.class));
+
+        connectionGraph = new ConnectionGraph(jdbcTemplate, new SimpleMeterRegistry(), 1000, 100);
+    }
+
+    private User user(int id, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(email);
+        return user;
+    }
+
+    @DisplayName("Should load the connections and emails at startup")
+    @Test
+    public void testLoad() {
+        assertThat(connectionGraph.areConnected(1, 2)).isTrue();
+        assertThat(connectionGraph.areConnected(2, 1)).isTrue();
+        assertThat(connectionGraph.areConnected(1, 3)).isFalse();
+        assertThat(connectionGraph.areConnected(999_999, 1)).isFalse();
+        assertThat(connectionGraph.findIdByEmail("malick@PayMyBuddy.com")).isEqualTo(1);
+        assertThat(connectionGraph.findIdByEmail("nobody@paymybuddy.com")).isNull();
+        assertThat(connectionGraph.username(3)).isEqualTo("Hayley");
+        assertThat(connectionGraph.email(1)).isEqualTo("Malick@paymybuddy.com");
+    }
+
+    @DisplayName("Should add and remove connections both ways")
+    @Test
+    public void testConnectAndDisconnect() {
+        connectionGraph.connect(1, 3);
+        assertThat(connectionGraph.areConnected(3, 1)).isTrue();
+        assertThat(connectionGraph.neighbors(1).size()).isEqualTo(2);
+
+        connectionGraph.disconnect(1, 2);
+        assertThat(connectionGraph.areConnected(1, 2)).isFalse();
+        assertThat(connectionGraph.areConnected(2, 1)).isFalse();
+        assertThat(connectionGraph.neighbors(2)).isNull();
+    }
+
+    @DisplayName("Should grow past the loaded ids and keep large neighbourhoods")
+    @Test
+    public void testManyConnections() {
+        for (int id = 4; id <= 5000; id++) {
+            connectionGraph.connect(1, id);
+        }
+        assertThat(connectionGraph.neighbors(1).size()).isEqualTo(4998);
+        assertThat(connectionGraph.areConnected(1, 4321)).isTrue();
+        assertThat(connectionGraph.areConnected(5000, 1)).isTrue();
+        assertThat(connectionGraph.areConnected(1, 5001)).isFalse();
+    }
+
+    @DisplayName("Should follow email changes and forget deleted users")
+    @Test
+    public void testPutAndRemoveUser() {
+        connectionGraph.putUser(user(1, "malick.new@paymybuddy.com"));
+        assertThat(connectionGraph.findIdByEmail("malick@paymybuddy.com")).isNull();
+        assertThat(connectionGraph.findIdByEmail("malick.new@paymybuddy.com")).isEqualTo(1);
+
+        connectionGraph.removeUser(user(2, "linda@paymybuddy.com"));
+        assertThat(connectionGraph.areConnected(1, 2)).isFalse();
+        assertThat(connectionGraph.findIdByEmail("linda@paymybuddy.com")).isNull();
+    }
+
+    @DisplayName("Should find the connections two users have in common")
+    @Test
+    public void testMutualConnections() {
+        connectionGraph.connect(1, 3);
+        connectionGraph.connect(2, 3);
+        connectionGraph.connect(2, 4);
+
+        assertThat(connectionGraph.mutualConnections(1, 2)).containsExactly(3);
+        assertThat(connectionGraph.mutualConnections(3, 4)).containsExactly(2);
+        assertThat(connectionGraph.mutualConnections(1, 999_999)).isEmpty();
+    }
+
+    @DisplayName("Should rank friends of friends by mutual connections and follow link changes")
+    @Test
+    public void testSuggestions() {
+        // 1 - 2 - 3 and 2 - 4 - 5
+        connectionGraph.connect(2, 3);
+        connectionGraph.connect(2, 4);
+        connectionGraph.connect(4, 5);
+
+        ConnectionGraph.Suggestions suggestions = connectionGraph.suggestions(1);
+        assertThat(suggestions.size()).isEqualTo(2);
+        assertThat(suggestions.id(0)).isEqualTo(3);
+        assertThat(suggestions.mutualConnections(0)).isEqualTo(1);
+        assertThat(suggestions.id(1)).isEqualTo(4);
+        assertThat(connectionGraph.suggestions(1)).isSameAs(suggestions);
+
+        // a link between two of 1's connections' friends : 4 now shares 2 and 3 with 1
+        connectionGraph.connect(1, 3);
+        connectionGraph.connect(3, 4);
+        suggestions = connectionGraph.suggestions(1);
+        assertThat(suggestions.size()).isEqualTo(1);
+        assertThat(suggestions.id(0)).isEqualTo(4);
+        assertThat(suggestions.mutualConnections(0)).isEqualTo(2);
+
+        assertThat(connectionGraph.suggestions(999_999).size()).isZero();
+    }
+
+    @DisplayName("Should look at max-fanout connections only")
+    @Test
+    public void testSuggestionsFanout() {
+        ConnectionGraph bounded = new ConnectionGraph(jdbcTemplate, new SimpleMeterRegistry(), 1, 100);
+        bounded.connect(2, 3);
+        bounded.connect(1, 4);
+        bounded.connect(4, 5);
+
+        // 1 has two connections, only one of them is looked at
+        assertThat(bounded.suggestions(1).size()).isEqualTo(1);
+    }
+
+    @DisplayName("Should wait for the commit before applying a change")
+    @Test
+    public void testAppliedAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            connectionGraph.connect(1, 3);
+            assertThat(connectionGraph.areConnected(1, 3)).isFalse();
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertThat(connectionGraph.areConnected(1, 3)).isTrue();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "paymybuddy.password.bcrypt-strength=5")
+@AutoConfigureMockMvc
+public class CustomUserDetailsServiceTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private UserIdentityCache userIdentityCache;
+
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        transactionRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user = new User();
+        user.setUsername("Malick");
+        user.setEmail("malick@paymybuddy.com");
+        // stored with an older strength
+        user.setPassword(new BCryptPasswordEncoder(4).encode("MalickPW@"));
+        userRepository.save(user);
+    }
+
+    @DisplayName("Should re-hash the password with the configured strength at login")
+    @Test
+    public void testRehashOnLogin() throws Exception {
+        mockMvc.perform(post("/login")
+                        .param("username", "malick@paymybuddy.com")
+                        .param("password", "MalickPW@"))
+                .andExpect(status().is3xxRedirection());
+
+        String rehashed = userRepository.findById(user.getId()).orElseThrow().getPassword();
+        assertThat(rehashed).startsWith("$2a$05$");
+        assertThat(new BCryptPasswordEncoder().matches("MalickPW@", rehashed)).isTrue();
+    }
+
+    @DisplayName("Should keep the password when the login fails")
+    @Test
+    public void testNoRehashOnFailedLogin() throws Exception {
+        String stored = user.getPassword();
+
+        mockMvc.perform(post("/login")
+                        .param("username", "malick@paymybuddy.com")
+                        .param("password", "wrong"))
+                .andExpect(status().isUnauthorized());
+
+        assertThat(userRepository.findById(user.getId()).orElseThrow().getPassword()).isEqualTo(stored);
+    }
+
+    @DisplayName("Should check the password against the stored hash, never a cached one")
+    @Test
+    public void testLoginAfterPasswordChange() throws Exception {
+        assertThat(userIdentityCache.findByEmail("malick@paymybuddy.com")).isPresent();
+        user.setPassword(new BCryptPasswordEncoder(5).encode("NewPW@"));
+        userRepository.save(user);
+
+        mockMvc.perform(post("/login")
+                        .param("username", "malick@paymybuddy.com")
+                        .param("password", "NewPW@"))
+                .andExpect(status().is3xxRedirection());
+    }
+}
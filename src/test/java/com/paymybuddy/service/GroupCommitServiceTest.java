@@ -0,0 +1,156 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferResultDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class GroupCommitServiceTest {
+
+    private final TransferEngine transferEngine = mock(TransferEngine.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+    private GroupCommitService groupCommitService;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        groupCommitService.destroy();
+    }
+
+    private GroupCommitService start(int maxBatchSize, Duration maxWait, int queueCapacity) {
+        return start(maxBatchSize, maxWait, queueCapacity, Duration.ofSeconds(5));
+    }
+
+    private GroupCommitService start(int maxBatchSize, Duration maxWait, int queueCapacity, Duration timeout) {
+        groupCommitService = new GroupCommitService(transferEngine, meterRegistry, true,
+                maxBatchSize, maxWait, queueCapacity, timeout, 1000);
+        return groupCommitService;
+    }
+
+    // amounts above 50 are refused, the others get 1000 + their index in the batch
+    @SuppressWarnings("unchecked")
+    private void engineAnswers() {
+        when(transferEngine.transferBatch(anyList())).thenAnswer(invocation -> {
+            List<TransferRequestDTO> transfers = invocation.getArgument(0);
+            List<TransferResultDTO> results = new ArrayList<>();
+            for (int i = 0; i < transfers.size(); i++) {
+                boolean refused = transfers.get(i).getAmount().intValue() > 50;
+                results.add(new TransferResultDTO(i, refused ? null : 1000 + i, refused ? "Solde insuffisant" : null));
+            }
+            return results;
+        });
+    }
+
+    @DisplayName("Should commit concurrent transfers together and answer each caller with its own result")
+    @Test
+    public void testGroupCommit() throws Exception {
+        engineAnswers();
+        start(10, Duration.ofMillis(200), 100);
+
+        List<Future<Integer>> created = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            created.add(callers.submit(() -> groupCommitService.transfer(1, 2, null, BigDecimal.TEN)));
+        }
+        Future<Integer> refused = callers.submit(() -> groupCommitService.transfer(1, 2, null, BigDecimal.valueOf(100)));
+
+        for (Future<Integer> future : created) {
+            assertThat(future.get(5, TimeUnit.SECONDS)).isGreaterThanOrEqualTo(1000);
+        }
+        assertThatThrownBy(() -> refused.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class)
+                .hasRootCauseMessage("Solde insuffisant");
+
+        long commits = meterRegistry.get("paymybuddy.transfers.group-commit.batch.size").summary().count();
+        assertThat(commits).isLessThan(7);
+        assertThat(meterRegistry.get("paymybuddy.transfers.group-commit.batch.size").summary().totalAmount())
+                .isEqualTo(7);
+    }
+
+    @DisplayName("Should refuse transfers once the queue is full")
+    @Test
+    public void testQueueFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transferEngine.transferBatch(anyList())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(new TransferResultDTO(0, 1, null));
+        });
+        start(1, Duration.ZERO, 1);
+
+        // the first one is being written, the second one waits in the queue
+        Future<Integer> first = callers.submit(() -> groupCommitService.transfer(1, 2, null, BigDecimal.ONE));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<Integer> second = callers.submit(() -> groupCommitService.transfer(1, 2, null, BigDecimal.ONE));
+        while (meterRegistry.get("paymybuddy.transfers.group-commit.queue").gauge().value() < 1) {
+            Thread.sleep(5);
+        }
+
+        assertThatThrownBy(() -> groupCommitService.transfer(1, 2, null, BigDecimal.ONE))
+                .isInstanceOf(TransferQueueFullException.class);
+        assertThat(meterRegistry.get("paymybuddy.transfers.group-commit.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    }
+
+    @DisplayName("Should fail every transfer of a batch whose commit failed")
+    @Test
+    public void testBatchFailure() {
+        when(transferEngine.transferBatch(anyList())).thenThrow(new IllegalStateException("database down"));
+        start(10, Duration.ZERO, 10);
+
+        assertThatThrownBy(() -> groupCommitService.transfer(1, 2, null, BigDecimal.ONE))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("database down");
+    }
+
+    @DisplayName("Should take back a transfer still queued after the timeout, and never write it")
+    @Test
+    public void testTimeout() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transferEngine.transferBatch(anyList())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(new TransferResultDTO(0, 1, null));
+        });
+        start(1, Duration.ZERO, 10, Duration.ofMillis(200));
+
+        Future<Integer> first = callers.submit(() -> groupCommitService.transfer(1, 2, null, BigDecimal.ONE));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // the writer is busy with the first one : the second one waits in the queue past its timeout
+        assertThatThrownBy(() -> groupCommitService.transfer(1, 2, null, BigDecimal.ONE))
+                .isInstanceOf(TransferQueueFullException.class);
+        assertThat(meterRegistry.get("paymybuddy.transfers.group-commit.queue").gauge().value()).isZero();
+
+        // the first one was taken by the writer before its own timeout : its outcome is unknown.
+        // checked while the writer still holds it, so that it cannot complete in the meantime
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class);
+        release.countDown();
+        verify(transferEngine, times(1)).transferBatch(anyList());
+    }
+}
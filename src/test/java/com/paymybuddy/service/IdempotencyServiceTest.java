@@ -0,0 +1,165 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.IdempotencyKey;
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.IdempotencyKeyRepository;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class IdempotencyServiceTest {
+
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private IdempotencyService idempotencyService;
+    @Autowired
+    private TransferEngine transferEngine;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private User user1;
+    private User user2;
+
+    @BeforeEach
+    public void setUp() {
+        idempotencyKeyRepository.deleteAllInBatch();
+        transactionRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user1 = new User();
+        user1.setUsername("Malick");
+        user1.setEmail("malick@paymybuddy.com");
+        user1.setPassword("MalickPW@");
+        user1.setBalance(BigDecimal.valueOf(100));
+        userRepository.save(user1);
+
+        user2 = new User();
+        user2.setUsername("Linda");
+        user2.setEmail("linda@paymybuddy.com");
+        user2.setPassword("LindaPW@");
+        user2.setBalance(BigDecimal.valueOf(100));
+        userRepository.save(user2);
+    }
+
+    private String fingerprint(BigDecimal amount) {
+        return IdempotencyService.fingerprint(user1.getId(), user2.getId(), "Dinner", amount);
+    }
+
+    @DisplayName("Should create the transfer once and find it again with its key")
+    @Test
+    public void testRecordAndReplay() {
+        transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.TEN, "key-1");
+
+        assertThatThrownBy(() ->
+                transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.TEN, "key-1"))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        assertThat(idempotencyService.findReplay(user1.getId(), "key-1", fingerprint(new BigDecimal("10.00")))).isPresent();
+        assertThat(idempotencyService.findReplay(user1.getId(), "key-2", fingerprint(BigDecimal.TEN))).isEmpty();
+        assertThat(transactionRepository.count()).isEqualTo(1);
+        assertThat(userRepository.findById(user1.getId()).orElseThrow().getBalance()).isEqualByComparingTo("90");
+    }
+
+    @DisplayName("Should refuse a key reused with another request")
+    @Test
+    public void testKeyReusedForAnotherRequest() {
+        transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.TEN, "key-1");
+        double mismatches = meterRegistry.counter("paymybuddy.idempotency.mismatches").count();
+
+        assertThatThrownBy(() -> idempotencyService.findReplay(user1.getId(), "key-1", fingerprint(BigDecimal.ONE)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(meterRegistry.counter("paymybuddy.idempotency.mismatches").count()).isEqualTo(mismatches + 1);
+    }
+
+    @DisplayName("Should not keep the key of a refused transfer")
+    @Test
+    public void testKeyOfRefusedTransfer() {
+        assertThatThrownBy(() ->
+                transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.valueOf(500), "key-1"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(idempotencyKeyRepository.existsById(new IdempotencyKey.SenderKey(user1.getId(), "key-1"))).isFalse();
+    }
+
+    @DisplayName("Should keep the keys of each sender apart")
+    @Test
+    public void testKeysPerSender() {
+        transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.TEN, "key-1");
+
+        assertThat(idempotencyService.findReplay(user2.getId(), "key-1",
+                IdempotencyService.fingerprint(user2.getId(), user1.getId(), "Dinner", BigDecimal.TEN))).isEmpty();
+        transactionService.create(user2.getId(), user1.getId(), "Dinner", BigDecimal.TEN, "key-1");
+
+        assertThat(transactionRepository.count()).isEqualTo(2);
+    }
+
+    @DisplayName("Should not replay an expired key that was not purged yet, and let it be used again")
+    @Test
+    public void testExpiredKey() {
+        transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.TEN, "key-1");
+        IdempotencyKey expired = idempotencyKeyRepository.findAll().getFirst();
+        idempotencyKeyRepository.deleteAllInBatch();
+        expired.setKey("key-2");
+        expired.setCreatedAt(LocalDateTime.now().minusDays(2));
+        idempotencyKeyRepository.saveAndFlush(expired);
+
+        assertThat(idempotencyService.findReplay(user1.getId(), "key-2", fingerprint(BigDecimal.TEN))).isEmpty();
+        transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.TEN, "key-2");
+
+        assertThat(transactionRepository.count()).isEqualTo(2);
+        assertThat(idempotencyService.findReplay(user1.getId(), "key-2", fingerprint(BigDecimal.TEN))).isPresent();
+    }
+
+    // 60 of a balance of 100 : a duplicate debited before its key is checked would fail with
+    // "Solde insuffisant" instead of DuplicateKeyException
+    @DisplayName("Should pay once when the same key arrives concurrently")
+    @Test
+    public void testConcurrentDuplicates() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() ->
+                    transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.valueOf(60), "key-1")));
+        }
+        int created = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+                created++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(DuplicateKeyException.class);
+            }
+        }
+        executor.shutdown();
+
+        assertThat(created).isEqualTo(1);
+        assertThat(transactionRepository.count()).isEqualTo(1);
+        assertThat(userRepository.findById(user1.getId()).orElseThrow().getBalance()).isEqualByComparingTo("40");
+    }
+}
@@ -0,0 +1,138 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.OutboxEvent;
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.OutboxRepository;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// the relay runs by hand here : relay() is one round
+@SpringBootTest(properties = {
+        "paymybuddy.outbox.relay.enabled=false",
+        "paymybuddy.outbox.relay.retry-backoff=1h"})
+public class OutboxServiceTest {
+
+    @Autowired
+    private OutboxService outboxService;
+    @Autowired
+    private OutboxRepository outboxRepository;
+    @Autowired
+    private TransferEngine transferEngine;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @MockitoBean
+    private OutboxListener outboxListener;
+
+    private User user1;
+    private User user2;
+
+    @BeforeEach
+    public void setUp() {
+        transactionRepository.deleteAll();
+        userRepository.deleteAll();
+        user1 = newUser("Malick", BigDecimal.valueOf(100));
+        user2 = newUser("Linda", BigDecimal.ZERO);
+        jdbcTemplate.update("DELETE FROM outbox_events");
+    }
+
+    private User newUser(String username, BigDecimal balance) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username.toLowerCase() + "@paymybuddy.com");
+        user.setPassword(username + "PW@");
+        user.setBalance(balance);
+        return userRepository.save(user);
+    }
+
+    private int pending() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_events", Integer.class);
+    }
+
+    @DisplayName("Should write the event with the transfer, and not without it")
+    @Test
+    public void testPublishedWithTheTransfer() {
+        try {
+            transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.TEN, transaction -> {
+                throw new IllegalStateException("rollback");
+            });
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertThat(pending()).isZero();
+
+        int transactionId = transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.TEN).getId();
+        assertThat(jdbcTemplate.queryForObject("SELECT event_type FROM outbox_events", String.class))
+                .isEqualTo(OutboxEvent.TRANSFER_CREATED);
+        assertThat(jdbcTemplate.queryForObject("SELECT aggregate_id FROM outbox_events", Integer.class))
+                .isEqualTo(transactionId);
+    }
+
+    @DisplayName("Should hand each event to the listeners, then delete it")
+    @Test
+    public void testRelay() {
+        transferEngine.transfer(user1.getId(), user2.getId(), "Dinner", BigDecimal.TEN);
+        userService.addConnection(user1.getId(), user2.getId());
+
+        assertThat(outboxService.relay()).isEqualTo(2);
+
+        ArgumentCaptor<OutboxEvent> events = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxListener, times(2)).onEvent(events.capture());
+        assertThat(events.getAllValues()).extracting(OutboxEvent::getType)
+                .containsExactly(OutboxEvent.TRANSFER_CREATED, OutboxEvent.CONNECTION_ADDED);
+        assertThat(events.getAllValues().getFirst().getPayload()).contains("\"amount\":10");
+        assertThat(pending()).isZero();
+        assertThat(outboxService.relay()).isZero();
+    }
+
+    @DisplayName("Should deliver a failed event again after its backoff")
+    @Test
+    public void testRetry() {
+        transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.TEN);
+        doThrow(new IllegalStateException("listener down")).doNothing().when(outboxListener).onEvent(any());
+
+        outboxService.relay();
+        assertThat(jdbcTemplate.queryForObject("SELECT attempts FROM outbox_events", Integer.class)).isEqualTo(1);
+        // not before its retry time
+        assertThat(outboxService.relay()).isZero();
+
+        jdbcTemplate.update("UPDATE outbox_events SET available_at = ?", LocalDateTime.now().minusSeconds(1));
+        assertThat(outboxService.relay()).isEqualTo(1);
+        verify(outboxListener, times(2)).onEvent(any());
+        assertThat(pending()).isZero();
+    }
+
+    @DisplayName("Should deliver again the events of a relay that stopped before acknowledging them")
+    @Test
+    public void testLeaseExpired() {
+        transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.TEN);
+        // claimed by a relay that then died
+        LocalDateTime now = LocalDateTime.now();
+        assertThat(outboxRepository.claim(10, now, now.plusMinutes(1), true)).hasSize(1);
+        assertThat(outboxService.relay()).isZero();
+
+        jdbcTemplate.update("UPDATE outbox_events SET available_at = ?", LocalDateTime.now().minusSeconds(1));
+        assertThat(outboxService.relay()).isEqualTo(1);
+        verify(outboxListener).onEvent(any());
+    }
+}
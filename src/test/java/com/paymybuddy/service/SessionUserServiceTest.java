@@ -0,0 +1,116 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.SessionUser;
+import com.paymybuddy.model.User;
+import com.paymybuddy.model.UserIdentity;
+import com.paymybuddy.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class SessionUserServiceTest {
+
+    @Mock
+    private UserIdentityCache userIdentityCache;
+    @Mock
+    private UserRepository userRepository;
+
+    private UserVersions userVersions;
+    private SessionUserService sessionUserService;
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ConnectionGraph connectionGraph = mock(ConnectionGraph.class);
+        when(connectionGraph.email(1)).thenReturn("malick@paymybuddy.com");
+        userVersions = new UserVersions(connectionGraph, List.of(), Duration.ofSeconds(5));
+        sessionUserService = new SessionUserService(userIdentityCache, userRepository, userVersions);
+
+        user = new User();
+        user.setId(1);
+        user.setUsername("Malick");
+        user.setEmail("malick@paymybuddy.com");
+        user.setPassword("hash");
+    }
+
+    @DisplayName("Should keep the principal without a query while the profile is unchanged")
+    @Test
+    public void testRefreshCurrent() {
+        when(userIdentityCache.findByEmail("malick@paymybuddy.com")).thenReturn(Optional.of(UserIdentity.of(user)));
+        SessionUser principal = sessionUserService.login("malick@paymybuddy.com").orElseThrow();
+
+        userVersions.bump(UserVersions.Kind.CONNECTIONS, 1);
+
+        assertThat(sessionUserService.refresh(principal)).containsSame(principal);
+        verifyNoInteractions(userRepository);
+    }
+
+    @DisplayName("Should read the user again by id once the profile changed, and drop a closed account")
+    @Test
+    public void testRefreshStale() {
+        when(userIdentityCache.findByEmail("malick@paymybuddy.com")).thenReturn(Optional.of(UserIdentity.of(user)));
+        SessionUser principal = sessionUserService.login("malick@paymybuddy.com").orElseThrow();
+
+        user.setEmail("malick@newmail.fr");
+        when(userRepository.findById(1)).thenReturn(Optional.of(user));
+        userVersions.bump(UserVersions.Kind.PROFILE, 1);
+
+        SessionUser refreshed = sessionUserService.refresh(principal).orElseThrow();
+        assertThat(refreshed.getEmail()).isEqualTo("malick@newmail.fr");
+        assertThat(refreshed.getVersion()).isNotEqualTo(principal.getVersion());
+        assertThat(sessionUserService.refresh(refreshed)).containsSame(refreshed);
+
+        user.setDeletedAt(LocalDateTime.now());
+        userVersions.bump(UserVersions.Kind.PROFILE, 1);
+        assertThat(sessionUserService.refresh(refreshed)).isEmpty();
+        verify(userRepository, times(2)).findById(1);
+    }
+
+    @DisplayName("Should read the user again when the session comes from before a restart")
+    @Test
+    public void testRefreshAfterRestart() {
+        when(userIdentityCache.findByEmail("malick@paymybuddy.com")).thenReturn(Optional.of(UserIdentity.of(user)));
+        SessionUser principal = sessionUserService.login("malick@paymybuddy.com").orElseThrow();
+
+        // a new instance : its versions start again from 0, under another epoch
+        ConnectionGraph connectionGraph = mock(ConnectionGraph.class);
+        when(connectionGraph.email(1)).thenReturn("malick@paymybuddy.com");
+        SessionUserService restarted = new SessionUserService(userIdentityCache, userRepository,
+                new UserVersions(connectionGraph, List.of(), Duration.ofSeconds(5)));
+        when(userRepository.findById(1)).thenReturn(Optional.of(user));
+
+        SessionUser refreshed = restarted.refresh(principal).orElseThrow();
+        assertThat(refreshed).isNotSameAs(principal);
+        assertThat(restarted.refresh(refreshed)).containsSame(refreshed);
+        verify(userRepository).findById(1);
+    }
+
+    @DisplayName("Should build the principal from an identity read after its version")
+    @Test
+    public void testLoginDuringUpdate() {
+        UserIdentity before = UserIdentity.of(user);
+        user.setUsername("Malick D.");
+        UserIdentity after = UserIdentity.of(user);
+        // the profile update commits while the first lookup runs
+        when(userIdentityCache.findByEmail("malick@paymybuddy.com")).thenAnswer(invocation -> {
+            userVersions.bump(UserVersions.Kind.PROFILE, 1);
+            return Optional.of(before);
+        }).thenReturn(Optional.of(after));
+
+        SessionUser principal = sessionUserService.login("malick@paymybuddy.com").orElseThrow();
+
+        assertThat(principal.getUsername()).isEqualTo("Malick D.");
+        assertThat(principal.getVersion()).isEqualTo(userVersions.version(1, UserVersions.Kind.PROFILE));
+    }
+}
@@ -0,0 +1,78 @@
+package com.paymybuddy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paymybuddy.model.TransactionDTO;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class TransactionExportServiceTest {
+
+    @Mock
+    private TransactionRepository transactionRepository;
+    @Mock
+    private UserRepository userRepository;
+
+    private TransactionExportService transactionExportService;
+
+    private TransactionDTO transaction1;
+    private TransactionDTO transaction2;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        transactionExportService = new TransactionExportService(
+                transactionRepository, userRepository, new ObjectMapper());
+
+        transaction1 = new TransactionDTO(1, "Linda", "Dinner, drinks", BigDecimal.valueOf(25.5));
+        transaction2 = new TransactionDTO(2, "Linda", null, BigDecimal.valueOf(250));
+    }
+
+    @DisplayName("Should write one csv line per transaction after the header")
+    @Test
+    public void testExportCsv() throws Exception {
+        when(transactionRepository.streamAllByUser(1)).thenReturn(Stream.of(transaction1, transaction2));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        transactionExportService.export(1, TransactionExportService.CSV, outputStream);
+
+        assertThat(outputStream.toString(StandardCharsets.UTF_8)).isEqualTo("""
+                id,connectionName,description,amount
+                1,Linda,"Dinner, drinks",25.5
+                2,Linda,,250
+                """);
+    }
+
+    @DisplayName("Should write one json object per line")
+    @Test
+    public void testExportNdjson() throws Exception {
+        when(transactionRepository.streamAllByUser(1)).thenReturn(Stream.of(transaction1, transaction2));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        transactionExportService.export(1, TransactionExportService.NDJSON, outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(new ObjectMapper().readValue(lines[1], TransactionDTO.class).getId()).isEqualTo(2);
+    }
+
+    @DisplayName("Should quote csv fields and neutralise formulas")
+    @Test
+    public void testCsvField() {
+        assertThat(TransactionExportService.csvField("say \"hi\"")).isEqualTo("\"say \"\"hi\"\"\"");
+        assertThat(TransactionExportService.csvField("=SUM(A1)")).isEqualTo("'=SUM(A1)");
+        assertThat(TransactionExportService.csvField(null)).isEmpty();
+    }
+}
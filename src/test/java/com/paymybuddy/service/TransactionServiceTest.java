@@ -2,13 +2,16 @@ package com.paymybuddy.service;
 
 import com.paymybuddy.model.Transaction;
 import com.paymybuddy.model.TransactionDTO;
+import com.paymybuddy.model.TransactionPageDTO;
 import com.paymybuddy.model.User;
 import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.TransferTotalsRepository;
 import com.paymybuddy.repository.UserRepository;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -16,6 +19,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -28,6 +32,16 @@ public class TransactionServiceTest {
     private TransactionRepository transactionRepository;
     @Mock
     private static UserRepository userRepository;
+    @Mock
+    private TransferEngine transferEngine;
+    @Mock
+    private IdempotencyService idempotencyService;
+    @Mock
+    private TransferTotalsRepository transferTotalsRepository;
+    @Mock
+    private GroupCommitService groupCommitService;
+    @Mock
+    private UserVersions userVersions;
     @InjectMocks
     private TransactionService transactionService;
 
@@ -67,12 +81,10 @@ public class TransactionServiceTest {
     }
 
     // create ____________________________________
-    @DisplayName("Should create a transaction")
+    @DisplayName("Should create a transaction through the transfer engine")
     @Test
     public void testCreateTransaction() {
-        when(userRepository.findById(1)).thenReturn(Optional.of(user1));
-        when(userRepository.findById(2)).thenReturn(Optional.of(user2));
-        when(transactionRepository.save(transaction1)).thenReturn(transaction1);
+        when(transferEngine.transfer(1, 2, null, transaction1.getAmount())).thenReturn(transaction1);
 
         transactionService.create(
                 user1.getId(),
@@ -80,35 +92,111 @@ public class TransactionServiceTest {
                 transaction1.getDescription(),
                 transaction1.getAmount());
 
-        verify(transactionRepository, times(1)).save(any(Transaction.class));
+        verify(transferEngine, times(1)).transfer(1, 2, null, transaction1.getAmount());
+    }
+
+    @DisplayName("Should claim the idempotency key before the transfer, then record its result")
+    @Test
+    public void testCreateTransactionWithIdempotencyKey() {
+        when(transferEngine.transfer(eq(1), eq(2), isNull(), eq(transaction1.getAmount()), any(), any()))
+                .thenAnswer(invocation -> {
+                    Runnable first = invocation.getArgument(4);
+                    Consumer<Transaction> andThen = invocation.getArgument(5);
+                    first.run();
+                    verify(idempotencyService, never()).complete(any(), any(), any(), any());
+                    andThen.accept(transaction1);
+                    return transaction1;
+                });
+
+        transactionService.create(1, 2, null, transaction1.getAmount(), "key-1");
+
+        InOrder inOrder = inOrder(idempotencyService);
+        inOrder.verify(idempotencyService).claim(eq(1), eq("key-1"), anyString());
+        inOrder.verify(idempotencyService).complete(eq(1), eq("key-1"), anyString(), eq(transaction1.getId()));
     }
 
     // read ______________________________________
-    @DisplayName("Should retrieve transactions belonging to a user")
+    @DisplayName("Should return a page of transactions and the cursor of the next one")
     @Test
-    public void testGetTransactionByUser() {
-        when(userRepository.findById(anyInt())).thenReturn(Optional.of(user1));
-        when(transactionRepository.findByUser(user1)).thenReturn(List.of(transaction1, transaction2));
+    public void testGetTransactionsByUserPage() {
+        TransactionDTO dto2 = new TransactionDTO(2, user2.getUsername(), null, BigDecimal.valueOf(250.0));
+        TransactionDTO dto1 = new TransactionDTO(1, user2.getUsername(), null, BigDecimal.valueOf(100.0));
+
+        when(userRepository.existsById(1)).thenReturn(true);
+        // 1 requested, 2 found : there is a next page
+        when(transactionRepository.findPageByUser(1, Integer.MAX_VALUE, 2))
+                .thenReturn(List.of(dto2, dto1));
 
-        List<TransactionDTO> transactions = transactionService.getTransactionsByUser(1);
+        TransactionPageDTO page = transactionService.getTransactionsByUser(1, null, 1);
 
-        assertThat(transactions).hasSize(2);
-        assertThat(transactions.get(0).getConnectionName()).isEqualTo(user2.getUsername());
+        assertThat(page.getTransactions()).hasSize(1);
+        assertThat(page.getTransactions().get(0).getId()).isEqualTo(2);
+        assertThat(page.getTransactions().get(0).getConnectionName()).isEqualTo(user2.getUsername());
+        assertThat(page.getNextCursor()).isEqualTo(2);
+    }
+
+    @DisplayName("Should return the last page without a cursor")
+    @Test
+    public void testGetTransactionsByUserLastPage() {
+        when(userRepository.existsById(1)).thenReturn(true);
+        when(transactionRepository.findPageByUser(1, 2, TransactionService.MAX_PAGE_SIZE + 1))
+                .thenReturn(List.of(new TransactionDTO(1, user2.getUsername(), null, BigDecimal.valueOf(100.0))));
+
+        // limit above the maximum is capped
+        TransactionPageDTO page = transactionService.getTransactionsByUser(1, 2, 10_000);
+
+        assertThat(page.getTransactions()).hasSize(1);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @DisplayName("Should throw when paging the transactions of an unknown user")
+    @Test
+    public void testGetTransactionsByUserPageUnknownUser() {
+        when(userRepository.existsById(9)).thenReturn(false);
+
+        assertThatThrownBy(() -> transactionService.getTransactionsByUser(9, null, 20))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("User not found");
     }
 
     // update ____________________________________
     @DisplayName("Should update transaction")
     @Test
     public void testUpdateTransaction() {
-        transaction1.setDescription("Dinner");
+        Transaction updated = new Transaction();
+        updated.setId(transaction1.getId());
+        updated.setDescription("Dinner");
 
-        when(transactionRepository.existsById(transaction1.getId())).thenReturn(true);
-        when(transactionRepository.save(any(Transaction.class))).thenReturn(transaction1);
+        when(transactionRepository.findById(transaction1.getId())).thenReturn(Optional.of(transaction1));
 
-        transactionService.update(transaction1);
+        transactionService.update(updated);
 
         verify(transactionRepository, times(1)).save(transaction1);
         assertThat(transaction1.getDescription()).isEqualTo("Dinner");
+        assertThat(transaction1.getAmount()).isEqualByComparingTo("100");
+        verify(userVersions).bump(UserVersions.Kind.TRANSACTIONS, 1, 2);
+    }
+
+    @DisplayName("Should refuse to change the amount or the users of a settled transaction")
+    @Test
+    public void testUpdateTransactionAmount() {
+        Transaction updated = new Transaction();
+        updated.setId(transaction1.getId());
+        updated.setSender(user1);
+        updated.setReceiver(user2);
+        updated.setAmount(BigDecimal.valueOf(80));
+
+        when(transactionRepository.findById(transaction1.getId())).thenReturn(Optional.of(transaction1));
+
+        assertThatThrownBy(() -> transactionService.update(updated))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Seule la description d'une transaction réglée peut être modifiée");
+
+        updated.setAmount(transaction1.getAmount());
+        updated.setReceiver(user1);
+        assertThatThrownBy(() -> transactionService.update(updated))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(transactionRepository, never()).save(any(Transaction.class));
     }
 
     @DisplayName("Should throw an exception : tries to update a non existing transaction")
@@ -140,7 +228,8 @@ public class TransactionServiceTest {
 
         transactionService.delete(id);
 
-        verify(transactionRepository, times(1)).delete(transaction1);
+        // the engine gives the amount back and deletes the row
+        verify(transferEngine).reverse(transaction1);
     }
     @DisplayName("Should throw an exception : tries to delete a non existing transaction")
     @Test
@@ -155,6 +244,6 @@ public class TransactionServiceTest {
                 .isInstanceOf(RuntimeException.class)
                 .hasMessage("La transaction n'existe pas");
 
-        verify(transactionRepository, never()).delete(any(Transaction.class));
+        verify(transferEngine, never()).reverse(any(Transaction.class));
     }
 }
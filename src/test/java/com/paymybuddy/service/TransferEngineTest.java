@@ -0,0 +1,230 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferResultDTO;
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class TransferEngineTest {
+
+    @Autowired
+    private TransferEngine transferEngine;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private UserService userService;
+
+    private User user1;
+    private User user2;
+
+    @BeforeEach
+    public void setUp() {
+        transactionRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user1 = new User();
+        user1.setUsername("Malick");
+        user1.setEmail("malick@paymybuddy.com");
+        user1.setPassword("MalickPW@");
+        user1.setBalance(BigDecimal.valueOf(100));
+        userRepository.save(user1);
+
+        user2 = new User();
+        user2.setUsername("Linda");
+        user2.setEmail("linda@paymybuddy.com");
+        user2.setPassword("LindaPW@");
+        user2.setBalance(BigDecimal.valueOf(100));
+        userRepository.save(user2);
+    }
+
+    private BigDecimal balanceOf(User user) {
+        return userRepository.findById(user.getId()).orElseThrow().getBalance();
+    }
+
+    @DisplayName("Should debit the sender and credit the receiver")
+    @Test
+    public void testTransfer() {
+        transferEngine.transfer(user1.getId(), user2.getId(), "Dinner", BigDecimal.valueOf(40));
+
+        assertThat(balanceOf(user1)).isEqualByComparingTo("60");
+        assertThat(balanceOf(user2)).isEqualByComparingTo("140");
+        assertThat(transactionRepository.findPageByUser(user1.getId(), Integer.MAX_VALUE, 20)).hasSize(1);
+    }
+
+    @DisplayName("Should refuse a transfer above the balance and leave both accounts untouched")
+    @Test
+    public void testInsufficientBalance() {
+        // user2 has the highest id : it is credited first, then the debit fails
+        assertThatThrownBy(() ->
+                transferEngine.transfer(user2.getId(), user1.getId(), null, BigDecimal.valueOf(150)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Solde insuffisant");
+
+        assertThat(balanceOf(user1)).isEqualByComparingTo("100");
+        assertThat(balanceOf(user2)).isEqualByComparingTo("100");
+        assertThat(transactionRepository.count()).isZero();
+    }
+
+    @DisplayName("Should reject invalid amounts, self transfers and unknown users")
+    @Test
+    public void testInvalidTransfer() {
+        // rejected as in a batch or a group commit
+        assertThatThrownBy(() ->
+                transferEngine.transfer(user1.getId(), user2.getId() + 100, null, BigDecimal.ONE))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Destinataire non trouvé");
+        assertThatThrownBy(() ->
+                transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() ->
+                transferEngine.transfer(user1.getId(), user1.getId(), null, BigDecimal.ONE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @DisplayName("Should keep the total balance when transfers cross the same accounts concurrently")
+    @Test
+    public void testConcurrentCrossingTransfers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+            boolean forward = i % 2 == 0;
+            futures.add(executor.submit(() -> forward
+                    ? transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.ONE)
+                    : transferEngine.transfer(user2.getId(), user1.getId(), null, BigDecimal.ONE)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(balanceOf(user1)).isEqualByComparingTo("100");
+        assertThat(balanceOf(user2)).isEqualByComparingTo("100");
+        assertThat(transactionRepository.count()).isEqualTo(200);
+    }
+
+    @DisplayName("Should create the valid transfers of a batch and report the rejected ones")
+    @Test
+    public void testTransferBatch() {
+        List<TransferRequestDTO> transfers = List.of(
+                new TransferRequestDTO(user1.getId(), user2.getId(), "Rent", BigDecimal.valueOf(80)),
+                // user1 has 20 left
+                new TransferRequestDTO(user1.getId(), user2.getId(), "Too much", BigDecimal.valueOf(30)),
+                // user2 can spend what it just received
+                new TransferRequestDTO(user2.getId(), user1.getId(), "Back", BigDecimal.valueOf(150)),
+                new TransferRequestDTO(user1.getId(), 999_999, null, BigDecimal.ONE),
+                new TransferRequestDTO(user1.getId(), user2.getId(), null, BigDecimal.valueOf(-5)));
+
+        List<TransferResultDTO> results = transferEngine.transferBatch(transfers);
+
+        assertThat(results).extracting(TransferResultDTO::getIndex).containsExactly(0, 1, 2, 3, 4);
+        assertThat(results.get(0).getTransactionId()).isNotNull();
+        assertThat(results.get(1).getError()).isEqualTo("Solde insuffisant");
+        assertThat(results.get(2).getTransactionId()).isNotNull();
+        assertThat(results.get(3).getError()).isEqualTo("Destinataire non trouvé");
+        assertThat(results.get(4).getError()).isEqualTo("Montant invalide");
+
+        assertThat(balanceOf(user1)).isEqualByComparingTo("170");
+        assertThat(balanceOf(user2)).isEqualByComparingTo("30");
+        assertThat(transactionRepository.findById(results.get(2).getTransactionId()))
+                .get()
+                .extracting(transaction -> transaction.getDescription())
+                .isEqualTo("Back");
+    }
+
+    @DisplayName("Should refuse a batch above the configured size")
+    @Test
+    public void testTransferBatchTooLarge() {
+        List<TransferRequestDTO> transfers = Collections.nCopies(1001,
+                new TransferRequestDTO(user1.getId(), user2.getId(), null, BigDecimal.ONE));
+
+        assertThatThrownBy(() -> transferEngine.transferBatch(transfers))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(transactionRepository.count()).isZero();
+    }
+
+    @DisplayName("Should give the amount back when a transfer is deleted")
+    @Test
+    public void testReverse() {
+        Transaction transaction = transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.valueOf(40));
+
+        transactionService.delete(transaction.getId());
+
+        assertThat(balanceOf(user1)).isEqualByComparingTo("100");
+        assertThat(balanceOf(user2)).isEqualByComparingTo("100");
+        assertThat(transactionRepository.count()).isZero();
+    }
+
+    @DisplayName("Should refuse to delete a transfer the receiver has already spent")
+    @Test
+    public void testReverseSpent() {
+        Transaction transaction = transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.valueOf(40));
+        transferEngine.transfer(user2.getId(), user1.getId(), null, BigDecimal.valueOf(130));
+
+        assertThatThrownBy(() -> transactionService.delete(transaction.getId()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Solde insuffisant pour annuler la transaction");
+
+        assertThat(balanceOf(user1)).isEqualByComparingTo("190");
+        assertThat(balanceOf(user2)).isEqualByComparingTo("10");
+        assertThat(transactionRepository.count()).isEqualTo(2);
+    }
+
+    @DisplayName("Should keep the settled transfers and the balances when a user is deleted")
+    @Test
+    public void testDeleteUserKeepsHistory() {
+        transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.valueOf(40));
+        transferEngine.transfer(user2.getId(), user1.getId(), null, BigDecimal.valueOf(10));
+
+        userService.deleteUser(user1);
+
+        assertThat(balanceOf(user2)).isEqualByComparingTo("130");
+        assertThat(transactionRepository.count()).isEqualTo(2);
+        assertThat(userRepository.findById(user1.getId()).orElseThrow().getDeletedAt()).isNotNull();
+    }
+
+    @DisplayName("Should not move the balance of a closed account")
+    @Test
+    public void testClosedAccount() {
+        Transaction transaction = transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.valueOf(40));
+        userService.deleteUser(user2);
+
+        assertThatThrownBy(() -> transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.TEN))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Destinataire non trouvé");
+        assertThatThrownBy(() -> transferEngine.transfer(user2.getId(), user1.getId(), null, BigDecimal.TEN))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Utilisateur source non trouvé");
+        assertThat(transferEngine.transferBatch(List.of(
+                new TransferRequestDTO(user1.getId(), user2.getId(), null, BigDecimal.TEN))).getFirst().getError())
+                .isEqualTo("Destinataire non trouvé");
+        assertThatThrownBy(() -> transactionService.delete(transaction.getId()))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(balanceOf(user1)).isEqualByComparingTo("60");
+        assertThat(transactionRepository.count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,177 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.CounterpartyTotalDTO;
+import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.TransferRequestDTO;
+import com.paymybuddy.model.TransferTotalsDTO;
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "paymybuddy.transfer-totals.backfill-chunk-size=2")
+public class TransferTotalsServiceTest {
+
+    @Autowired
+    private TransferTotalsService transferTotalsService;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private TransferEngine transferEngine;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user1;
+    private User user2;
+    private User user3;
+
+    @BeforeEach
+    public void setUp() {
+        transactionRepository.deleteAll();
+        userRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM transfer_totals");
+
+        user1 = newUser("Malick", BigDecimal.valueOf(100));
+        user2 = newUser("Linda", BigDecimal.valueOf(100));
+        user3 = newUser("Sam", BigDecimal.ZERO);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("UPDATE transfer_totals_backfill SET watermark = 0, backfilled_up_to = 0");
+    }
+
+    private User newUser(String username, BigDecimal balance) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username.toLowerCase() + "@paymybuddy.com");
+        user.setPassword(username + "PW@");
+        user.setBalance(balance);
+        return userRepository.save(user);
+    }
+
+    private CounterpartyTotalDTO with(TransferTotalsDTO totals, User counterparty) {
+        return totals.getCounterparties().stream()
+                .filter(total -> total.getCounterpartyId() == counterparty.getId())
+                .findFirst().orElseThrow();
+    }
+
+    @DisplayName("Should add each transfer to both sides of the pair")
+    @Test
+    public void testTransfers() {
+        transactionService.create(user1.getId(), user2.getId(), "Dinner", BigDecimal.valueOf(30));
+        transactionService.create(user2.getId(), user1.getId(), "Cinema", BigDecimal.valueOf(10));
+        transactionService.createBatch(List.of(
+                new TransferRequestDTO(user1.getId(), user2.getId(), null, BigDecimal.valueOf(5)),
+                new TransferRequestDTO(user1.getId(), user3.getId(), null, BigDecimal.valueOf(7)),
+                new TransferRequestDTO(user1.getId(), user2.getId(), null, BigDecimal.valueOf(1000))));
+
+        TransferTotalsDTO totals = transactionService.getTotalsByUser(user1.getId());
+        assertThat(totals.getSentTotal()).isEqualByComparingTo("42");
+        assertThat(totals.getReceivedTotal()).isEqualByComparingTo("10");
+        assertThat(totals.getTransferCount()).isEqualTo(4);
+        // latest first
+        assertThat(totals.getCounterparties()).extracting(CounterpartyTotalDTO::getConnectionName)
+                .containsExactly("Sam", "Linda");
+        assertThat(with(totals, user2).getSentTotal()).isEqualByComparingTo("35");
+        assertThat(with(totals, user2).getReceivedTotal()).isEqualByComparingTo("10");
+        assertThat(with(totals, user2).getTransferCount()).isEqualTo(3);
+
+        TransferTotalsDTO linda = transactionService.getTotalsByUser(user2.getId());
+        assertThat(with(linda, user1).getSentTotal()).isEqualByComparingTo("10");
+        assertThat(with(linda, user1).getReceivedTotal()).isEqualByComparingTo("35");
+    }
+
+    @DisplayName("Should leave the totals untouched when a transfer is rolled back")
+    @Test
+    public void testRolledBackTransfer() {
+        try {
+            transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.TEN, transaction -> {
+                throw new IllegalStateException("rollback");
+            });
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertThat(transactionService.getTotalsByUser(user1.getId()).getCounterparties()).isEmpty();
+    }
+
+    @DisplayName("Should take a deleted transaction out of the totals, and the pair once empty")
+    @Test
+    public void testDelete() {
+        Transaction first = transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.valueOf(30));
+        Transaction second = transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.valueOf(20));
+
+        transactionService.delete(second.getId());
+        CounterpartyTotalDTO total = with(transactionService.getTotalsByUser(user1.getId()), user2);
+        assertThat(total.getSentTotal()).isEqualByComparingTo("30");
+        assertThat(total.getTransferCount()).isEqualTo(1);
+        assertThat(total.getLastTransactionId()).isEqualTo(first.getId());
+
+        transactionService.delete(first.getId());
+        assertThat(transactionService.getTotalsByUser(user1.getId()).getCounterparties()).isEmpty();
+        assertThat(transactionService.getTotalsByUser(user2.getId()).getCounterparties()).isEmpty();
+    }
+
+    @DisplayName("Should keep the totals when a settled transaction is refused a new amount and receiver")
+    @Test
+    public void testUpdate() {
+        Transaction transaction = transferEngine.transfer(user1.getId(), user2.getId(), null, BigDecimal.valueOf(30));
+
+        Transaction updated = transactionRepository.findById(transaction.getId()).orElseThrow();
+        updated.setReceiver(user3);
+        updated.setAmount(BigDecimal.valueOf(25));
+        assertThatThrownBy(() -> transactionService.update(updated)).isInstanceOf(IllegalArgumentException.class);
+
+        TransferTotalsDTO totals = transactionService.getTotalsByUser(user1.getId());
+        assertThat(totals.getCounterparties()).extracting(CounterpartyTotalDTO::getConnectionName).containsExactly("Linda");
+        assertThat(totals.getSentTotal()).isEqualByComparingTo("30");
+    }
+
+    @DisplayName("Should backfill the transactions written before the totals, chunk by chunk")
+    @Test
+    public void testBackfill() {
+        // history older than the migration : rows without totals
+        for (int i = 0; i < 5; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setSender(i % 2 == 0 ? user1 : user2);
+            transaction.setReceiver(i % 2 == 0 ? user2 : user1);
+            transaction.setAmount(BigDecimal.valueOf(i + 1));
+            transactionRepository.save(transaction);
+        }
+        int watermark = jdbcTemplate.queryForObject("SELECT MAX(id) FROM transactions", Integer.class);
+        jdbcTemplate.update("UPDATE transfer_totals_backfill SET watermark = ?, backfilled_up_to = ?",
+                watermark, watermark - 5);
+
+        // written meanwhile : counted at once, and not counted again by the backfill
+        transferEngine.transfer(user1.getId(), user3.getId(), null, BigDecimal.ONE);
+        // not backfilled yet : nothing to take out
+        transactionService.delete(watermark);
+
+        transferTotalsService.backfill();
+
+        TransferTotalsDTO totals = transactionService.getTotalsByUser(user1.getId());
+        assertThat(with(totals, user2).getSentTotal()).isEqualByComparingTo("4");
+        assertThat(with(totals, user2).getReceivedTotal()).isEqualByComparingTo("6");
+        assertThat(with(totals, user2).getTransferCount()).isEqualTo(4);
+        assertThat(with(totals, user3).getSentTotal()).isEqualByComparingTo("1");
+        assertThat(jdbcTemplate.queryForObject("SELECT backfilled_up_to FROM transfer_totals_backfill", Integer.class))
+                .isEqualTo(watermark);
+    }
+}
@@ -0,0 +1,110 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.User;
+import com.paymybuddy.model.UserIdentity;
+import com.paymybuddy.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class UserIdentityCacheTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserIdentityCache userIdentityCache;
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        userIdentityCache = new UserIdentityCache(userRepository, meterRegistry, 100, Duration.ofMinutes(10));
+
+        user = new User();
+        user.setId(1);
+        user.setUsername("Malick");
+        user.setEmail("malick@paymybuddy.com");
+        user.setPassword("hash");
+    }
+
+    @DisplayName("Should query the database once per email")
+    @Test
+    public void testFindByEmailHit() {
+        when(userRepository.findByEmail("malick@paymybuddy.com")).thenReturn(Optional.of(user));
+
+        userIdentityCache.findByEmail("malick@paymybuddy.com");
+        Optional<UserIdentity> identity = userIdentityCache.findByEmail("Malick@PayMyBuddy.com");
+
+        assertThat(identity).isPresent();
+        assertThat(identity.get().getId()).isEqualTo(1);
+        verify(userRepository, times(1)).findByEmail(anyString());
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+    }
+
+    @DisplayName("Should not remember unknown emails")
+    @Test
+    public void testFindByEmailUnknown() {
+        when(userRepository.findByEmail("nobody@paymybuddy.com")).thenReturn(Optional.empty());
+
+        assertThat(userIdentityCache.findByEmail("nobody@paymybuddy.com")).isEmpty();
+        assertThat(userIdentityCache.findByEmail("nobody@paymybuddy.com")).isEmpty();
+
+        verify(userRepository, times(2)).findByEmail("nobody@paymybuddy.com");
+    }
+
+    @DisplayName("Should forget the old email once the user changed it")
+    @Test
+    public void testEvictAfterEmailChange() {
+        when(userRepository.findByEmail("malick@paymybuddy.com")).thenReturn(Optional.of(user));
+        userIdentityCache.findByEmail("malick@paymybuddy.com");
+
+        user.setEmail("momo@paymybuddy.com");
+        when(userRepository.findByEmail("malick@paymybuddy.com")).thenReturn(Optional.empty());
+        userIdentityCache.evict(user);
+
+        assertThat(userIdentityCache.findByEmail("malick@paymybuddy.com")).isEmpty();
+    }
+
+    @DisplayName("Should find the user again by the new email once the entry was evicted by id")
+    @Test
+    public void testEvictById() {
+        when(userRepository.findByEmail("malick@paymybuddy.com")).thenReturn(Optional.of(user));
+        userIdentityCache.findByEmail("malick@paymybuddy.com");
+
+        user.setEmail("momo@paymybuddy.com");
+        when(userRepository.findByEmail("momo@paymybuddy.com")).thenReturn(Optional.of(user));
+        userIdentityCache.evict(user);
+
+        assertThat(userIdentityCache.findByEmail("momo@paymybuddy.com")).get()
+                .extracting(UserIdentity::getEmail).isEqualTo("momo@paymybuddy.com");
+        verify(userRepository).findByEmail("momo@paymybuddy.com");
+    }
+
+    @DisplayName("Should not keep an identity read while it was being evicted")
+    @Test
+    public void testLoadDuringEvict() {
+        // the user is updated while its old values are read
+        when(userRepository.findByEmail("malick@paymybuddy.com")).thenAnswer(invocation -> {
+            userIdentityCache.evict(user);
+            return Optional.of(user);
+        }).thenReturn(Optional.of(user));
+
+        assertThat(userIdentityCache.findByEmail("malick@paymybuddy.com")).isPresent();
+        assertThat(userIdentityCache.findByEmail("malick@paymybuddy.com")).isPresent();
+        assertThat(userIdentityCache.findByEmail("malick@paymybuddy.com")).isPresent();
+
+        verify(userRepository, times(2)).findByEmail("malick@paymybuddy.com");
+    }
+}
@@ -0,0 +1,176 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.Transaction;
+import com.paymybuddy.model.User;
+import com.paymybuddy.repository.TransactionRepository;
+import com.paymybuddy.repository.UserPurgeRepository;
+import com.paymybuddy.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "paymybuddy.purge.chunk-size=2",
+        "paymybuddy.purge.async-threshold=3",
+        // the tests run the rounds themselves
+        "paymybuddy.purge.retry-interval=1h"})
+public class UserPurgeServiceTest {
+
+    @Autowired
+    private UserPurgeService userPurgeService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private UserPurgeRepository userPurgeRepository;
+    @Autowired
+    private TransferTotalsService transferTotalsService;
+    @Autowired
+    private UserVersions userVersions;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private User user1;
+    private User user2;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.update("DELETE FROM user_purges");
+        transactionRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user1 = new User();
+        user1.setUsername("Malick");
+        user1.setEmail("malick@paymybuddy.com");
+        user1.setPassword("MalickPW@");
+        userRepository.save(user1);
+
+        user2 = new User();
+        user2.setUsername("Linda");
+        user2.setEmail("linda@paymybuddy.com");
+        user2.setPassword("LindaPW@");
+        user2.setBalance(BigDecimal.valueOf(10));
+        userRepository.save(user2);
+    }
+
+    private void addTransactions(int count) {
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setSender(i % 2 == 0 ? user1 : user2);
+            transaction.setReceiver(i % 2 == 0 ? user2 : user1);
+            transaction.setDescription("Transfer " + i);
+            transaction.setAmount(BigDecimal.ONE);
+            transactionRepository.save(transaction);
+        }
+    }
+
+    private void close(User user) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                userRepository.close(user.getId(), LocalDateTime.now()));
+    }
+
+    @DisplayName("Should tell large histories apart without counting them all")
+    @Test
+    public void testHasLargeHistory() {
+        // 3 sent by user1 : only its own descriptions count
+        addTransactions(6);
+        assertThat(userPurgeService.hasLargeHistory(user1.getId())).isFalse();
+
+        addTransactions(1);
+        assertThat(userPurgeService.hasLargeHistory(user1.getId())).isTrue();
+    }
+
+    private double purges(String result) {
+        return meterRegistry.get("paymybuddy.purges").tag("result", result).counter().count();
+    }
+
+    @DisplayName("Should erase the closed account's descriptions by chunks, and keep its transfers and the balances")
+    @Test
+    public void testPurge() {
+        // 3 sent by user1, 2 received from user2
+        addTransactions(5);
+        close(user1);
+        userPurgeRepository.insert(user1.getId(), LocalDateTime.now());
+        double done = purges("done");
+
+        userPurgeService.purgeDue();
+
+        assertThat(transactionRepository.count()).isEqualTo(5);
+        assertThat(transactionRepository.findAll())
+                .allMatch(transaction -> (transaction.getDescription() == null)
+                        == transaction.getSender().getId().equals(user1.getId()));
+        assertThat(userRepository.findById(user2.getId()).orElseThrow().getBalance()).isEqualByComparingTo("10");
+        assertThat(userPurgeRepository.findDue(LocalDateTime.now(), 10)).isEmpty();
+        assertThat(purges("done")).isEqualTo(done + 1);
+    }
+
+    @DisplayName("Should keep a failed purge with its error, count it and retry it later")
+    @Test
+    public void testFailedPurge() {
+        TransactionRepository failing = mock(TransactionRepository.class);
+        when(failing.findDescribedIdsBySenderId(anyInt(), any())).thenThrow(new QueryTimeoutException("timeout"));
+        UserPurgeService purgeService = new UserPurgeService(userPurgeRepository, failing, transferTotalsService,
+                userVersions, transactionManager, meterRegistry, 2, 3, Duration.ofMinutes(1), Duration.ofHours(6));
+        userPurgeRepository.insert(user1.getId(), LocalDateTime.now());
+        double failed = purges("failed");
+
+        purgeService.purgeDue();
+        purgeService.destroy();
+        // not due again before its delay : the working service leaves it, and refreshes the gauge
+        userPurgeService.purgeDue();
+
+        assertThat(purges("failed")).isEqualTo(failed + 1);
+        assertThat(meterRegistry.get("paymybuddy.purge.failing").gauge().value()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT last_error FROM user_purges WHERE user_id = ?",
+                String.class, user1.getId())).contains("timeout");
+        assertThat(userPurgeRepository.findDue(LocalDateTime.now(), 10)).isEmpty();
+        assertThat(userPurgeRepository.findDue(LocalDateTime.now().plusMinutes(2), 10))
+                .containsEntry(user1.getId(), 1);
+    }
+
+    @DisplayName("Should only record a purge in the DB transaction that closes the account")
+    @Test
+    public void testScheduleOutsideTransaction() {
+        assertThatThrownBy(() -> userPurgeService.schedule(user1.getId()))
+                .isInstanceOf(IllegalTransactionStateException.class);
+        assertThat(userPurgeRepository.countFailing()).isZero();
+        assertThat(userPurgeRepository.findDue(LocalDateTime.now(), 10)).isEmpty();
+    }
+
+    @DisplayName("Should leave the accounts waiting for their purge out of a reloaded connection graph")
+    @Test
+    public void testClosedAccountAfterRestart() {
+        close(user1);
+
+        ConnectionGraph reloaded = new ConnectionGraph(jdbcTemplate, new SimpleMeterRegistry(), 200, 0);
+
+        assertThat(reloaded.email(user1.getId())).isNull();
+        assertThat(reloaded.findIdByEmail("malick@paymybuddy.com")).isNull();
+        assertThat(reloaded.email(user2.getId())).isEqualTo("linda@paymybuddy.com");
+    }
+}
@@ -0,0 +1,96 @@
+package com.paymybuddy.service;
+
+import com.paymybuddy.model.User;
+import com.paymybuddy.model.UserSearchResultDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class UserSearchIndexTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private ConnectionGraph connectionGraph;
+
+    private UserSearchIndex userSearchIndex;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        // users holds Malick (1), Linda (2), Lina (3), Élodie (4) and Sam (5) ; 1 <-> 3
+        ResultSet rs = mock(ResultSet.class);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            when(rs.getInt("id")).thenReturn(1, 2, 3, 4, 5);
+            when(rs.getString("username")).thenReturn("Malick", "Linda", "Lina", "Élodie", "Sam");
+            when(rs.getString("email")).thenReturn("malick@paymybuddy.com", "linda@paymybuddy.com",
+                    "lina@paymybuddy.com", "elodie@paymybuddy.com", "lisam@paymybuddy.com");
+            for (int i = 0; i < 5; i++) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        when(connectionGraph.neighbors(1)).thenReturn(ConnectionGraph.Neighbors.with(null, 3));
+
+        userSearchIndex = new UserSearchIndex(jdbcTemplate, connectionGraph);
+    }
+
+    private User user(int id, String username, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setEmail(email);
+        return user;
+    }
+
+    @DisplayName("Should rank the connections first, then the others, on usernames and emails")
+    @Test
+    public void testSearch() {
+        assertThat(userSearchIndex.search("LI", 1, 10))
+                .extracting(UserSearchResultDTO::getUsername, UserSearchResultDTO::isConnected)
+                .containsExactly(
+                        tuple("Lina", true),
+                        tuple("Linda", false),
+                        tuple("Sam", false));
+        assertThat(userSearchIndex.search("li", 1, 2)).hasSize(2);
+        assertThat(userSearchIndex.search("ma", 1, 10)).isEmpty();
+        assertThat(userSearchIndex.search("  ", 1, 10)).isEmpty();
+    }
+
+    @DisplayName("Should ignore accents and case")
+    @Test
+    public void testNormalize() {
+        assertThat(userSearchIndex.search("elo", 1, 10))
+                .extracting(UserSearchResultDTO::getUsername)
+                .containsExactly("Élodie");
+        assertThat(userSearchIndex.search("ÉLO", 1, 10)).hasSize(1);
+    }
+
+    @DisplayName("Should follow signups, renames and deletions")
+    @Test
+    public void testPutAndRemove() {
+        userSearchIndex.put(user(6, "Hayley", "hayley@paymybuddy.com"));
+        assertThat(userSearchIndex.search("hay", 1, 10)).extracting(UserSearchResultDTO::getId).containsExactly(6);
+
+        userSearchIndex.put(user(6, "Zoé", "zoe@paymybuddy.com"));
+        assertThat(userSearchIndex.search("hay", 1, 10)).isEmpty();
+        assertThat(userSearchIndex.search("zoe", 1, 10)).extracting(UserSearchResultDTO::getId).containsExactly(6);
+
+        userSearchIndex.remove(user(6, "Zoé", "zoe@paymybuddy.com"));
+        assertThat(userSearchIndex.search("zoe", 1, 10)).isEmpty();
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class));
+    }
+}
@@ -1,6 +1,5 @@
 package com.paymybuddy.service;
 
-import com.paymybuddy.model.Transaction;
 import com.paymybuddy.model.User;
 import com.paymybuddy.model.UserProfileDTO;
 import com.paymybuddy.repository.TransactionRepository;
@@ -14,6 +13,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -21,6 +21,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest
@@ -32,6 +33,20 @@ public class UserServiceTest {
     private UserRepository userRepository;
     @Mock
     private TransactionRepository transactionRepository;
+    @Mock
+    private UserIdentityCache userIdentityCache;
+    @Mock
+    private ConnectionGraph connectionGraph;
+    @Mock
+    private UserPurgeService userPurgeService;
+    @Mock
+    private UserSearchIndex userSearchIndex;
+    @Mock
+    private OutboxService outboxService;
+    @Mock
+    private UserVersions userVersions;
+    @Mock
+    private TransferTotalsService transferTotalsService;
     @InjectMocks
     private UserService userService;
 
@@ -86,6 +101,18 @@ public class UserServiceTest {
 
         assertThat(user.getConnections().contains(user2));
         assertThat(user2.getConnections().contains(user));
+        verify(connectionGraph).connect(1, 2);
+    }
+
+    @DisplayName("Should reject a connection that already exists")
+    @Test
+    public void testExistingConnection() {
+        when(userRepository.findById(1)).thenReturn(Optional.of(user));
+        when(userRepository.findById(2)).thenReturn(Optional.of(user2));
+        when(connectionGraph.areConnected(1, 2)).thenReturn(true);
+
+        assertThrows(RuntimeException.class, () -> userService.addConnection(1, 2));
+        verify(userRepository, never()).save(any(User.class));
     }
 
     @DisplayName("Should reject the addition of same user as connection")
@@ -115,6 +142,15 @@ public class UserServiceTest {
         Exception userEx = assertThrows(RuntimeException.class, () -> userService.getUserById(1, "u"));
         assertEquals("Utilisateur non trouvé", userEx.getMessage());
     }
+    @DisplayName("Should not find a closed account")
+    @Test
+    public void testGetUserByIdClosed() {
+        user.setDeletedAt(LocalDateTime.now());
+        when(userRepository.findById(1)).thenReturn(Optional.of(user));
+
+        assertThat(userService.findById(1)).isEmpty();
+        assertThrows(RuntimeException.class, () -> userService.getUserById(1, "u"));
+    }
 
     // update ____________________________________
     @DisplayName("Should update user data")
@@ -126,10 +162,16 @@ public class UserServiceTest {
                 .thenAnswer(invocation ->
                 invocation.getArgument(0));
 
+        when(transferTotalsService.counterpartyIds(1)).thenReturn(List.of(3, 4));
+
         user.setUsername("Momo");
         userService.updateUser(user);
 
         verify(userRepository).save(user);
+        verify(userIdentityCache).evict(user);
+        // the new name shows in the histories of the counterparties, and only theirs
+        verify(userVersions).bump(UserVersions.Kind.PROFILE, 1);
+        verify(userVersions).bump(UserVersions.Kind.TRANSACTIONS, 3, 4);
     }
     @DisplayName("Should fail to update because user does not exist")
     @Test
@@ -141,46 +183,63 @@ public class UserServiceTest {
         assertEquals("Utilisateur n'existe pas", exception.getMessage());
     }
     // delete ____________________________________
-    @DisplayName("Should delete user")
+    @DisplayName("Should close the account and keep its transfers")
     @Test
     public void testDeleteUser() {
         // Arrange
-        when(userRepository.existsById(user.getId())).thenReturn(true);
+        user.setId(1);
+        when(userRepository.close(eq(1), any())).thenReturn(1);
+        when(transferTotalsService.counterpartyIds(1)).thenReturn(List.of(3, 4));
 
-        List<Transaction> transactions = new ArrayList<>();
-        when(transactionRepository.findByUser(user)).thenReturn(transactions);
+        // Act
+        userService.deleteUser(user);
 
-        User connection1 = new User();
-        connection1.setId(2);
-        User connection2 = new User();
-        connection2.setId(3);
-        Set<User> connections = new HashSet<>();
-        connections.add(connection1);
-        connections.add(connection2);
-        user.setConnections(connections);
+        // Assert : set-based statements, no scan of the other users, no transfer deleted
+        verify(userRepository).deleteConnections(1);
+        verify(transactionRepository).clearDescriptionsBySenderId(1);
+        verify(transactionRepository, never()).delete(any());
+        verify(userVersions).bump(UserVersions.Kind.TRANSACTIONS, 3, 4);
+        verify(userVersions).remove(1);
+        verify(userRepository, never()).findAll();
+        verify(connectionGraph).removeUser(user);
+    }
+    @DisplayName("Should close an account with a large history and erase its descriptions in the background")
+    @Test
+    public void testCloseAccountLargeHistory() {
+        user.setId(1);
+        when(userPurgeService.hasLargeHistory(1)).thenReturn(true);
+        when(userRepository.close(eq(1), any())).thenReturn(1);
 
-        User otherUser = new User();
-        otherUser.setId(4);
-        otherUser.setConnections(new HashSet<>(Collections.singletonList(user)));
-        when(userRepository.findAll()).thenReturn(Arrays.asList(user, otherUser));
+        boolean deleted = userService.closeAccount(user);
 
-        // Act
-        userService.deleteUser(user);
+        assertThat(deleted).isFalse();
+        verify(userRepository).deleteConnections(1);
+        verify(userPurgeService).schedule(1);
+        verify(transactionRepository, never()).clearDescriptionsBySenderId(anyInt());
+    }
+    @DisplayName("Should close an account with a small history right away")
+    @Test
+    public void testCloseAccountSmallHistory() {
+        user.setId(1);
+        when(userRepository.close(eq(1), any())).thenReturn(1);
+
+        boolean deleted = userService.closeAccount(user);
 
-        // Assert
-        verify(userRepository, times(1))
-                .delete(user);
+        assertThat(deleted).isTrue();
+        verify(transactionRepository).clearDescriptionsBySenderId(1);
+        verify(userPurgeService, never()).schedule(anyInt());
     }
     @DisplayName("Should not find user to delete and throw exception")
     @Test
     public void testDeleteUserNotFound() {
         user.setId(1);
-        when(userRepository.existsById(1)).thenReturn(false);
+        when(userRepository.close(eq(1), any())).thenReturn(0);
 
         Exception exception = assertThrows(IllegalArgumentException.class,
                 () -> userService.deleteUser(user));
 
         assertEquals("Utilisateur n'existe pas", exception.getMessage());
+        verify(userRepository, never()).deleteConnections(anyInt());
     }
     @DisplayName("Should remove a connection")
     @Test
@@ -198,6 +257,7 @@ public class UserServiceTest {
 
         assertThat(user.getConnections()).isEmpty();
         assertThat(user2.getConnections()).isEmpty();
+        verify(connectionGraph).disconnect(1, 2);
     }
     // password __________________________________
     @DisplayName("should hash password upon creating user")
@@ -241,6 +301,7 @@ public class UserServiceTest {
         assertThat(user.getPassword()).isEqualTo(hashedPassword);
         verify(passwordEncoder).encode(newPassword);
         verify(userRepository).save(user);
+        verify(userIdentityCache).evict(user);
     }
 
     @DisplayName("should validate password")
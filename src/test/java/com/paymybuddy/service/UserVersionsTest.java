@@ -0,0 +1,69 @@
+package com.paymybuddy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.paymybuddy.service.UserVersions.Kind.CONNECTIONS;
+import static com.paymybuddy.service.UserVersions.Kind.PROFILE;
+import static com.paymybuddy.service.UserVersions.Kind.TRANSACTIONS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.intThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UserVersionsTest {
+
+    private final ConnectionGraph connectionGraph = mock(ConnectionGraph.class);
+
+    // users 1 to 3 exist
+    @BeforeEach
+    public void setUp() {
+        when(connectionGraph.email(intThat(id -> id >= 1 && id <= 3))).thenReturn("user@paymybuddy.com");
+    }
+
+    @DisplayName("Should change the ETag of the users a write touched, and only theirs")
+    @Test
+    public void testBump() {
+        UserVersions userVersions = new UserVersions(connectionGraph, List.of(), Duration.ofSeconds(5));
+        String connections = userVersions.etag(1, CONNECTIONS);
+        String transactions = userVersions.etag(1, TRANSACTIONS);
+        String other = userVersions.etag(2, TRANSACTIONS);
+        assertThat(connections).startsWith("\"").endsWith("\"").isNotEqualTo(transactions);
+
+        userVersions.bump(TRANSACTIONS, 1, 3);
+        assertThat(userVersions.etag(1, TRANSACTIONS)).isNotEqualTo(transactions);
+        assertThat(userVersions.etag(1, CONNECTIONS)).isEqualTo(connections);
+        assertThat(userVersions.etag(2, TRANSACTIONS)).isEqualTo(other);
+    }
+
+    @DisplayName("Should give no ETag nor version to unknown users, and forget deleted ones")
+    @Test
+    public void testUnknownUsers() {
+        UserVersions userVersions = new UserVersions(connectionGraph, List.of(), Duration.ofSeconds(5));
+        assertThat(userVersions.etag(9, TRANSACTIONS)).isNull();
+        assertThat(userVersions.version(9, PROFILE)).isNull();
+
+        String initial = userVersions.version(3, PROFILE);
+        userVersions.bump(PROFILE, 3);
+        assertThat(userVersions.version(3, PROFILE)).isNotNull().isNotEqualTo(initial);
+        userVersions.remove(3);
+        when(connectionGraph.email(3)).thenReturn(null);
+        assertThat(userVersions.etag(3, PROFILE)).isNull();
+        assertThat(userVersions.version(3, PROFILE)).isNull();
+    }
+
+    @DisplayName("Should give no ETag while a replica may still serve the list from before the change")
+    @Test
+    public void testReplicaLag() {
+        UserVersions userVersions = new UserVersions(connectionGraph, List.of("jdbc:h2:mem:replica"), Duration.ofMinutes(1));
+        assertThat(userVersions.etag(1, CONNECTIONS)).isNotNull();
+
+        userVersions.bump(CONNECTIONS, 1);
+        assertThat(userVersions.etag(1, CONNECTIONS)).isNull();
+        assertThat(userVersions.etag(2, CONNECTIONS)).isNotNull();
+    }
+}